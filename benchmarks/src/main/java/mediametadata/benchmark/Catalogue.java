@@ -0,0 +1,95 @@
+package mediametadata.benchmark;
+
+import mediametadata.controller.MediaRepository;
+import mediametadata.controller.MediaRepositoryProperties;
+import mediametadata.model.Media;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+import mediametadata.storage.RecordStorage;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates the same catalogue of {@link Media} for the same parameters, so runs can be compared.
+ * <p>
+ * Every {@link Media} has a unique id and a title of two words from {@link #WORDS} and its number,
+ * half are {@link Movie} and half {@link Series}, and each carries one to three labels drawn
+ * uniformly from the given number of distinct labels.
+ */
+public final class Catalogue {
+
+    /**
+     * Seed of every catalogue.
+     */
+    public static final long SEED = 42;
+
+    /**
+     * Words titles are made of, searches use their fragments.
+     */
+    public static final String[] WORDS = {
+            "Dark", "Night", "Star", "River", "Iron", "Ghost", "Summer", "Winter",
+            "Empire", "Garden", "Shadow", "Ocean", "Crown", "Storm", "Silver", "Forest"
+    };
+
+    private Catalogue() {
+    }
+
+    /**
+     * Generate {@link Media}.
+     *
+     * @param size   number of {@link Media}.
+     * @param labels number of distinct labels.
+     * @return {@link Media} in insertion order.
+     */
+    public static List<Media> generate(int size, int labels) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Media> media = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            media.add(media(random, i, labels));
+        }
+        return media;
+    }
+
+    /**
+     * Generate one {@link Media}.
+     *
+     * @param random source of the titles and labels.
+     * @param number number of the {@link Media}, unique within a catalogue.
+     * @param labels number of distinct labels.
+     * @return {@link Movie} for even numbers, {@link Series} otherwise.
+     */
+    public static Media media(SplittableRandom random, long number, int labels) {
+        UUID id = new UUID(SEED, number);
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + number;
+        int count = 1 + random.nextInt(3);
+        List<String> mediaLabels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            mediaLabels.add("Label " + random.nextInt(labels));
+        }
+        if (number % 2 == 0) {
+            return new Movie(id, title, mediaLabels, "Director " + random.nextInt(1000),
+                    new Date((1950 + random.nextInt(75) - 1970) * 31_556_952_000L));
+        }
+        return new Series(id, title, mediaLabels, 1 + random.nextInt(200));
+    }
+
+    /**
+     * Create a repository holding a catalogue.
+     *
+     * @param media         {@link Media} to store.
+     * @param recordStorage where the records are kept.
+     * @return {@link MediaRepository}.
+     */
+    public static MediaRepository repository(List<Media> media, RecordStorage recordStorage) {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setRecordStorage(recordStorage);
+        MediaRepository repository = new MediaRepository(properties);
+        repository.addMedia(media);
+        return repository;
+    }
+
+}
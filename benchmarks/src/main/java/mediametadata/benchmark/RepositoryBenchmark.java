@@ -0,0 +1,277 @@
+package mediametadata.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import mediametadata.controller.BatchGetResult;
+import mediametadata.controller.Facets;
+import mediametadata.controller.MediaPage;
+import mediametadata.controller.MediaRepository;
+import mediametadata.controller.MediaView;
+import mediametadata.controller.SearchHit;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.storage.RecordStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads and writes of {@link MediaRepository} on a generated {@link Catalogue}, about one percent
+ * of which is deleted so the deleted listings are not empty.
+ * <p>
+ * Adds grow the catalogue for the rest of the trial, every added {@link Media} gets a new number.
+ * Their time includes writing the JSON that is then parsed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int catalogueSize;
+
+    @Param({"10", "1000"})
+    private int labels;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    private RecordStorage recordStorage;
+
+    private MediaRepository repository;
+
+    private ObjectWriter writer;
+
+    /**
+     * Ids of the stored {@link Media}.
+     */
+    private String[] ids;
+
+    /**
+     * Titles of the stored {@link Media}.
+     */
+    private String[] titles;
+
+    /**
+     * Number of the next added {@link Media}.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * Generate and store the catalogue and delete every 101st {@link Media}, movies and series alike.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Media> media = Catalogue.generate(catalogueSize, labels);
+        repository = Catalogue.repository(media, recordStorage);
+        writer = repository.objectMapper().writer();
+        List<String> stored = new ArrayList<>(catalogueSize);
+        List<String> storedTitles = new ArrayList<>(catalogueSize);
+        for (int i = 0; i < catalogueSize; i++) {
+            String id = media.get(i).getId().toString();
+            if (i % 101 == 0) {
+                repository.deleteMedia(id);
+            } else {
+                stored.add(id);
+                storedTitles.add(media.get(i).getTitle());
+            }
+        }
+        ids = stored.toArray(new String[0]);
+        titles = storedTitles.toArray(new String[0]);
+        next.set(catalogueSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+    }
+
+    /**
+     * Random source of one benchmark thread, seeded alike in every run.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+
+        private final SplittableRandom random = new SplittableRandom(Catalogue.SEED);
+
+    }
+
+    /**
+     * {@link MediaType} of the listing benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Listing {
+
+        @Param({"ALL", "MOVIE", "SERIES"})
+        private MediaType mediaType;
+
+    }
+
+    /**
+     * Share of writes in {@link #mixed(Mix, Reader)}.
+     */
+    @State(Scope.Benchmark)
+    public static class Mix {
+
+        @Param({"0", "10", "50"})
+        private int writePercent;
+
+    }
+
+    @Benchmark
+    public Media findById(Reader reader) {
+        return repository.findById(ids[reader.random.nextInt(ids.length)]);
+    }
+
+    /**
+     * Look up 100 random ids in one batch.
+     *
+     * @param reader random source.
+     * @return {@link BatchGetResult}.
+     */
+    @Benchmark
+    public BatchGetResult findByIds(Reader reader) {
+        List<String> batch = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            batch.add(ids[reader.random.nextInt(ids.length)]);
+        }
+        return repository.findByIds(batch);
+    }
+
+    /**
+     * Search the end of one title word followed by the start of another, matching about one
+     * title in 256 through the trigram index.
+     *
+     * @param reader random source.
+     * @return matching {@link Media}.
+     */
+    @Benchmark
+    public List<Media> findByCharacters(Reader reader) {
+        String first = Catalogue.WORDS[reader.random.nextInt(Catalogue.WORDS.length)];
+        String second = Catalogue.WORDS[reader.random.nextInt(Catalogue.WORDS.length)];
+        return repository.findByCharacters(first.substring(1) + " " + second.substring(0, 2));
+    }
+
+    /**
+     * Search a stored title with one character left out, as a typo.
+     *
+     * @param reader random source.
+     * @return the ten most similar titles.
+     */
+    @Benchmark
+    public List<SearchHit> search(Reader reader) {
+        String title = titles[reader.random.nextInt(titles.length)];
+        int typo = reader.random.nextInt(title.length());
+        return repository.search(title.substring(0, typo) + title.substring(typo + 1), 10);
+    }
+
+    /**
+     * Read the first page of 100 {@link mediametadata.model.Movie} released from a random year on.
+     *
+     * @param reader random source.
+     * @return {@link MediaPage}.
+     */
+    @Benchmark
+    public MediaPage findMoviesByYear(Reader reader) {
+        return repository.findMoviesByYear(1950 + reader.random.nextInt(75), null, null, 100);
+    }
+
+    /**
+     * Count the stored {@link Media} carrying a random label.
+     *
+     * @param reader random source.
+     * @return {@link Facets}.
+     */
+    @Benchmark
+    public Facets facets(Reader reader) {
+        return repository.facets(MediaType.ALL, "Label " + reader.random.nextInt(labels));
+    }
+
+    @Benchmark
+    public List<Media> findByLabel(Reader reader) {
+        return repository.findByLabel(ids[reader.random.nextInt(ids.length)], 10);
+    }
+
+    @Benchmark
+    public List<Media> findSimilar(Reader reader) {
+        return repository.findSimilar(ids[reader.random.nextInt(ids.length)], 10);
+    }
+
+    @Benchmark
+    public void findAll(Listing listing, Blackhole blackhole) {
+        try (MediaView view = repository.findAll(listing.mediaType)) {
+            for (Media media : view) {
+                blackhole.consume(media);
+            }
+        }
+    }
+
+    @Benchmark
+    public void findDeleted(Listing listing, Blackhole blackhole) {
+        try (MediaView view = repository.findDeleted(listing.mediaType)) {
+            for (Media media : view) {
+                blackhole.consume(media);
+            }
+        }
+    }
+
+    /**
+     * Add {@link Media} posted as JSON, parsing included.
+     *
+     * @param reader random source.
+     * @return stored {@link Media}.
+     */
+    @Benchmark
+    public Media addMedia(Reader reader) {
+        return repository.addMedia(json(reader));
+    }
+
+    /**
+     * Add {@link Media} in the given share of operations and find {@link Media} by id otherwise.
+     *
+     * @param mix    share of writes.
+     * @param reader random source.
+     * @return {@link Media} added or found.
+     */
+    @Benchmark
+    public Media mixed(Mix mix, Reader reader) {
+        if (reader.random.nextInt(100) < mix.writePercent) {
+            return repository.addMedia(json(reader));
+        }
+        return findById(reader);
+    }
+
+    /**
+     * JSON of a new {@link Media} as posted to the controller.
+     *
+     * @param reader random source.
+     * @return JSON.
+     */
+    private String json(Reader reader) {
+        try {
+            return writer.writeValueAsString(Catalogue.media(reader.random, next.getAndIncrement(), labels));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
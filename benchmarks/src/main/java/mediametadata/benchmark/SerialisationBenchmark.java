@@ -0,0 +1,80 @@
+package mediametadata.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import mediametadata.controller.MediaDeserializer;
+import mediametadata.controller.MediaRepository;
+import mediametadata.model.Media;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing {@link Media} through {@link MediaDeserializer} and writing it with the {@link ObjectMapper}
+ * of {@link MediaRepository}, one {@link Media} of the {@link Catalogue} per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerialisationBenchmark {
+
+    /**
+     * Media type of the {@link Media}, a movie or a series.
+     */
+    @Param({"MOVIE", "SERIES"})
+    private String mediaType;
+
+    @Param({"10", "1000"})
+    private int labels;
+
+    private ObjectReader reader;
+
+    private ObjectWriter writer;
+
+    private Media media;
+
+    private String json;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = new MediaRepository().objectMapper();
+        reader = objectMapper.readerFor(Media.class);
+        writer = objectMapper.writer();
+        List<Media> catalogue = Catalogue.generate(2, labels);
+        media = catalogue.get(mediaType.equals("MOVIE") ? 0 : 1);
+        json = writer.writeValueAsString(media);
+    }
+
+    @Benchmark
+    public Media deserialize() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(media);
+    }
+
+    @Benchmark
+    public Media roundTrip() throws IOException {
+        return reader.readValue(writer.writeValueAsBytes(media));
+    }
+
+}
@@ -0,0 +1,139 @@
+package mediametadata.controller;
+
+import mediametadata.benchmark.Catalogue;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.storage.RecordStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listings written by {@link MediaJsonWriter} to a response that discards its body, so only
+ * reading and serialising the {@link Media} is measured. It shares the package of
+ * {@link MediaJsonWriter} to create it and to reach the related view of {@link MediaRepository}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class JsonWriterBenchmark {
+
+    @Param({"1000", "100000"})
+    private int catalogueSize;
+
+    @Param({"HEAP", "OFF_HEAP"})
+    private RecordStorage recordStorage;
+
+    /**
+     * Size of the {@link FragmentCache}, 0B to serialise every {@link Media} on every listing.
+     */
+    @Param({"0B", "64MB"})
+    private String fragmentCacheSize;
+
+    private MediaRepository repository;
+
+    private MediaJsonWriter writer;
+
+    private String relatedId;
+
+    private long version;
+
+    private final HttpServletResponse response = new HttpServletResponseWrapper(new MockHttpServletResponse()) {
+
+        private final ServletOutputStream discarding = new ServletOutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+            }
+        };
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return discarding;
+        }
+    };
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Media> media = Catalogue.generate(catalogueSize, 10);
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setRecordStorage(recordStorage);
+        properties.setFragmentCacheSize(DataSize.parse(fragmentCacheSize));
+        repository = new MediaRepository(properties);
+        repository.addMedia(media);
+        writer = new MediaJsonWriter(repository.objectMapper(), properties);
+        relatedId = media.get(0).getId().toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        repository.close();
+    }
+
+    @Benchmark
+    public void writeAll() throws IOException {
+        writer.writeArray(repository.findAll(MediaType.ALL), response);
+    }
+
+    @Benchmark
+    public void writeRelated() throws IOException {
+        writer.writeArray(repository.relatedView(relatedId, Integer.MAX_VALUE), response);
+    }
+
+    /**
+     * Full listing at a new version every time, so it is never answered from the {@link ListingCache}.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Benchmark
+    public void writeListing() throws IOException {
+        writer.writeListing("ALL", ++version, repository.findAll(MediaType.ALL), response);
+    }
+
+    /**
+     * Full listing at the same version, answered from the {@link ListingCache} after the first time.
+     *
+     * @throws IOException if writing fails.
+     */
+    @Benchmark
+    public void writeCachedListing() throws IOException {
+        writer.writeListing("ALL", 0, repository.findAll(MediaType.ALL), response);
+    }
+
+}
@@ -0,0 +1,210 @@
+package mediametadata.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Requests of the load, one constant per endpoint and query shape of {@link mediametadata.controller.MediaController}.
+ * <p>
+ * Ids are drawn uniformly from the seeded catalogue and labels from its label distribution. Listings
+ * are read a page of {@link #PAGE_SIZE} at a time, as a client would. {@link #ADD} stores new
+ * {@link Media}, growing the catalogue for the rest of the run.
+ */
+public enum Endpoint {
+
+    FIND_BY_ID("findById") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media/" + target.randomId(random));
+        }
+    },
+    FIND_ALL("findAll") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media?limit=" + PAGE_SIZE);
+        }
+    },
+    MOVIES("movies") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media/movies?limit=" + PAGE_SIZE);
+        }
+    },
+    SERIES("series") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media/series?limit=" + PAGE_SIZE);
+        }
+    },
+    TITLE("title") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            String word = SyntheticCatalogue.WORDS[random.nextInt(SyntheticCatalogue.WORDS.length)];
+            return get(target, "/media?limit=" + PAGE_SIZE + "&title=" + word.substring(0, 4));
+        }
+    },
+    SEARCH("search") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            String first = SyntheticCatalogue.WORDS[random.nextInt(SyntheticCatalogue.WORDS.length)];
+            String second = SyntheticCatalogue.WORDS[random.nextInt(SyntheticCatalogue.WORDS.length)];
+            int typo = 1 + random.nextInt(second.length() - 1);
+            String query = first + " " + second.substring(0, typo) + second.substring(typo + 1);
+            return get(target, "/media/search?k=10&q=" + URLEncoder.encode(query, StandardCharsets.UTF_8));
+        }
+    },
+    RELATED("related") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media/related/" + target.randomId(random) + "?limit=10");
+        }
+    },
+    SIMILAR("similar") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            return get(target, "/media/related/" + target.randomId(random) + "?approximate=true&limit=10");
+        }
+    },
+    MOVIES_BY_YEAR("moviesByYear") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            int from = 1950 + random.nextInt(71);
+            return get(target, "/media/movies?limit=" + PAGE_SIZE + "&yearFrom=" + from + "&yearTo=" + (from + 4));
+        }
+    },
+    SERIES_BY_EPISODES("seriesByEpisodes") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            int min = 1 + random.nextInt(190);
+            return get(target, "/media/series?limit=" + PAGE_SIZE + "&minEpisodes=" + min + "&maxEpisodes=" + (min + 10));
+        }
+    },
+    FACETS("facets") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            String label = target.catalogue().label(random);
+            return get(target, "/media/facets?label=" + URLEncoder.encode(label, StandardCharsets.UTF_8));
+        }
+    },
+    BATCH_GET("batchGet") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            List<String> ids = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                ids.add(target.randomId(random));
+            }
+            return post(target, "/media/batch-get", target.json(ids));
+        }
+    },
+    ADD("add") {
+        @Override
+        HttpRequest request(Target target, SplittableRandom random) {
+            Media media = target.catalogue().generateNew(random);
+            return post(target, media.getMediaType() == MediaType.MOVIE ? "/movie" : "/series", target.json(media));
+        }
+    };
+
+    /**
+     * Number of {@link Media} of a listing page.
+     */
+    static final int PAGE_SIZE = 50;
+
+    /**
+     * Number of ids of a batch get.
+     */
+    static final int BATCH_SIZE = 20;
+
+    /**
+     * Longest wait for a response, a request that takes longer fails.
+     */
+    static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String name;
+
+    Endpoint(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Server and catalogue requests are made for.
+     *
+     * @param url           base URL of the server.
+     * @param catalogue     {@link SyntheticCatalogue} the server is seeded with.
+     * @param catalogueSize number of seeded {@link Media}.
+     * @param writer        writer of request bodies.
+     */
+    record Target(URI url, SyntheticCatalogue catalogue, int catalogueSize, ObjectWriter writer) {
+
+        private String randomId(SplittableRandom random) {
+            return catalogue.id(random.nextInt(catalogueSize)).toString();
+        }
+
+        private String json(Object value) {
+            try {
+                return writer.writeValueAsString(value);
+            } catch (JsonProcessingException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Create the next request to this endpoint.
+     *
+     * @param target server and catalogue.
+     * @param random source of the ids and parameters.
+     * @return {@link HttpRequest}.
+     */
+    abstract HttpRequest request(Target target, SplittableRandom random);
+
+    /**
+     * Name used in the mix and the report.
+     *
+     * @return name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Find an endpoint by name.
+     *
+     * @param name name used in the mix.
+     * @return {@link Endpoint}.
+     * @throws IllegalArgumentException if no endpoint has the name.
+     */
+    static Endpoint named(String name) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.name.equals(name)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + name);
+    }
+
+    private static HttpRequest get(Target target, String path) {
+        return HttpRequest.newBuilder(URI.create(target.url() + path)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private static HttpRequest post(Target target, String path, String json) {
+        return HttpRequest.newBuilder(URI.create(target.url() + path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+}
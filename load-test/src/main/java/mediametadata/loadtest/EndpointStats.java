@@ -0,0 +1,90 @@
+package mediametadata.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and errors of the measured requests to one {@link Endpoint}.
+ * <p>
+ * Latency is the time from when a request was due by the schedule to its response, so waiting for
+ * a connection or behind a slow response counts; service time starts when the request was sent.
+ * Times are recorded by the threads completing requests into {@link Recorder}s and moved into totals
+ * by {@link #drain()}, which only one thread may call.
+ */
+final class EndpointStats {
+
+    /**
+     * Significant decimal digits of the histograms.
+     */
+    private static final int DIGITS = 3;
+
+    private final Recorder latencies = new Recorder(DIGITS);
+
+    private final Recorder serviceTimes = new Recorder(DIGITS);
+
+    private final LongAdder errors = new LongAdder();
+
+    private final Histogram latency = new Histogram(DIGITS);
+
+    private final Histogram serviceTime = new Histogram(DIGITS);
+
+    private long errorCount;
+
+    /**
+     * Record a completed request.
+     *
+     * @param latencyNanos     nanoseconds from when the request was due to its response.
+     * @param serviceTimeNanos nanoseconds from when the request was sent to its response.
+     * @param failed           whether the request failed or got a status other than 2xx.
+     */
+    void record(long latencyNanos, long serviceTimeNanos, boolean failed) {
+        latencies.recordValue(Math.max(0, latencyNanos));
+        serviceTimes.recordValue(Math.max(0, serviceTimeNanos));
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Move the times recorded since the last drain into the totals.
+     *
+     * @return latencies recorded since the last drain.
+     */
+    Histogram drain() {
+        Histogram interval = latencies.getIntervalHistogram();
+        latency.add(interval);
+        serviceTime.add(serviceTimes.getIntervalHistogram());
+        errorCount = errors.sum();
+        return interval;
+    }
+
+    /**
+     * Latencies of every drained request.
+     *
+     * @return histogram in nanoseconds.
+     */
+    Histogram latency() {
+        return latency;
+    }
+
+    /**
+     * Service times of every drained request.
+     *
+     * @return histogram in nanoseconds.
+     */
+    Histogram serviceTime() {
+        return serviceTime;
+    }
+
+    /**
+     * Number of drained requests that failed.
+     *
+     * @return errors.
+     */
+    long errors() {
+        return errorCount;
+    }
+
+}
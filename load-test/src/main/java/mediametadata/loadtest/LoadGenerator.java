@@ -0,0 +1,188 @@
+package mediametadata.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load: requests are started at the configured rate whether or not earlier ones have
+ * completed, and every request is timed from when the schedule made it due.
+ * <p>
+ * A closed loop that waits for a response before sending the next request slows down with the
+ * server and never sends the requests that would have waited, hiding the latency a server stall
+ * causes (coordinated omission). Here a stall delays neither the schedule nor the clocks of the
+ * requests due during it; when {@link LoadTestOptions#getConnections()} requests are in flight the
+ * next one waits for a connection, and that wait is part of its latency.
+ * <p>
+ * Requests due during the warmup are sent but not recorded. Every
+ * {@link #PROGRESS_INTERVAL_SECONDS} seconds the measured throughput and latency of the interval are printed.
+ */
+final class LoadGenerator {
+
+    /**
+     * Seconds between progress lines.
+     */
+    static final int PROGRESS_INTERVAL_SECONDS = 5;
+
+    /**
+     * Longest wait for the requests in flight when the schedule has ended.
+     */
+    private static final long DRAIN_TIMEOUT_SECONDS = 60;
+
+    private final LoadTestOptions options;
+
+    private final Endpoint.Target target;
+
+    private final HttpClient client;
+
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+
+    /**
+     * Endpoints that get requests and the sum of the weights up to each of them.
+     */
+    private final Endpoint[] endpoints;
+
+    private final int[] cumulativeWeights;
+
+    /**
+     * Create generator.
+     *
+     * @param options settings of the load.
+     * @param target  server and seeded catalogue.
+     * @param client  {@link HttpClient} to send with.
+     */
+    LoadGenerator(LoadTestOptions options, Endpoint.Target target, HttpClient client) {
+        this.options = options;
+        this.target = target;
+        this.client = client;
+        Map<Endpoint, Integer> mix = new EnumMap<>(options.getMix());
+        mix.values().removeIf(weight -> weight == 0);
+        endpoints = mix.keySet().toArray(new Endpoint[0]);
+        cumulativeWeights = new int[endpoints.length];
+        int total = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            total += mix.get(endpoints[i]);
+            cumulativeWeights[i] = total;
+            stats.put(endpoints[i], new EndpointStats());
+        }
+    }
+
+    /**
+     * Run the warmup and the measured load and wait for the last responses.
+     *
+     * @return {@link LoadTestReport} of the measured requests.
+     * @throws InterruptedException if interrupted while running.
+     */
+    LoadTestReport run() throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(options.getSeed());
+        Semaphore connections = new Semaphore(options.getConnections());
+        double interval = TimeUnit.SECONDS.toNanos(1) / options.getRate();
+        long start = System.nanoTime();
+        long measureFrom = start + options.getWarmup().toNanos();
+        long end = measureFrom + options.getDuration().toNanos();
+        Instant startedAt = Instant.now().plus(options.getWarmup());
+        Thread progress = new Thread(() -> printProgress(measureFrom), "load-test-progress");
+        progress.setDaemon(true);
+        progress.start();
+
+        double due = start;
+        while (due < end) {
+            long scheduled = (long) due;
+            for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+            }
+            int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int index = 0;
+            while (cumulativeWeights[index] <= pick) {
+                index++;
+            }
+            Endpoint endpoint = endpoints[index];
+            HttpRequest request = endpoint.request(target, random);
+            connections.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                long done = System.nanoTime();
+                connections.release();
+                if (scheduled >= measureFrom) {
+                    stats.get(endpoint).record(done - scheduled, done - sent,
+                            failure != null || response.statusCode() / 100 != 2);
+                }
+            });
+            due += options.isPoisson() ? -Math.log(1 - random.nextDouble()) * interval : interval;
+        }
+        if (!connections.tryAcquire(options.getConnections(), DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.out.println("Requests still in flight after " + DRAIN_TIMEOUT_SECONDS + "s are left out");
+        }
+        progress.interrupt();
+        progress.join();
+        return report(startedAt);
+    }
+
+    /**
+     * Print the throughput and latency of every measured interval until interrupted.
+     *
+     * @param measureFrom time the measurement starts.
+     */
+    private void printProgress(long measureFrom) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(measureFrom - System.nanoTime());
+            for (int seconds = PROGRESS_INTERVAL_SECONDS; ; seconds += PROGRESS_INTERVAL_SECONDS) {
+                TimeUnit.NANOSECONDS.sleep(measureFrom + TimeUnit.SECONDS.toNanos(seconds) - System.nanoTime());
+                Histogram interval = drain();
+                System.out.printf("%4ds %8.1f req/s  p50 %9.1f us  p99 %9.1f us  max %9.1f us%n",
+                        seconds, (double) interval.getTotalCount() / PROGRESS_INTERVAL_SECONDS,
+                        interval.getValueAtPercentile(50) / 1000.0, interval.getValueAtPercentile(99) / 1000.0,
+                        interval.getMaxValue() / 1000.0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Move the recorded times of every endpoint into its totals.
+     *
+     * @return latencies of all endpoints recorded since the last drain.
+     */
+    private synchronized Histogram drain() {
+        Histogram interval = new Histogram(3);
+        stats.values().forEach(endpointStats -> interval.add(endpointStats.drain()));
+        return interval;
+    }
+
+    /**
+     * Summarise the measured requests.
+     *
+     * @param startedAt time the measurement started.
+     * @return {@link LoadTestReport}.
+     */
+    private LoadTestReport report(Instant startedAt) {
+        drain();
+        double seconds = options.getDuration().toNanos() / 1e9;
+        Map<String, LoadTestReport.Result> results = new LinkedHashMap<>();
+        Histogram latency = new Histogram(3);
+        Histogram serviceTime = new Histogram(3);
+        long errors = 0;
+        for (Map.Entry<Endpoint, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpointStats = entry.getValue();
+            results.put(entry.getKey().getName(), LoadTestReport.Result.of(endpointStats.latency(),
+                    endpointStats.serviceTime(), endpointStats.errors(), seconds));
+            latency.add(endpointStats.latency());
+            serviceTime.add(endpointStats.serviceTime());
+            errors += endpointStats.errors();
+        }
+        return new LoadTestReport(startedAt.toString(), options.toMap(), seconds, results,
+                LoadTestReport.Result.of(latency, serviceTime, errors, seconds));
+    }
+
+}
@@ -0,0 +1,119 @@
+package mediametadata.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import mediametadata.model.Media;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load test of the REST API: starts the application unless a URL is given, seeds it with a
+ * {@link SyntheticCatalogue}, runs the {@link LoadGenerator} and writes a {@link LoadTestReport}.
+ * <p>
+ * Arguments are --name=value {@link LoadTestOptions}, e.g.
+ * {@code java -jar target/load-test.jar --rate=500 --duration=60 --labels=1000 --labelSkew=1}.
+ */
+public final class LoadTest {
+
+    /**
+     * Number of {@link Media} seeded by one bulk request.
+     */
+    private static final int SEED_BATCH_SIZE = 10_000;
+
+    private LoadTest() {
+    }
+
+    /**
+     * Run a load test.
+     *
+     * @param args --name=value settings.
+     * @throws IOException          if seeding or writing the report fails.
+     * @throws InterruptedException if interrupted while running.
+     */
+    public static void main(String... args) throws IOException, InterruptedException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (ServerProcess server = options.getUrl() == null ? ServerProcess.start(options, client) : null) {
+            URI url = server == null ? options.getUrl() : server.url();
+            SyntheticCatalogue catalogue = new SyntheticCatalogue(options.getSeed(), options.getLabels(),
+                    options.getLabelSkew(), options.getMaxLabels());
+            seed(client, url, catalogue.generate(options.getCatalogueSize()), objectMapper.writer());
+            System.out.printf("Loading %s at %.0f requests/s for %ds after %ds of warmup%n", url,
+                    options.getRate(), options.getDuration().toSeconds(), options.getWarmup().toSeconds());
+            LoadTestReport report = new LoadGenerator(options, new Endpoint.Target(url, catalogue,
+                    options.getCatalogueSize(), objectMapper.writer()), client).run();
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(options.getOutput().toFile(), report);
+            print(report);
+            System.out.println("Report written to " + options.getOutput().toAbsolutePath());
+        }
+    }
+
+    /**
+     * Store the catalogue through the bulk endpoint; {@link Media} already stored by an earlier run are skipped.
+     *
+     * @param client {@link HttpClient}.
+     * @param url    base URL of the server.
+     * @param media  {@link Media} to store.
+     * @param writer writer of the JSON lines.
+     * @throws IOException          if a request fails or is rejected.
+     * @throws InterruptedException if interrupted while waiting for a response.
+     */
+    private static void seed(HttpClient client, URI url, List<Media> media, ObjectWriter writer)
+            throws IOException, InterruptedException {
+        ObjectMapper reader = new ObjectMapper();
+        int added = 0;
+        for (int from = 0; from < media.size(); from += SEED_BATCH_SIZE) {
+            StringBuilder ndjson = new StringBuilder();
+            for (Media item : media.subList(from, Math.min(media.size(), from + SEED_BATCH_SIZE))) {
+                ndjson.append(writer.writeValueAsString(item)).append('\n');
+            }
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url + "/media/bulk"))
+                    .header("Content-Type", "application/x-ndjson")
+                    .POST(HttpRequest.BodyPublishers.ofString(ndjson.toString()))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Seeding failed with status " + response.statusCode() + ": " + response.body());
+            }
+            JsonNode result = reader.readTree(response.body());
+            if (result.get("failed").asInt() > 0) {
+                throw new IOException("Seeding failed for " + result.get("failed").asInt() + " media");
+            }
+            added += result.get("added").asInt();
+        }
+        System.out.printf("Seeded %d media, %d were already stored%n", media.size(), media.size() - added);
+    }
+
+    /**
+     * Print the results of every endpoint as a table.
+     *
+     * @param report {@link LoadTestReport}.
+     */
+    private static void print(LoadTestReport report) {
+        System.out.printf("%-18s %9s %7s %9s %10s %10s %10s %10s %10s%n", "endpoint", "requests", "errors",
+                "req/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (Map.Entry<String, LoadTestReport.Result> entry : report.endpoints().entrySet()) {
+            print(entry.getKey(), entry.getValue());
+        }
+        print("all", report.all());
+    }
+
+    private static void print(String name, LoadTestReport.Result result) {
+        LoadTestReport.Percentiles latency = result.latency();
+        System.out.printf("%-18s %9d %7d %9.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", name, result.requests(),
+                result.errors(), result.throughput(), latency.p50(), latency.p90(), latency.p99(), latency.p999(),
+                latency.max());
+    }
+
+}
@@ -0,0 +1,270 @@
+package mediametadata.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Settings of a {@link LoadTest}, parsed from --name=value arguments; every setting has a default.
+ */
+public final class LoadTestOptions {
+
+    /**
+     * Endpoint weights when no mix is given, mostly reads.
+     */
+    static final String DEFAULT_MIX = "findById=30,findAll=5,movies=5,series=5,title=5,search=10,related=10,"
+            + "similar=10,moviesByYear=5,seriesByEpisodes=5,facets=5,batchGet=3,add=2";
+
+    /**
+     * Server to load, null to start the application locally.
+     */
+    private URI url;
+
+    /**
+     * JVM arguments of a locally started server, separated by spaces.
+     */
+    private String serverJvmArgs = "-Xmx1g";
+
+    /**
+     * Application arguments of a locally started server, such as media.repository properties.
+     */
+    private String serverArgs = "";
+
+    /**
+     * File the output of a locally started server is written to.
+     */
+    private Path serverLog = Path.of("load-test-server.log");
+
+    /**
+     * Number of media seeded before the load starts.
+     */
+    private int catalogueSize = 10_000;
+
+    /**
+     * Number of distinct labels of the seeded media.
+     */
+    private int labels = 100;
+
+    /**
+     * Exponent of the Zipf distribution labels are drawn from, 0 for uniform.
+     */
+    private double labelSkew;
+
+    /**
+     * Highest number of labels of a media, each carries one up to this many.
+     */
+    private int maxLabels = 3;
+
+    /**
+     * Requests started per second.
+     */
+    private double rate = 200;
+
+    /**
+     * Whether requests start at exponentially distributed gaps instead of evenly.
+     */
+    private boolean poisson;
+
+    /**
+     * Time of load before measuring, to warm the server.
+     */
+    private Duration warmup = Duration.ofSeconds(10);
+
+    /**
+     * Time of measured load.
+     */
+    private Duration duration = Duration.ofSeconds(30);
+
+    /**
+     * Highest number of requests in flight, and so of open connections.
+     */
+    private int connections = 64;
+
+    /**
+     * Weight of every endpoint in the load.
+     */
+    private Map<Endpoint, Integer> mix = parseMix(DEFAULT_MIX);
+
+    /**
+     * File the JSON report is written to.
+     */
+    private Path output = Path.of("load-test-report.json");
+
+    /**
+     * Seed of the catalogue and of the requests.
+     */
+    private long seed = 42;
+
+    /**
+     * Parse arguments.
+     *
+     * @param args --name=value arguments, names as the getters without get.
+     * @return {@link LoadTestOptions}.
+     * @throws IllegalArgumentException if an argument is unknown or its value invalid.
+     */
+    public static LoadTestOptions parse(String... args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String value = arg.substring(equals + 1);
+            try {
+                switch (arg.substring(2, equals)) {
+                    case "url" -> options.url = URI.create(value.endsWith("/") ? value.substring(0, value.length() - 1) : value);
+                    case "serverJvmArgs" -> options.serverJvmArgs = value;
+                    case "serverArgs" -> options.serverArgs = value;
+                    case "serverLog" -> options.serverLog = Path.of(value);
+                    case "catalogueSize" -> options.catalogueSize = positive(Integer.parseInt(value), arg);
+                    case "labels" -> options.labels = positive(Integer.parseInt(value), arg);
+                    case "labelSkew" -> options.labelSkew = Double.parseDouble(value);
+                    case "maxLabels" -> options.maxLabels = positive(Integer.parseInt(value), arg);
+                    case "rate" -> options.rate = Double.parseDouble(value);
+                    case "poisson" -> options.poisson = Boolean.parseBoolean(value);
+                    case "warmup" -> options.warmup = Duration.ofSeconds(Long.parseLong(value));
+                    case "duration" -> options.duration = Duration.ofSeconds(Long.parseLong(value));
+                    case "connections" -> options.connections = positive(Integer.parseInt(value), arg);
+                    case "mix" -> options.mix = parseMix(value);
+                    case "output" -> options.output = Path.of(value);
+                    case "seed" -> options.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in " + arg, e);
+            }
+        }
+        if (!(options.rate > 0) || options.labelSkew < 0 || options.duration.isZero() || options.duration.isNegative()
+                || options.warmup.isNegative()) {
+            throw new IllegalArgumentException("rate and duration must be positive, labelSkew and warmup not negative");
+        }
+        return options;
+    }
+
+    /**
+     * Parse endpoint weights.
+     *
+     * @param mix comma separated name=weight pairs, endpoints left out get no requests.
+     * @return weights in {@link Endpoint} order.
+     * @throws IllegalArgumentException if a name is unknown, a weight negative or all weights 0.
+     */
+    static Map<Endpoint, Integer> parseMix(String mix) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String pair : mix.split(",")) {
+            String[] parts = pair.trim().split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Expected name=weight but got " + pair);
+            }
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight in " + pair);
+            }
+            weights.put(Endpoint.named(parts[0].trim()), weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("The mix has no requests: " + mix);
+        }
+        return weights;
+    }
+
+    private static int positive(int value, String arg) {
+        if (value < 1) {
+            throw new IllegalArgumentException("Expected a positive number in " + arg);
+        }
+        return value;
+    }
+
+    /**
+     * Settings as written to the report.
+     *
+     * @return settings by name.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("url", url == null ? null : url.toString());
+        map.put("serverJvmArgs", url == null ? serverJvmArgs : null);
+        map.put("serverArgs", url == null ? serverArgs : null);
+        map.put("catalogueSize", catalogueSize);
+        map.put("labels", labels);
+        map.put("labelSkew", labelSkew);
+        map.put("maxLabels", maxLabels);
+        map.put("rate", rate);
+        map.put("poisson", poisson);
+        map.put("warmupSeconds", warmup.toSeconds());
+        map.put("durationSeconds", duration.toSeconds());
+        map.put("connections", connections);
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        mix.forEach((endpoint, weight) -> weights.put(endpoint.getName(), weight));
+        map.put("mix", weights);
+        map.put("seed", seed);
+        return map;
+    }
+
+    public URI getUrl() {
+        return url;
+    }
+
+    public String getServerJvmArgs() {
+        return serverJvmArgs;
+    }
+
+    public String getServerArgs() {
+        return serverArgs;
+    }
+
+    public Path getServerLog() {
+        return serverLog;
+    }
+
+    public int getCatalogueSize() {
+        return catalogueSize;
+    }
+
+    public int getLabels() {
+        return labels;
+    }
+
+    public double getLabelSkew() {
+        return labelSkew;
+    }
+
+    public int getMaxLabels() {
+        return maxLabels;
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public boolean isPoisson() {
+        return poisson;
+    }
+
+    public Duration getWarmup() {
+        return warmup;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public Map<Endpoint, Integer> getMix() {
+        return mix;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+}
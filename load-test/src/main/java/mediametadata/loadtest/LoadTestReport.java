@@ -0,0 +1,90 @@
+package mediametadata.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * Result of a {@link LoadTest}, written as JSON so runs against different builds can be compared.
+ *
+ * @param startedAt       ISO-8601 time the measurement started.
+ * @param options         settings of the run.
+ * @param durationSeconds measured time.
+ * @param endpoints       result of every endpoint that got requests, by name.
+ * @param all             result of all requests together.
+ */
+public record LoadTestReport(String startedAt, Map<String, Object> options, double durationSeconds,
+                             Map<String, Result> endpoints, Result all) {
+
+    /**
+     * Requests, throughput and times of one endpoint or of all.
+     *
+     * @param requests         number of measured requests, completed or failed.
+     * @param errors           number of them that failed or got a status other than 2xx.
+     * @param throughput       requests completed per second.
+     * @param latency          times from when requests were due to their responses.
+     * @param serviceTime      times from when requests were sent to their responses.
+     * @param latencyHistogram latencies in nanoseconds as a compressed, base64 encoded HdrHistogram,
+     *                         to be decoded with {@link Histogram#decodeFromCompressedByteBuffer}.
+     */
+    public record Result(long requests, long errors, double throughput, Percentiles latency,
+                         Percentiles serviceTime, String latencyHistogram) {
+
+        /**
+         * Summarise the recorded times.
+         *
+         * @param latency         latencies in nanoseconds.
+         * @param serviceTime     service times in nanoseconds.
+         * @param errors          number of failed requests.
+         * @param durationSeconds measured time.
+         * @return {@link Result}.
+         */
+        static Result of(Histogram latency, Histogram serviceTime, long errors, double durationSeconds) {
+            return new Result(latency.getTotalCount(), errors, latency.getTotalCount() / durationSeconds,
+                    Percentiles.of(latency), Percentiles.of(serviceTime), encode(latency));
+        }
+
+        private static String encode(Histogram histogram) {
+            ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+            int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+            return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), length));
+        }
+
+    }
+
+    /**
+     * Percentiles of recorded times, in microseconds.
+     *
+     * @param mean  mean.
+     * @param p50   median.
+     * @param p90   90th percentile.
+     * @param p99   99th percentile.
+     * @param p999  99.9th percentile.
+     * @param p9999 99.99th percentile.
+     * @param max   highest time.
+     */
+    public record Percentiles(double mean, double p50, double p90, double p99, double p999, double p9999, double max) {
+
+        /**
+         * Read the percentiles of a histogram.
+         *
+         * @param histogram times in nanoseconds.
+         * @return {@link Percentiles}, all 0 if nothing was recorded.
+         */
+        static Percentiles of(Histogram histogram) {
+            return new Percentiles(micros(histogram.getMean()), micros(histogram.getValueAtPercentile(50)),
+                    micros(histogram.getValueAtPercentile(90)), micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getValueAtPercentile(99.99)),
+                    micros(histogram.getMaxValue()));
+        }
+
+        private static double micros(double nanos) {
+            return Math.round(nanos / 100) / 10.0;
+        }
+
+    }
+
+}
@@ -0,0 +1,118 @@
+package mediametadata.loadtest;
+
+import mediametadata.MediaMetadataApplication;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The application started in a JVM of its own on a free local port, so it does not share heap, GC
+ * and JIT with the load generator. Its output goes to a log file.
+ */
+final class ServerProcess implements AutoCloseable {
+
+    /**
+     * Longest wait for the application to report healthy.
+     */
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(2);
+
+    private final Process process;
+
+    private final URI url;
+
+    private ServerProcess(Process process, URI url) {
+        this.process = process;
+        this.url = url;
+    }
+
+    /**
+     * Start the application with the classpath of this JVM and wait until it is healthy.
+     *
+     * @param options settings with the JVM and application arguments and the log file.
+     * @param client  {@link HttpClient} to check health with.
+     * @return running {@link ServerProcess}.
+     * @throws IOException          if the process cannot be started.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws IllegalStateException if the application exits or is not healthy in time.
+     */
+    static ServerProcess start(LoadTestOptions options, HttpClient client) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(split(options.getServerJvmArgs()));
+        command.addAll(List.of("-cp", System.getProperty("java.class.path"), MediaMetadataApplication.class.getName(),
+                "--server.port=" + port));
+        command.addAll(split(options.getServerArgs()));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(options.getServerLog().toFile())
+                .start();
+        ServerProcess server = new ServerProcess(process, URI.create("http://localhost:" + port));
+        try {
+            server.awaitHealthy(client, options.getServerLog());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+        return server;
+    }
+
+    /**
+     * Base URL of the application.
+     *
+     * @return URL without a trailing slash.
+     */
+    URI url() {
+        return url;
+    }
+
+    /**
+     * Stop the application, forcibly if it does not stop within seconds.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(30, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    private void awaitHealthy(HttpClient client, Path log) throws IOException, InterruptedException {
+        HttpRequest health = HttpRequest.newBuilder(URI.create(url + "/actuator/health")).GET().build();
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("Application exited with " + process.exitValue() + ", see " + log);
+            }
+            try {
+                if (client.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+        throw new IllegalStateException("Application not healthy after " + STARTUP_TIMEOUT + ", see " + log);
+    }
+
+    private static List<String> split(String args) {
+        return args.isBlank() ? List.of() : Arrays.asList(args.trim().split("\\s+"));
+    }
+
+}
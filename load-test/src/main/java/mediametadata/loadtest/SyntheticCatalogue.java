@@ -0,0 +1,131 @@
+package mediametadata.loadtest;
+
+import mediametadata.model.Media;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Generates the same catalogue of {@link Media} for the same seed and settings, so runs against
+ * different builds load the same data.
+ * <p>
+ * Every {@link Media} has a unique id and a title of two words from {@link #WORDS} and its number,
+ * half are {@link Movie} released between 1950 and 2024 and half {@link Series} of 1 to 200 episodes.
+ * Each carries one to the maximum number of distinct labels, drawn from a Zipf distribution over the
+ * labels, so a skew of 0 draws them uniformly and larger skews make the first labels ever more common.
+ */
+public final class SyntheticCatalogue {
+
+    /**
+     * Words titles are made of, title queries use them.
+     */
+    public static final String[] WORDS = {
+            "Dark", "Night", "Star", "River", "Iron", "Ghost", "Summer", "Winter",
+            "Empire", "Garden", "Shadow", "Ocean", "Crown", "Storm", "Silver", "Forest"
+    };
+
+    private final long seed;
+
+    private final int maxLabels;
+
+    /**
+     * Cumulative probability of every label, the last is 1.
+     */
+    private final double[] labelDistribution;
+
+    /**
+     * Create catalogue.
+     *
+     * @param seed      seed of the ids, titles and labels.
+     * @param labels    number of distinct labels.
+     * @param labelSkew exponent of the Zipf distribution of the labels, 0 for uniform.
+     * @param maxLabels highest number of labels of a {@link Media}, at most the number of labels.
+     */
+    public SyntheticCatalogue(long seed, int labels, double labelSkew, int maxLabels) {
+        this.seed = seed;
+        this.maxLabels = Math.min(maxLabels, labels);
+        labelDistribution = new double[labels];
+        double total = 0;
+        for (int rank = 0; rank < labels; rank++) {
+            total += 1 / Math.pow(rank + 1, labelSkew);
+            labelDistribution[rank] = total;
+        }
+        for (int rank = 0; rank < labels; rank++) {
+            labelDistribution[rank] /= total;
+        }
+        labelDistribution[labels - 1] = 1;
+    }
+
+    /**
+     * Generate the seeded {@link Media}.
+     *
+     * @param size number of {@link Media}.
+     * @return {@link Media} numbered 0 to size - 1.
+     */
+    public List<Media> generate(int size) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Media> media = new ArrayList<>(size);
+        for (int number = 0; number < size; number++) {
+            media.add(media(random, id(number), title(random, number)));
+        }
+        return media;
+    }
+
+    /**
+     * Generate {@link Media} with an id and title no other run or catalogue uses.
+     *
+     * @param random source of the labels and fields.
+     * @return {@link Movie} or {@link Series}.
+     */
+    public Media generateNew(SplittableRandom random) {
+        UUID id = UUID.randomUUID();
+        return media(random, id, "Added " + id);
+    }
+
+    /**
+     * Id of seeded {@link Media}.
+     *
+     * @param number number of the {@link Media}.
+     * @return id.
+     */
+    public UUID id(long number) {
+        return new UUID(seed, number);
+    }
+
+    /**
+     * Draw a label.
+     *
+     * @param random source of the label.
+     * @return label, the first labels being the most common with a skew.
+     */
+    public String label(SplittableRandom random) {
+        int rank = Arrays.binarySearch(labelDistribution, random.nextDouble());
+        return "Label " + Math.min(rank < 0 ? -rank - 1 : rank, labelDistribution.length - 1);
+    }
+
+    private static String title(SplittableRandom random, long number) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + number;
+    }
+
+    private Media media(SplittableRandom random, UUID id, String title) {
+        int count = 1 + random.nextInt(maxLabels);
+        Set<String> labels = new LinkedHashSet<>();
+        while (labels.size() < count) {
+            labels.add(label(random));
+        }
+        if (random.nextBoolean()) {
+            return new Movie(id, title, new ArrayList<>(labels), "Director " + random.nextInt(1000),
+                    new Date((1950 + random.nextInt(75) - 1970) * 31_556_952_000L));
+        }
+        return new Series(id, title, new ArrayList<>(labels), 1 + random.nextInt(200));
+    }
+
+}
@@ -0,0 +1,70 @@
+package mediametadata;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs every request on its own virtual thread instead of the Tomcat worker pool when
+ * media.web.virtual-threads is true.
+ * <p>
+ * The build targets Java 16, so the executor is looked up reflectively and only found when running
+ * on Java 21 or later; where virtual threads are not available the worker pool is kept and a
+ * warning is logged.
+ */
+@Component
+@ConditionalOnProperty(name = "media.web.virtual-threads", havingValue = "true")
+public class VirtualThreadCustomizer implements WebServerFactoryCustomizer<TomcatServletWebServerFactory>, DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadCustomizer.class);
+
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Hand requests of every Tomcat connector to the virtual thread executor, if there is one.
+     *
+     * @param factory {@link TomcatServletWebServerFactory} of the web server.
+     */
+    @Override
+    public void customize(TomcatServletWebServerFactory factory) {
+        if (executor != null) {
+            factory.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(executor));
+        }
+    }
+
+    /**
+     * Stop the executor once the web server has stopped.
+     */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Create an executor starting a virtual thread per task.
+     *
+     * @return {@link ExecutorService}, null if this Java has no virtual threads or needs preview features enabled.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            LOGGER.warn("Virtual threads are not available on Java {}, serving requests on platform threads",
+                    Runtime.version().feature());
+        } catch (InvocationTargetException e) {
+            LOGGER.warn("Virtual threads could not be started, serving requests on platform threads", e.getCause());
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,14 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+
+import java.util.List;
+
+/**
+ * Outcome of looking up a list of ids in one snapshot.
+ *
+ * @param found   {@link Media} stored under the ids, in the order their ids were first given.
+ * @param missing ids under which no {@link Media} is stored, including ids that are not UUIDs, in the order given.
+ */
+public record BatchGetResult(List<Media> found, List<String> missing) {
+}
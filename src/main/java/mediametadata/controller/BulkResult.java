@@ -0,0 +1,40 @@
+package mediametadata.controller;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import mediametadata.model.Media;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outcome of a bulk load of newline-delimited {@link Media} JSON.
+ *
+ * @param added      number of lines stored as new {@link Media}.
+ * @param duplicates number of lines whose id or title was already stored.
+ * @param failed     number of lines that could not be parsed.
+ * @param lines      outcome of every non-blank line, in input order.
+ */
+public record BulkResult(int added, int duplicates, int failed, List<Line> lines) {
+
+    /**
+     * Outcome of a line.
+     */
+    public enum Status {
+        ADDED,
+        DUPLICATE,
+        FAILED
+    }
+
+    /**
+     * Outcome of one line.
+     *
+     * @param line   line number, starting at 1.
+     * @param status {@link Status} of the line.
+     * @param id     {@link UUID} of the stored {@link Media}, null if the line failed.
+     * @param error  reason the line failed, null otherwise.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Line(int line, Status status, UUID id, String error) {
+    }
+
+}
@@ -0,0 +1,137 @@
+package mediametadata.controller;
+
+import mediametadata.index.LabelIndex;
+import mediametadata.model.LabelDictionary;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.model.Movie;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts of stored {@link Media} by {@link MediaType}, genre label and decade of release, kept up
+ * to date on every add and delete instead of scanning the catalogue.
+ * <p>
+ * Counts are kept for every filter a {@link Facets} can be asked for: every {@link MediaType},
+ * alone and together with every label. A {@link Media} with n labels therefore changes 2(n + 1)
+ * sets of counts, and reading costs the number of distinct labels and decades however many
+ * {@link Media} are stored. One thread at a time may change counts while any number of threads read;
+ * a read during a write may see part of it.
+ */
+final class FacetCounts {
+
+    /**
+     * Number of years of one release year bucket.
+     */
+    private static final int YEARS_PER_BUCKET = 10;
+
+    /**
+     * Label id of the counts not filtered by label.
+     */
+    private static final int ANY_LABEL = -1;
+
+    /**
+     * Counts by {@link MediaType} ordinal and label id of the filter.
+     */
+    private final Map<Long, Counts> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Counts of the {@link Media} matching one filter.
+     */
+    private static final class Counts {
+
+        private final Map<Integer, Integer> types = new ConcurrentHashMap<>();
+
+        private final Map<Integer, Integer> labels = new ConcurrentHashMap<>();
+
+        private final Map<Integer, Integer> buckets = new ConcurrentHashMap<>();
+
+        /**
+         * Count {@link Media} in or out.
+         *
+         * @param media  {@link Media}.
+         * @param bucket release year bucket, null if it has none.
+         * @param delta  1 to count in, -1 to count out.
+         */
+        private void add(Media media, Integer bucket, int delta) {
+            types.merge(MediaType.ALL.ordinal(), delta, Integer::sum);
+            types.merge(media.getMediaType().ordinal(), delta, Integer::sum);
+            long[] labelSet = media.getLabelSet();
+            for (int id = LabelIndex.nextLabel(labelSet, 0); id >= 0; id = LabelIndex.nextLabel(labelSet, id + 1)) {
+                labels.merge(id, delta, Integer::sum);
+            }
+            if (bucket != null) {
+                buckets.merge(bucket, delta, Integer::sum);
+            }
+        }
+
+    }
+
+    /**
+     * Count stored {@link Media} in or out of every filter it matches, holding the write lock.
+     *
+     * @param media {@link Media} added or deleted.
+     * @param delta 1 when it is stored, -1 when it is deleted.
+     */
+    void add(Media media, int delta) {
+        Integer bucket = media instanceof Movie movie && movie.getReleaseDate() != null ?
+                Math.floorDiv(MediaRepository.releaseYear(movie), YEARS_PER_BUCKET) * YEARS_PER_BUCKET : null;
+        long[] labelSet = media.getLabelSet();
+        for (MediaType mediaType : new MediaType[]{MediaType.ALL, media.getMediaType()}) {
+            counts.computeIfAbsent(key(mediaType, ANY_LABEL), key -> new Counts()).add(media, bucket, delta);
+            for (int id = LabelIndex.nextLabel(labelSet, 0); id >= 0; id = LabelIndex.nextLabel(labelSet, id + 1)) {
+                counts.computeIfAbsent(key(mediaType, id), key -> new Counts()).add(media, bucket, delta);
+            }
+        }
+    }
+
+    /**
+     * Read the counts of a filter.
+     *
+     * @param mediaType {@link MediaType} to count, ALL for every {@link Media}.
+     * @param label     genre label the counted {@link Media} have to carry, null for any.
+     * @return {@link Facets}, labels and buckets without {@link Media} left out.
+     */
+    Facets facets(MediaType mediaType, String label) {
+        int id = label == null ? ANY_LABEL : LabelDictionary.global().find(label);
+        Counts filtered = label != null && id < 0 ? null : counts.get(key(mediaType, id));
+        Map<MediaType, Integer> types = new EnumMap<>(MediaType.class);
+        for (MediaType type : new MediaType[]{MediaType.MOVIE, MediaType.SERIES}) {
+            types.put(type, filtered == null ? 0 : filtered.types.getOrDefault(type.ordinal(), 0));
+        }
+        Map<String, Integer> labels = new LinkedHashMap<>();
+        Map<Integer, Integer> releaseYears = new TreeMap<>();
+        if (filtered == null) {
+            return new Facets(0, types, labels, releaseYears);
+        }
+        LabelDictionary dictionary = LabelDictionary.global();
+        filtered.labels.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                        .thenComparing(entry -> dictionary.label(entry.getKey()), Comparator.naturalOrder()))
+                .forEach(entry -> labels.put(dictionary.label(entry.getKey()), entry.getValue()));
+        filtered.buckets.forEach((bucket, count) -> {
+            if (count > 0) {
+                releaseYears.put(bucket, count);
+            }
+        });
+        return new Facets(filtered.types.getOrDefault(MediaType.ALL.ordinal(), 0), types, labels, releaseYears);
+    }
+
+    /**
+     * Key of the counts of a filter.
+     *
+     * @param mediaType {@link MediaType} of the filter.
+     * @param label     label id of the filter, {@link #ANY_LABEL} for any.
+     * @return key.
+     */
+    private static long key(MediaType mediaType, int label) {
+        return (long) mediaType.ordinal() << 32 | (label & 0xffffffffL);
+    }
+
+}
@@ -0,0 +1,18 @@
+package mediametadata.controller;
+
+import mediametadata.model.MediaType;
+
+import java.util.Map;
+
+/**
+ * Counts of the stored {@link mediametadata.model.Media} matching a filter.
+ *
+ * @param count        number of {@link mediametadata.model.Media}.
+ * @param types        number of {@link mediametadata.model.Media} by MOVIE and SERIES.
+ * @param labels       number of {@link mediametadata.model.Media} carrying each genre label, most common first.
+ * @param releaseYears number of {@link mediametadata.model.Movie} by the first year of the decade of
+ *                     their release, earliest first.
+ */
+public record Facets(int count, Map<MediaType, Integer> types, Map<String, Integer> labels,
+                     Map<Integer, Integer> releaseYears) {
+}
@@ -0,0 +1,194 @@
+package mediametadata.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import mediametadata.model.Media;
+
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+/**
+ * UTF-8 JSON of stored {@link Media} by slot, so listings are written by copying bytes instead of
+ * serialising every {@link Media} again. A slot never holds another record, so a fragment stays
+ * valid until the slot is invalidated on delete.
+ * <p>
+ * The fragments together are bounded in bytes. Eviction approximates least recently used with a
+ * clock: a hit marks its fragment, and the hand sweeping the slots clears marks and evicts the
+ * fragments that were not hit since it last passed. Lookups take no lock; only eviction does.
+ */
+final class FragmentCache {
+
+    private static final int CHUNK_BITS = 14;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ObjectWriter writer;
+
+    private final long maxBytes;
+
+    private volatile AtomicReferenceArray<Fragment>[] chunks = newChunks(0);
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Next slot the clock looks at, guarded by this.
+     */
+    private int hand;
+
+    /**
+     * Create cache.
+     *
+     * @param writer   {@link ObjectWriter} serialising {@link Media}.
+     * @param maxBytes maximum number of bytes of all fragments together, 0 to cache nothing.
+     */
+    FragmentCache(ObjectWriter writer, long maxBytes) {
+        this.writer = writer;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * JSON of the {@link Media} at a slot, serialised and cached if it is not cached yet.
+     *
+     * @param slot  slot of {@link Media}.
+     * @param media {@link Media} stored at a slot.
+     * @return UTF-8 JSON, not to be modified.
+     * @throws UncheckedIOException if the {@link Media} cannot be serialised.
+     */
+    byte[] fragment(int slot, IntFunction<Media> media) {
+        AtomicReferenceArray<Fragment>[] current = chunks;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk < current.length) {
+            Fragment fragment = current[chunk].get(slot & CHUNK_MASK);
+            if (fragment != null) {
+                if (!fragment.referenced) {
+                    fragment.referenced = true;
+                }
+                return fragment.json;
+            }
+        }
+        byte[] json;
+        try {
+            json = writer.writeValueAsBytes(media.apply(slot));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Could not serialise media at slot " + slot, e);
+        }
+        if (json.length <= maxBytes) {
+            put(slot, json);
+        }
+        return json;
+    }
+
+    /**
+     * Drop the fragment of a slot.
+     *
+     * @param slot slot of deleted {@link Media}.
+     */
+    void invalidate(int slot) {
+        AtomicReferenceArray<Fragment>[] current = chunks;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk < current.length) {
+            Fragment fragment = current[chunk].getAndSet(slot & CHUNK_MASK, null);
+            if (fragment != null) {
+                bytes.addAndGet(-fragment.json.length);
+            }
+        }
+    }
+
+    /**
+     * Number of bytes of the cached fragments.
+     *
+     * @return number of bytes.
+     */
+    long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Cache the fragment of a slot unless another thread cached it first, evicting beyond the limit.
+     *
+     * @param slot slot of {@link Media}.
+     * @param json fragment, not larger than the limit.
+     */
+    private void put(int slot, byte[] json) {
+        int chunk = slot >>> CHUNK_BITS;
+        AtomicReferenceArray<Fragment>[] current = chunks;
+        if (chunk >= current.length) {
+            current = grow(chunk);
+        }
+        if (current[chunk].compareAndSet(slot & CHUNK_MASK, null, new Fragment(json))
+                && bytes.addAndGet(json.length) > maxBytes) {
+            evict();
+        }
+    }
+
+    /**
+     * Add chunks up to a chunk.
+     *
+     * @param chunk chunk that has to exist.
+     * @return chunks.
+     */
+    private synchronized AtomicReferenceArray<Fragment>[] grow(int chunk) {
+        AtomicReferenceArray<Fragment>[] current = chunks;
+        if (chunk >= current.length) {
+            AtomicReferenceArray<Fragment>[] grown = Arrays.copyOf(current, chunk + 1);
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new AtomicReferenceArray<>(CHUNK_SIZE);
+            }
+            chunks = grown;
+            current = grown;
+        }
+        return current;
+    }
+
+    /**
+     * Move the clock hand until the fragments fit the limit again.
+     */
+    private synchronized void evict() {
+        AtomicReferenceArray<Fragment>[] current = chunks;
+        while (bytes.get() > maxBytes) {
+            if (hand >= current.length << CHUNK_BITS) {
+                current = chunks;
+                hand = 0;
+            }
+            AtomicReferenceArray<Fragment> chunk = current[hand >>> CHUNK_BITS];
+            Fragment fragment = chunk.get(hand & CHUNK_MASK);
+            if (fragment != null) {
+                if (fragment.referenced) {
+                    fragment.referenced = false;
+                } else if (chunk.compareAndSet(hand & CHUNK_MASK, fragment, null)) {
+                    bytes.addAndGet(-fragment.json.length);
+                }
+            }
+            hand++;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<Fragment>[] newChunks(int length) {
+        return new AtomicReferenceArray[length];
+    }
+
+    /**
+     * Cached JSON with the mark of the clock.
+     */
+    private static final class Fragment {
+
+        private final byte[] json;
+
+        /**
+         * True if hit since the clock hand last passed, races only cost an extra pass or eviction.
+         */
+        private volatile boolean referenced;
+
+        Fragment(byte[] json) {
+            this.json = json;
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package mediametadata.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a page cursor was not issued for the requested listing, answered with 400 Bad Request.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create exception for the cursor.
+     *
+     * @param cursor cursor that was sent.
+     */
+    public InvalidCursorException(String cursor) {
+        super("Invalid cursor " + cursor);
+    }
+
+}
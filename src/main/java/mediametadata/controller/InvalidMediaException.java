@@ -0,0 +1,25 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when posted JSON is neither a {@link mediametadata.model.Movie} nor a
+ * {@link mediametadata.model.Series}, answered with 400 Bad Request.
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidMediaException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create exception for the content that could not be read as {@link Media}.
+     *
+     * @param cause reason the content was rejected.
+     */
+    public InvalidMediaException(Throwable cause) {
+        super("Invalid media: " + cause.getMessage(), cause);
+    }
+
+}
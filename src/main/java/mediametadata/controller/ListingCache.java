@@ -0,0 +1,115 @@
+package mediametadata.controller;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serialised bodies of full listings, one per listing, each tagged with the version it was
+ * written at. A body is only served while its listing is still at that version. The bodies
+ * together are bounded in bytes, the least recently used listing is dropped first.
+ * <p>
+ * Only one writer at a time captures the body of a listing at a version: it claims the capture
+ * first, concurrent writers that miss the cache stream the listing without keeping a copy.
+ * <p>
+ * All methods are synchronised; they only look up or swap a reference.
+ */
+final class ListingCache {
+
+    private final long maxBytes;
+
+    private final Map<String, Body> bodies = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Version of every listing whose body is being captured.
+     */
+    private final Map<String, Long> capturing = new HashMap<>();
+
+    private long bytes;
+
+    /**
+     * Create cache.
+     *
+     * @param maxBytes maximum number of bytes of all bodies together.
+     */
+    ListingCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Maximum number of bytes of one body.
+     *
+     * @return number of bytes.
+     */
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Cached body of a listing.
+     *
+     * @param listing name of the listing.
+     * @param version version the body has to be written at.
+     * @return body, null if none is cached for the version.
+     */
+    synchronized byte[] get(String listing, long version) {
+        Body body = bodies.get(listing);
+        return body != null && body.version() == version ? body.bytes() : null;
+    }
+
+    /**
+     * Claim the capture of the body of a listing at a version.
+     *
+     * @param listing name of the listing.
+     * @param version version the body is written at.
+     * @return true if the caller captures the body and has to {@link #complete(String, long, byte[])}
+     * the capture, false if the cache is disabled or the listing is captured at this or a later version.
+     */
+    synchronized boolean claim(String listing, long version) {
+        Long claimed = capturing.get(listing);
+        if (maxBytes == 0 || claimed != null && claimed >= version) {
+            return false;
+        }
+        capturing.put(listing, version);
+        return true;
+    }
+
+    /**
+     * End a claimed capture, caching the body unless a body of a later version is cached.
+     *
+     * @param listing name of the listing.
+     * @param version version the body was written at.
+     * @param body    serialised listing, null if it was not captured in full.
+     */
+    synchronized void complete(String listing, long version, byte[] body) {
+        capturing.remove(listing, version);
+        if (body == null) {
+            return;
+        }
+        Body cached = bodies.get(listing);
+        if (body.length > maxBytes || cached != null && cached.version() > version) {
+            return;
+        }
+        if (cached != null) {
+            bytes -= cached.bytes().length;
+        }
+        bodies.put(listing, new Body(version, body));
+        bytes += body.length;
+        Iterator<Body> eldest = bodies.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().bytes().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Serialised listing.
+     *
+     * @param version version it was written at.
+     * @param bytes   JSON.
+     */
+    private record Body(long version, byte[] bytes) {
+    }
+
+}
@@ -0,0 +1,26 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when deleted {@link Media} cannot be restored because another stored {@link Media}
+ * has its title, answered with 409 Conflict.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class MediaConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create exception for the {@link Media} that could not be restored.
+     *
+     * @param id    {@link java.util.UUID} of {@link Media} that was requested.
+     * @param title title already stored.
+     */
+    public MediaConflictException(String id, String title) {
+        super("Could not restore media " + id + ", another media is stored as " + title);
+    }
+
+}
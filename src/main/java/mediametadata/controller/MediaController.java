@@ -4,12 +4,24 @@ import mediametadata.model.Media;
 import mediametadata.model.MediaType;
 import mediametadata.model.Movie;
 import mediametadata.model.Series;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.List;
 
 /**
  * Controller that manages REST calls.
+ * <p>
+ * GET responses carry an ETag made of the {@link MediaRepository#epoch()} and the version of what
+ * they show: the partition version for listings of stored {@link Media}, the repository version
+ * for deleted listings and the record version for a single {@link Media}. A request whose
+ * If-None-Match holds the current ETag is answered with 304 Not Modified without reading any {@link Media}.
  */
 @RestController
 public class MediaController {
@@ -19,99 +31,265 @@ public class MediaController {
      */
     private final MediaRepository mediaRepository;
 
+    /**
+     * Page size used when a cursor is sent without a limit.
+     */
+    static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Largest number of {@link SearchHit} a fuzzy search may ask for.
+     */
+    static final int MAX_SEARCH_RESULTS = 100;
+
+    /**
+     * Number of {@link Media} an approximate related search returns when no limit is sent.
+     */
+    static final int DEFAULT_SIMILAR_LIMIT = 10;
+
+    /**
+     * Largest number of ids a batch get may look up.
+     */
+    static final int MAX_BATCH_IDS = 1000;
+
+    /**
+     * {@link MediaJsonWriter}.
+     */
+    private final MediaJsonWriter mediaJsonWriter;
+
     /**
      * Initialises the {@link MediaRepository}.
      *
      * @param mediaRepository repository used to {@link Media}.
+     * @param mediaJsonWriter writer streaming {@link Media} listings to the response.
      */
-    MediaController(MediaRepository mediaRepository) {
+    MediaController(MediaRepository mediaRepository, MediaJsonWriter mediaJsonWriter) {
         this.mediaRepository = mediaRepository;
+        this.mediaJsonWriter = mediaJsonWriter;
     }
 
     /**
      * GET for /media. Optionally include string using title variable
      * to fetch character matched {@link List} of {@link Media}.
      *
-     * @param title Optional variable to return List of matched characters in title.
-     * @return {@link List} of {@link Media}.
+     * @param title      Optional variable to return List of matched characters in title.
+     * @param ignoreCase Optional variable to match the title characters regardless of case.
+     * @param limit      Optional page size, returns a {@link MediaPage} instead of every {@link Media}.
+     * @param cursor     Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request    request checked for a matching ETag.
+     * @param response   response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media")
-    List<Media> all(@RequestParam(required = false, value = "title") String title) {
-        return title != null ?
-                mediaRepository.findByCharacters(title) :
-                mediaRepository.findAll(MediaType.ALL);
+    void all(@RequestParam(required = false, value = "title") String title,
+             @RequestParam(defaultValue = "false", value = "ignoreCase") boolean ignoreCase,
+             @RequestParam(required = false, value = "limit") Integer limit,
+             @RequestParam(required = false, value = "cursor") String cursor,
+             WebRequest request, HttpServletResponse response) throws IOException {
+        if (title == null) {
+            list(MediaType.ALL, false, limit, cursor, request, response);
+        } else if (!notModified(request, mediaRepository.version(MediaType.ALL))) {
+            mediaJsonWriter.writeArray(mediaRepository.findByCharacters(title, ignoreCase), response);
+        }
     }
 
     /**
      * Find {@link Media} based on {@link java.util.UUID}.
      *
-     * @param id {@link java.util.UUID} of {@link Media}.
-     * @return {@link Media}.
+     * @param id      {@link java.util.UUID} of {@link Media}.
+     * @param request request checked for a matching ETag.
+     * @return {@link Media}, null if not modified.
      */
     @GetMapping("/media/{id}")
-    Media findById(@PathVariable String id) {
+    Media findById(@PathVariable String id, WebRequest request) {
+        if (notModified(request, mediaRepository.recordVersion(id))) {
+            return null;
+        }
         return mediaRepository.findById(id);
     }
 
     /**
-     * Find all {@link Movie}.
+     * Find the {@link Media} of a list of ids in one request, all read from the same snapshot.
      *
-     * @return {@link List} of all {@link Movie}.
+     * @param ids JSON array of {@link java.util.UUID}.
+     * @return {@link BatchGetResult} of the found {@link Media} and the missing ids.
+     */
+    @PostMapping("/media/batch-get")
+    BatchGetResult batchGet(@RequestBody List<String> ids) {
+        if (ids.size() > MAX_BATCH_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "at most " + MAX_BATCH_IDS + " ids can be looked up at once");
+        }
+        return mediaRepository.findByIds(ids);
+    }
+
+    /**
+     * Find all {@link Movie}, or those released in a range of years ordered by year.
+     *
+     * @param yearFrom Optional first release year.
+     * @param yearTo   Optional last release year.
+     * @param limit    Optional page size, returns a {@link MediaPage} instead of every {@link Movie}.
+     * @param cursor   Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request  request checked for a matching ETag.
+     * @param response response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/movies")
-    List<Media> allMovies() {
-        return mediaRepository.findAll(MediaType.MOVIE);
+    void allMovies(@RequestParam(required = false, value = "yearFrom") Integer yearFrom,
+                   @RequestParam(required = false, value = "yearTo") Integer yearTo,
+                   @RequestParam(required = false, value = "limit") Integer limit,
+                   @RequestParam(required = false, value = "cursor") String cursor,
+                   WebRequest request, HttpServletResponse response) throws IOException {
+        if (yearFrom == null && yearTo == null) {
+            list(MediaType.MOVIE, false, limit, cursor, request, response);
+        } else if (!notModified(request, mediaRepository.version(MediaType.MOVIE))) {
+            if (limit == null && cursor == null) {
+                mediaJsonWriter.writeArray(mediaRepository.findMoviesByYear(yearFrom, yearTo), response);
+            } else {
+                mediaJsonWriter.writePage(mediaRepository.findMoviesByYear(yearFrom, yearTo, cursor,
+                        pageSize(limit)), response);
+            }
+        }
     }
 
     /**
-     * Fina all {@link Series}.
+     * Fina all {@link Series}, or those with a range of episodes ordered by number of episodes.
      *
-     * @return {@link List} of all {@link Series}.
+     * @param minEpisodes Optional fewest episodes.
+     * @param maxEpisodes Optional most episodes.
+     * @param limit       Optional page size, returns a {@link MediaPage} instead of every {@link Series}.
+     * @param cursor      Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request     request checked for a matching ETag.
+     * @param response    response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/series")
-    List<Media> allSeries() {
-        return mediaRepository.findAll(MediaType.SERIES);
+    void allSeries(@RequestParam(required = false, value = "minEpisodes") Integer minEpisodes,
+                   @RequestParam(required = false, value = "maxEpisodes") Integer maxEpisodes,
+                   @RequestParam(required = false, value = "limit") Integer limit,
+                   @RequestParam(required = false, value = "cursor") String cursor,
+                   WebRequest request, HttpServletResponse response) throws IOException {
+        if (minEpisodes == null && maxEpisodes == null) {
+            list(MediaType.SERIES, false, limit, cursor, request, response);
+        } else if (!notModified(request, mediaRepository.version(MediaType.SERIES))) {
+            if (limit == null && cursor == null) {
+                mediaJsonWriter.writeArray(mediaRepository.findSeriesByEpisodes(minEpisodes, maxEpisodes), response);
+            } else {
+                mediaJsonWriter.writePage(mediaRepository.findSeriesByEpisodes(minEpisodes, maxEpisodes, cursor,
+                        pageSize(limit)), response);
+            }
+        }
     }
 
     /**
-     * Find {@link List} of deleted {@link Media}.
+     * Find {@link Collection} of deleted {@link Media}.
      *
-     * @return {@link List}.
+     * @param limit    Optional page size, returns a {@link MediaPage} instead of every {@link Media}.
+     * @param cursor   Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request  request checked for a matching ETag.
+     * @param response response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/deleted")
-    List<Media> findDeletedAll() {
-        return mediaRepository.findDeleted(MediaType.ALL);
+    void findDeletedAll(@RequestParam(required = false, value = "limit") Integer limit,
+                        @RequestParam(required = false, value = "cursor") String cursor,
+                        WebRequest request, HttpServletResponse response) throws IOException {
+        list(MediaType.ALL, true, limit, cursor, request, response);
     }
 
     /**
-     * Find {@link List} of deleted {@link Movie}.
+     * Find {@link Collection} of deleted {@link Movie}.
      *
-     * @return {@link List}.
+     * @param limit    Optional page size, returns a {@link MediaPage} instead of every {@link Movie}.
+     * @param cursor   Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request  request checked for a matching ETag.
+     * @param response response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/movie/deleted")
-    List<Media> findDeletedMovies() {
-        return mediaRepository.findDeleted(MediaType.MOVIE);
+    void findDeletedMovies(@RequestParam(required = false, value = "limit") Integer limit,
+                           @RequestParam(required = false, value = "cursor") String cursor,
+                           WebRequest request, HttpServletResponse response) throws IOException {
+        list(MediaType.MOVIE, true, limit, cursor, request, response);
     }
 
     /**
-     * Find {@link List} of deleted {@link Series}.
+     * Find {@link Collection} of deleted {@link Series}.
      *
-     * @return {@link List}.
+     * @param limit    Optional page size, returns a {@link MediaPage} instead of every {@link Series}.
+     * @param cursor   Optional cursor of the next page returned with the previous {@link MediaPage}.
+     * @param request  request checked for a matching ETag.
+     * @param response response the JSON is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/series/deleted")
-    List<Media> findDeletedSeries() {
-        return mediaRepository.findDeleted(MediaType.SERIES);
+    void findDeletedSeries(@RequestParam(required = false, value = "limit") Integer limit,
+                           @RequestParam(required = false, value = "cursor") String cursor,
+                           WebRequest request, HttpServletResponse response) throws IOException {
+        list(MediaType.SERIES, true, limit, cursor, request, response);
     }
 
     /**
-     * Find {@link Media} based on related labels.
+     * Find {@link Media} based on related labels, exactly by shared labels or approximately by
+     * the similarity of the label sets.
      *
-     * @param id {@link java.util.UUID}.
-     * @return {@link List} of {@link Media}.
+     * @param id          {@link java.util.UUID}.
+     * @param limit       Optional maximum number of {@link Media} returned, {@link #DEFAULT_SIMILAR_LIMIT}
+     *                    if approximate.
+     * @param approximate Optional variable to rank by the estimated Jaccard index of the labels.
+     * @param request     request checked for a matching ETag.
+     * @param response    response the JSON array of {@link Media}, most related first, is streamed to.
+     * @throws IOException if writing to the response fails.
      */
     @GetMapping("/media/related/{id}")
-    List<Media> getCommon(@PathVariable String id) {
-        return mediaRepository.findByLabel(id);
+    void getCommon(@PathVariable String id,
+                   @RequestParam(required = false, value = "limit") Integer limit,
+                   @RequestParam(defaultValue = "false", value = "approximate") boolean approximate,
+                   WebRequest request, HttpServletResponse response) throws IOException {
+        if (!notModified(request, mediaRepository.version(MediaType.ALL))) {
+            mediaJsonWriter.writeArray(approximate ?
+                    mediaRepository.similarView(id, limit != null ? limit : DEFAULT_SIMILAR_LIMIT) :
+                    mediaRepository.relatedView(id, limit != null ? limit : Integer.MAX_VALUE), response);
+        }
+    }
+
+    /**
+     * Fuzzy search of titles, tolerating typos.
+     *
+     * @param query   characters to search for.
+     * @param k       Optional number of {@link SearchHit} returned, 10 by default.
+     * @param request request checked for a matching ETag.
+     * @return {@link List} of {@link SearchHit}, closest title first, null if not modified.
+     */
+    @GetMapping("/media/search")
+    List<SearchHit> search(@RequestParam("q") String query,
+                           @RequestParam(defaultValue = "10", value = "k") int k,
+                           WebRequest request) {
+        if (k < 1 || k > MAX_SEARCH_RESULTS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "k has to be between 1 and " + MAX_SEARCH_RESULTS);
+        }
+        if (notModified(request, mediaRepository.version(MediaType.ALL))) {
+            return null;
+        }
+        return mediaRepository.search(query, k);
+    }
+
+    /**
+     * Count stored {@link Media} by type, genre label and release decade.
+     *
+     * @param type    Optional {@link MediaType} to count, ALL by default.
+     * @param label   Optional genre label the counted {@link Media} have to carry.
+     * @param request request checked for a matching ETag.
+     * @return {@link Facets}, null if not modified.
+     */
+    @GetMapping("/media/facets")
+    Facets facets(@RequestParam(defaultValue = "ALL", value = "type") MediaType type,
+                  @RequestParam(required = false, value = "label") String label,
+                  WebRequest request) {
+        if (notModified(request, mediaRepository.version(type))) {
+            return null;
+        }
+        return mediaRepository.facets(type, label);
     }
 
     /**
@@ -136,6 +314,18 @@ public class MediaController {
         return mediaRepository.addMedia(series);
     }
 
+    /**
+     * Create {@link Movie} and {@link Series} from newline-delimited JSON, one object per line.
+     *
+     * @param ndjson request body.
+     * @return {@link BulkResult} with counts and the outcome of every line.
+     * @throws IOException if reading the request body fails.
+     */
+    @PostMapping("/media/bulk")
+    BulkResult addBulk(InputStream ndjson) throws IOException {
+        return mediaRepository.addMediaBulk(ndjson);
+    }
+
     /**
      * Delete {@link Media} based on {@link java.util.UUID}.
      *
@@ -147,4 +337,70 @@ public class MediaController {
         return mediaRepository.deleteMedia(id);
     }
 
+    /**
+     * Restore deleted {@link Media} based on {@link java.util.UUID}.
+     *
+     * @param id {@link java.util.UUID}.
+     * @return restored {@link Media}.
+     */
+    @PostMapping("/media/{id}/restore")
+    Media restoreMedia(@PathVariable String id) {
+        return mediaRepository.restoreMedia(id);
+    }
+
+    /**
+     * Write a listing, as a {@link MediaPage} if a limit or cursor is given and in full otherwise,
+     * or nothing if the request already holds its current ETag. The ETag and the {@link Media}
+     * are read from the same snapshot.
+     *
+     * @param mediaType MOVIE, SERIES or ALL.
+     * @param deleted   true to list deleted {@link Media}.
+     * @param limit     page size, null for the default page size or every {@link Media}.
+     * @param cursor    cursor of the page, null for the first page.
+     * @param request   request checked for a matching ETag.
+     * @param response  response the JSON is written to.
+     * @throws IOException if writing to the response fails.
+     */
+    private void list(MediaType mediaType, boolean deleted, Integer limit, String cursor,
+                      WebRequest request, HttpServletResponse response) throws IOException {
+        try (MediaView media = mediaRepository.listing(mediaType, deleted)) {
+            if (notModified(request, media.version())) {
+                return;
+            }
+            if (limit == null && cursor == null) {
+                mediaJsonWriter.writeListing((deleted ? "DELETED_" : "") + mediaType.name(), media.version(),
+                        media, response);
+                return;
+            }
+            mediaJsonWriter.writePage(mediaRepository.findPage(media, mediaType, deleted, cursor, pageSize(limit)),
+                    response);
+        }
+    }
+
+    /**
+     * Page size of a paged listing.
+     *
+     * @param limit requested page size, null for the default page size.
+     * @return page size.
+     * @throws ResponseStatusException with 400 Bad Request if the limit is not positive.
+     */
+    private static int pageSize(Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit has to be positive");
+        }
+        return pageSize;
+    }
+
+    /**
+     * Check the request against the ETag of a version, setting the ETag or the 304 status on the response.
+     *
+     * @param request request checked for a matching ETag.
+     * @param version version of what the response shows.
+     * @return true if the request already holds the ETag and nothing has to be written.
+     */
+    private boolean notModified(WebRequest request, long version) {
+        return request.checkNotModified(mediaRepository.epoch() + "-" + version);
+    }
+
 }
@@ -0,0 +1,54 @@
+package mediametadata.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Encodes the position of the next page of a listing into an opaque cursor.
+ * The cursor names the listing it was issued for, so it cannot be used with another listing.
+ * The position is the key of the first entry of the next page rather than its index, so a
+ * cursor stays valid when compaction drops entries before it.
+ */
+final class MediaCursor {
+
+    private MediaCursor() {
+    }
+
+    /**
+     * Encode cursor.
+     *
+     * @param listing name of the listing.
+     * @param key     key of the entry of the listing the next page starts at.
+     * @return opaque cursor.
+     */
+    static String encode(String listing, long key) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((listing + ":" + key).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode cursor.
+     *
+     * @param listing name of the listing the cursor has to be issued for.
+     * @param cursor  opaque cursor, null for the first page.
+     * @return key of the entry of the listing the page starts at.
+     * @throws InvalidCursorException if the cursor was not issued for the listing.
+     */
+    static long decode(String listing, String cursor) {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(':');
+            long key = Long.parseLong(decoded.substring(separator + 1));
+            if (separator < 0 || !decoded.substring(0, separator).equals(listing) || key < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            return key;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+}
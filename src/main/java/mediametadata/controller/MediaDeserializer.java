@@ -1,10 +1,12 @@
 package mediametadata.controller;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserSequence;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import mediametadata.model.Movie;
 import mediametadata.model.Series;
 import mediametadata.model.Media;
@@ -16,6 +18,8 @@ import java.io.IOException;
  */
 public class MediaDeserializer extends StdDeserializer<Media> {
 
+    private static final long serialVersionUID = 1L;
+
     public MediaDeserializer() {
         this(null);
     }
@@ -26,29 +30,64 @@ public class MediaDeserializer extends StdDeserializer<Media> {
 
     /**
      * Creates a deserializer for {@link ObjectMapper} that maps correctly to {@link Movie} and {@link Series}.
+     * <p>
+     * Fields are read in one pass. Only the fields ahead of numberOfEpisodes are buffered as tokens,
+     * once it is found they are replayed as a {@link Series} followed by the rest of the input, so no
+     * tree is built and nothing is parsed twice. As before, numberOfEpisodes decides over director,
+     * so an object is only known to be a {@link Movie} once it has been read to the end.
      *
      * @param jsonParser             Parsed used for reading JSON content
      * @param deserializationContext Context that can be used to access information about
      *                               this deserialization activity.
      * @return {@link Media}
-     * @throws IOException
+     * @throws IOException if the content is neither a {@link Movie} nor a {@link Series}.
      */
     @Override
     public Media deserialize(JsonParser jsonParser, DeserializationContext deserializationContext) throws IOException {
+        JsonToken token = jsonParser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = jsonParser.nextToken();
+        }
+        if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return deserializationContext.reportInputMismatch(this, "Media must be a JSON object but got %s", token);
+        }
 
-        final ObjectMapper mapper = (ObjectMapper) jsonParser.getCodec();
-        final JsonNode mediaNode = mapper.readTree(jsonParser);
-
-        Media media = null;
-
-        if (mediaNode.has("director")) {
-            media = mapper.treeToValue(mediaNode, Movie.class);
+        TokenBuffer buffer = deserializationContext.bufferForInputBuffering(jsonParser);
+        buffer.writeStartObject();
+        boolean director = false;
+        for (; token == JsonToken.FIELD_NAME; token = jsonParser.nextToken()) {
+            String field = jsonParser.currentName();
+            if (field.equals("numberOfEpisodes")) {
+                return replay(Series.class, buffer, jsonParser, deserializationContext);
+            }
+            director |= field.equals("director");
+            buffer.writeFieldName(field);
+            jsonParser.nextToken();
+            buffer.copyCurrentStructure(jsonParser);
         }
-        if (mediaNode.has("numberOfEpisodes")) {
-            media = mapper.treeToValue(mediaNode, Series.class);
+        if (director) {
+            return replay(Movie.class, buffer, jsonParser, deserializationContext);
         }
+        return deserializationContext.reportInputMismatch(this,
+                "Media needs a director to be a Movie or numberOfEpisodes to be a Series");
+    }
 
-        return media;
+    /**
+     * Deserialize the buffered fields followed by the rest of the object as the subtype.
+     *
+     * @param type                   {@link Media} subtype.
+     * @param buffer                 fields read ahead of the current field.
+     * @param jsonParser             parser positioned at the name of the current field or at the end
+     *                               of the object, which the replay continues with.
+     * @param deserializationContext context of this deserialization.
+     * @return deserialized {@link Media}.
+     * @throws IOException if the content does not match the subtype.
+     */
+    private static Media replay(Class<? extends Media> type, TokenBuffer buffer, JsonParser jsonParser,
+                                DeserializationContext deserializationContext) throws IOException {
+        JsonParser sequence = JsonParserSequence.createFlattened(true, buffer.asParser(jsonParser), jsonParser);
+        sequence.nextToken();
+        return deserializationContext.readValue(sequence, type);
     }
 
 }
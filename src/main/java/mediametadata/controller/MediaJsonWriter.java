@@ -0,0 +1,300 @@
+package mediametadata.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import mediametadata.model.Media;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Writes {@link Media} listings as JSON straight to the response output stream,
+ * one {@link Media} at a time, so no listing is held in memory while it is sent.
+ * Listings of stored {@link Media} are written by joining the JSON fragments of their
+ * {@link MediaView}, the rest are serialised by Jackson.
+ * <p>
+ * Full listings are also kept in a {@link ListingCache} while they are written, so the next
+ * request for a listing at the same version is answered by copying the cached bytes.
+ * <p>
+ * A {@link MediaView} is closed once it is written, releasing its snapshot for compaction.
+ */
+@Component
+public class MediaJsonWriter {
+
+    private static final String CONTENT_TYPE = "application/json";
+
+    /**
+     * Size newline-delimited JSON is gathered to before it is emitted, a chunk ends at the first line past it.
+     */
+    static final int LINE_CHUNK_SIZE = 64 * 1024;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Writer that leaves flushing to the response buffer instead of flushing after every {@link Media}.
+     */
+    private final ObjectWriter mediaWriter;
+
+    private final ListingCache listingCache;
+
+    /**
+     * Create writer.
+     *
+     * @param objectMapper {@link ObjectMapper} serialising {@link Media}.
+     * @param properties   {@link MediaRepositoryProperties} sizing the {@link ListingCache}.
+     */
+    MediaJsonWriter(ObjectMapper objectMapper, MediaRepositoryProperties properties) {
+        this.objectMapper = objectMapper;
+        this.mediaWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.listingCache = new ListingCache(properties.getListingCacheSize().toBytes());
+    }
+
+    /**
+     * Write a full listing as a JSON array, copied from the {@link ListingCache} if it holds
+     * the listing at the version, otherwise streamed and cached on the way by the one request
+     * that claims the capture; concurrent requests stream it without capturing.
+     *
+     * @param listing  name of the listing.
+     * @param version  version of the listing, read from the same snapshot as the listing.
+     * @param media    {@link Media} of the listing, iterated once if not cached.
+     * @param response response to write to.
+     * @throws IOException if writing to the response fails.
+     */
+    public void writeListing(String listing, long version, Iterable<Media> media,
+                             HttpServletResponse response) throws IOException {
+        byte[] cached = listingCache.get(listing, version);
+        if (cached != null) {
+            MediaView.close(media);
+            response.setContentType(CONTENT_TYPE);
+            response.setContentLength(cached.length);
+            response.getOutputStream().write(cached);
+            return;
+        }
+        response.setContentType(CONTENT_TYPE);
+        if (!listingCache.claim(listing, version)) {
+            writeArray(media, response.getOutputStream());
+            return;
+        }
+        CapturingOutputStream out = new CapturingOutputStream(response.getOutputStream(), listingCache.maxBytes());
+        byte[] body = null;
+        try {
+            writeArray(media, out);
+            if (out.captured != null) {
+                body = out.captured.toByteArray();
+            }
+        } finally {
+            listingCache.complete(listing, version, body);
+        }
+    }
+
+    /**
+     * Stream {@link Media} as a JSON array.
+     *
+     * @param media    {@link Media} to write, iterated once.
+     * @param response response to write to.
+     * @throws IOException if writing to the response fails.
+     */
+    public void writeArray(Iterable<Media> media, HttpServletResponse response) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        writeArray(media, response.getOutputStream());
+    }
+
+    /**
+     * Write {@link Media} as a JSON array and close the stream and the {@link Media},
+     * joining fragments if the {@link Media} are a {@link MediaView} that gives them.
+     *
+     * @param media {@link Media} to write, iterated once.
+     * @param out   stream to write to.
+     * @throws IOException if writing fails.
+     */
+    private void writeArray(Iterable<Media> media, OutputStream out) throws IOException {
+        try {
+            writeJsonArray(media, out);
+        } finally {
+            MediaView.close(media);
+        }
+    }
+
+    /**
+     * Write {@link Media} as a JSON array and close the stream.
+     *
+     * @param media {@link Media} to write, iterated once.
+     * @param out   stream to write to.
+     * @throws IOException if writing fails.
+     */
+    private void writeJsonArray(Iterable<Media> media, OutputStream out) throws IOException {
+        if (media instanceof MediaView view && view.hasFragments()) {
+            try (out) {
+                out.write('[');
+                int first = view.advance(0);
+                for (int entry = first; entry < view.entries(); entry = view.advance(entry + 1)) {
+                    if (entry != first) {
+                        out.write(',');
+                    }
+                    out.write(view.fragment(entry));
+                }
+                out.write(']');
+            }
+            return;
+        }
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (Media next : media) {
+                mediaWriter.writeValue(generator, next);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Stream {@link Media} as newline-delimited JSON in chunks of whole lines, so a stream is not
+     * flushed after every {@link Media}. A chunk is only read once requested and leaves out its
+     * last line break, which the NDJSON emitter of Spring MVC appends to every element.
+     * The {@link Media} are closed once the {@link Flux} completes, fails or is cancelled.
+     *
+     * @param media {@link Media} to write, iterated once as chunks are requested.
+     * @return {@link Flux} of UTF-8 chunks.
+     */
+    public Flux<byte[]> writeLines(Iterable<Media> media) {
+        return Flux.generate(() -> lines(media), (lines, sink) -> {
+            if (!lines.hasNext()) {
+                sink.complete();
+                return lines;
+            }
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream(LINE_CHUNK_SIZE + 1024);
+            chunk.writeBytes(lines.next());
+            while (chunk.size() < LINE_CHUNK_SIZE && lines.hasNext()) {
+                chunk.write('\n');
+                chunk.writeBytes(lines.next());
+            }
+            sink.next(chunk.toByteArray());
+            return lines;
+        }, lines -> MediaView.close(media));
+    }
+
+    /**
+     * JSON of every {@link Media}, the fragments if the {@link Media} are a {@link MediaView} that gives them.
+     *
+     * @param media {@link Media} to write.
+     * @return {@link Iterator} of UTF-8 JSON, one {@link Media} each.
+     */
+    private Iterator<byte[]> lines(Iterable<Media> media) {
+        if (media instanceof MediaView view && view.hasFragments()) {
+            return new Iterator<>() {
+
+                private int entry = view.advance(0);
+
+                @Override
+                public boolean hasNext() {
+                    return entry < view.entries();
+                }
+
+                @Override
+                public byte[] next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    byte[] next = view.fragment(entry);
+                    entry = view.advance(entry + 1);
+                    return next;
+                }
+            };
+        }
+        Iterator<Media> iterator = media.iterator();
+        return new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                try {
+                    return mediaWriter.writeValueAsBytes(iterator.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Write a {@link MediaPage} as a JSON object.
+     *
+     * @param page     {@link MediaPage} to write.
+     * @param response response to write to.
+     * @throws IOException if writing to the response fails.
+     */
+    public void writePage(MediaPage page, HttpServletResponse response) throws IOException {
+        response.setContentType(CONTENT_TYPE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            mediaWriter.writeValue(generator, page);
+        }
+    }
+
+    /**
+     * Passes bytes on while keeping a copy, until the copy would grow beyond a limit.
+     */
+    private static final class CapturingOutputStream extends OutputStream {
+
+        private final OutputStream out;
+
+        private final long limit;
+
+        /**
+         * Copy of the bytes written, null once the limit was passed.
+         */
+        private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+        CapturingOutputStream(OutputStream out, long limit) {
+            this.out = out;
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (captured != null) {
+                if (captured.size() + 1L > limit) {
+                    captured = null;
+                } else {
+                    captured.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (captured != null) {
+                if (captured.size() + (long) len > limit) {
+                    captured = null;
+                } else {
+                    captured.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when no {@link Media} is stored for the requested {@link java.util.UUID},
+ * answered with 404 Not Found.
+ */
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class MediaNotFoundException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Create exception for the missing {@link Media}.
+     *
+     * @param id {@link java.util.UUID} of {@link Media} that was requested.
+     */
+    public MediaNotFoundException(String id) {
+        super("Could not find media " + id);
+    }
+
+}
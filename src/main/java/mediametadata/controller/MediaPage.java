@@ -0,0 +1,14 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+
+import java.util.List;
+
+/**
+ * One page of a {@link Media} listing.
+ *
+ * @param items      {@link Media} of the page.
+ * @param nextCursor opaque cursor of the next page, null if this is the last page.
+ */
+public record MediaPage(List<Media> items, String nextCursor) {
+}
@@ -1,158 +1,1780 @@
 package mediametadata.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import mediametadata.controller.RepositoryMetrics.Operation;
+import mediametadata.index.FuzzyTitleIndex;
+import mediametadata.index.IntPostingList;
+import mediametadata.index.LabelIndex;
+import mediametadata.index.MinHashIndex;
+import mediametadata.index.RangeIndex;
+import mediametadata.index.TitleIndex;
+import mediametadata.index.TrigramIndex;
 import mediametadata.model.Media;
 import mediametadata.model.MediaType;
 import mediametadata.model.Movie;
 import mediametadata.model.Series;
+import mediametadata.storage.RecordStore;
+import mediametadata.storage.SnapshotFile;
+import mediametadata.storage.WriteAheadLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Repository;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZoneOffset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import javax.annotation.PreDestroy;
 
 /**
  * Class that represents the repository, converting string to {@link Media},
  * storing it in datastructures and finding them when needed.
+ * <p>
+ * Writes are serialised by a lock and publish a new {@link MediaSnapshot} when they are done.
+ * Reads never lock: they take the current {@link MediaSnapshot} and only see the slots and
+ * deletes it covers, so every read works on one point-in-time view even while writes go on.
+ * While reading records, readers hold a {@link SnapshotReaders.Lease} on their snapshot.
+ * A delete only marks the slot with the version it happened at, so readers of older snapshots
+ * still see the {@link Media}, and adds the slot to the deleted partitions. Only the title index
+ * drops the slot right away.
+ * <p>
+ * Deleted {@link Media} are retained for restoring until the retention by count or age of
+ * {@link MediaRepositoryProperties} evicts them. A restore or eviction releases the deleted slot;
+ * a restored {@link Media} is stored again in a new slot. Compaction reclaims the records of
+ * released slots once they have been released for the compaction interval and no leased snapshot
+ * can still see them, dropping them from the range indexes as it goes and from the other indexes
+ * once enough have been reclaimed.
+ * <p>
+ * If a persistence directory is configured, every add, delete, restore and eviction is appended
+ * to a {@link WriteAheadLog} before it is published and synced before the write returns.
+ * Snapshots of every slot are written in the background, on startup the latest one is loaded
+ * and the log after it is replayed.
+ * <p>
+ * Operations are timed and counted by {@link RepositoryMetrics}, and the record counts, estimated
+ * memory and index health are published as gauges, on the {@link MeterRegistry} given on creation.
  */
 @Configuration
 @Repository
+@EnableConfigurationProperties(MediaRepositoryProperties.class)
 public class MediaRepository {
 
-    List<Media> mediaMetadata = new ArrayList<>();
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaRepository.class);
 
-    List<Media> deletedMediaMetadata = new ArrayList<>();
+    /**
+     * Number of slots of which purged slots have to make up one before they are dropped from the indexes.
+     */
+    private static final int REBUILD_RATIO = 4;
+
+    /**
+     * Stored and deleted {@link Media} by slot, in insertion order.
+     */
+    final RecordStore mediaMetadata;
+
+    /**
+     * Slot in mediaMetadata of every {@link Media} by {@link UUID}, including deleted {@link Media}
+     * until they are evicted.
+     */
+    final Map<UUID, Integer> mediaIndex = new ConcurrentHashMap<>();
+
+    /**
+     * Slot in mediaMetadata of every stored {@link Media} by title.
+     */
+    final TitleIndex titleIndex;
+
+    /**
+     * Slots in mediaMetadata of every {@link Media} by the trigrams of its title.
+     */
+    final TrigramIndex trigramIndex = new TrigramIndex();
+
+    /**
+     * Slots in mediaMetadata of every {@link Media} by the word trigrams of its title, for fuzzy search.
+     */
+    final FuzzyTitleIndex fuzzyTitleIndex;
+
+    /**
+     * Slots in mediaMetadata of every {@link Media} by genre label.
+     */
+    final LabelIndex labelIndex = new LabelIndex();
+
+    /**
+     * Slots in mediaMetadata of every {@link Media} by the MinHash signature of its labels, for approximate related media.
+     */
+    final MinHashIndex minHashIndex = new MinHashIndex();
+
+    /**
+     * Slots in mediaMetadata of every stored {@link Movie} by the year of its release date.
+     */
+    final RangeIndex releaseYearIndex = new RangeIndex();
+
+    /**
+     * Slots in mediaMetadata of every stored {@link Series} by its number of episodes.
+     */
+    final RangeIndex episodesIndex = new RangeIndex();
+
+    /**
+     * Counts of stored {@link Media} by type, label and release decade.
+     */
+    final FacetCounts facetCounts = new FacetCounts();
+
+    /**
+     * JSON of stored {@link Media} by slot, dropped on delete.
+     */
+    final FragmentCache fragmentCache;
+
+    /**
+     * Timers and counters of the operations.
+     */
+    private final RepositoryMetrics metrics;
+
+    /**
+     * Reader shared by every parse, {@link ObjectReader} is immutable and thread-safe.
+     */
+    private final ObjectReader mediaReader = createObjectMapper().readerFor(Media.class);
+
+    /**
+     * Number of {@link Media} stored under one write by {@link #addMediaBulk(InputStream)}.
+     */
+    private final int bulkBatchSize;
+
+    /**
+     * Serialises writers, readers never take it.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Latest published {@link MediaSnapshot}.
+     */
+    private volatile MediaSnapshot snapshot = MediaSnapshot.empty();
+
+    /**
+     * Snapshots leased by readers, keeping compaction from purging slots they can see.
+     */
+    private final SnapshotReaders readers = new SnapshotReaders();
+
+    /**
+     * Directory of the {@link WriteAheadLog} and snapshots, null if nothing is persisted.
+     */
+    private final Path persistenceDirectory;
+
+    /**
+     * Log of every write, null while recovering and if nothing is persisted.
+     * Package-private so tests can replace it with a log that fails.
+     */
+    WriteAheadLog log;
+
+    /**
+     * Number of logged writes after which a snapshot is scheduled.
+     */
+    private final int snapshotInterval;
+
+    /**
+     * Number of writes logged since the last snapshot, guarded by the write lock.
+     */
+    private long loggedSinceSnapshot;
+
+    /**
+     * True while a snapshot is scheduled or being written.
+     */
+    private final AtomicBoolean snapshotScheduled = new AtomicBoolean();
+
+    /**
+     * Maximum number of retained deleted {@link Media}, null if unlimited.
+     */
+    private final Integer deletedMaxCount;
+
+    /**
+     * Maximum time deleted {@link Media} are retained, null if unlimited.
+     */
+    private final Duration deletedMaxAge;
+
+    /**
+     * Time released slots stay readable before their records are purged.
+     */
+    private final Duration compactionInterval;
+
+    /**
+     * Deleted slots in deletion order with the time of their delete, guarded by the write lock.
+     * Slots that were already released are skipped when they reach the head.
+     */
+    private final ArrayDeque<TimedSlot> tombstones = new ArrayDeque<>();
+
+    /**
+     * Released slots in release order with the time of their release, guarded by the write lock.
+     */
+    private final ArrayDeque<TimedSlot> released = new ArrayDeque<>();
+
+    /**
+     * Slots whose records were purged, guarded by the write lock.
+     */
+    private final BitSet purged = new BitSet();
+
+    /**
+     * Number of purged slots still in the indexes, guarded by the write lock.
+     */
+    private int purgedInIndexes;
+
+    /**
+     * True while a compaction is scheduled.
+     */
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    /**
+     * Writes snapshots and compacts in the background.
+     */
+    private final ScheduledThreadPoolExecutor maintenanceExecutor;
+
+    /**
+     * Serialises snapshots and compactions taken in the background and on demand. A lock rather
+     * than a monitor, so a virtual thread waiting for the fsync of either does not pin its carrier.
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+
+    /**
+     * Time the repository was created, distinguishing its versions from those of earlier runs.
+     */
+    private final long epoch = System.currentTimeMillis();
+
+    /**
+     * Create repository with default {@link MediaRepositoryProperties}.
+     */
+    public MediaRepository() {
+        this(new MediaRepositoryProperties());
+    }
+
+    /**
+     * Create repository keeping its metrics in a {@link SimpleMeterRegistry} of its own.
+     *
+     * @param properties {@link MediaRepositoryProperties} configuring the indexes and persistence.
+     * @throws UncheckedIOException if persisted {@link Media} cannot be recovered.
+     */
+    public MediaRepository(MediaRepositoryProperties properties) {
+        this(properties, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Create repository.
+     *
+     * @param properties    {@link MediaRepositoryProperties} configuring the indexes and persistence.
+     * @param meterRegistry {@link MeterRegistry} the metrics are registered with.
+     * @throws UncheckedIOException if persisted {@link Media} cannot be recovered.
+     */
+    @Autowired
+    public MediaRepository(MediaRepositoryProperties properties, MeterRegistry meterRegistry) {
+        this.metrics = new RepositoryMetrics(meterRegistry, properties.getMetricsSampleInterval());
+        registerGauges(meterRegistry);
+        this.mediaMetadata = properties.getRecordStorage().create();
+        this.titleIndex = new TitleIndex(properties.getTitleNormalisation());
+        this.fuzzyTitleIndex = new FuzzyTitleIndex(properties.getSearchScanBudget());
+        this.fragmentCache = new FragmentCache(createObjectMapper().writer(), properties.getFragmentCacheSize().toBytes());
+        this.bulkBatchSize = properties.getBulkBatchSize();
+        this.persistenceDirectory = properties.getPersistenceDirectory();
+        this.snapshotInterval = properties.getSnapshotInterval();
+        this.deletedMaxCount = properties.getDeletedMaxCount();
+        this.deletedMaxAge = properties.getDeletedMaxAge();
+        this.compactionInterval = properties.getCompactionInterval();
+        this.maintenanceExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "media-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenanceExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        if (persistenceDirectory != null) {
+            try {
+                WriteAheadLog recovered = new WriteAheadLog(persistenceDirectory);
+                recover(recovered);
+                writeLock.lock();
+                try {
+                    this.log = recovered;
+                } finally {
+                    writeLock.unlock();
+                }
+            } catch (IOException e) {
+                maintenanceExecutor.shutdown();
+                throw new UncheckedIOException("Could not recover media from " + persistenceDirectory, e);
+            }
+        }
+        if (deletedMaxAge != null) {
+            long period = Math.max(1, deletedMaxAge.compareTo(compactionInterval) < 0 ?
+                    deletedMaxAge.toMillis() : compactionInterval.toMillis());
+            maintenanceExecutor.scheduleWithFixedDelay(this::compactInBackground, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Finds all the Media objects of {@link MediaType} MOVIES and SERIES or ALL.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @return read-only {@link MediaView} of the requested {@link MediaType} in insertion order,
+     * read lazily from the current snapshot; close it once read.
+     */
+    public MediaView findAll(MediaType mediaType) {
+        return liveView(mediaType);
+    }
+
+    /**
+     * View of the stored {@link Media} of a {@link MediaType} in the current snapshot.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @return {@link MediaView}.
+     */
+    private MediaView liveView(MediaType mediaType) {
+        SnapshotReaders.Lease lease = read();
+        MediaSnapshot current = lease.snapshot();
+        IntPostingList partition = current.partitions()[mediaType.ordinal()];
+        return new MediaView(partition == null ? slot -> slot : partition::get,
+                current.partitionSizes()[mediaType.ordinal()],
+                current.liveCounts()[mediaType.ordinal()],
+                visibleIn(current), mediaMetadata::get, slot -> slot, this::fragment,
+                current.partitionVersions()[mediaType.ordinal()], lease);
+    }
+
+    /**
+     * Version of the repository, raised by every write.
+     *
+     * @return version of the current snapshot.
+     */
+    public long version() {
+        return snapshot.version();
+    }
+
+    /**
+     * Version of the stored {@link Media} of a {@link MediaType}, only raised by writes that change them.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @return version of the last write that added, deleted or restored {@link Media} of the {@link MediaType}.
+     */
+    public long version(MediaType mediaType) {
+        return snapshot.partitionVersions()[mediaType.ordinal()];
+    }
+
+    /**
+     * Version of stored {@link Media}. {@link Media} never change once stored, so the slot they
+     * were stored in serves as their version; a restored {@link Media} gets a new one.
+     *
+     * @param id UUID of {@link Media}.
+     * @return version of the {@link Media}.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
+     */
+    public long recordVersion(String id) {
+        return findSlot(id, visibleIn(snapshot));
+    }
+
+    /**
+     * Start time of the repository. Versions start over when the repository is restarted,
+     * so they only identify a state together with the epoch.
+     *
+     * @return epoch.
+     */
+    public long epoch() {
+        return epoch;
+    }
+
+    /**
+     * Finds only deleted {@link Media} based on {@link MediaType}.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @return read-only {@link MediaView} of retained deleted {@link Media} in deletion order,
+     * read lazily from the current snapshot; close it once read.
+     */
+    public MediaView findDeleted(MediaType mediaType) {
+        return deletedView(mediaType);
+    }
+
+    /**
+     * View of the deleted {@link Media} of a {@link MediaType} in the current snapshot.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @return {@link MediaView}.
+     */
+    private MediaView deletedView(MediaType mediaType) {
+        SnapshotReaders.Lease lease = read();
+        MediaSnapshot current = lease.snapshot();
+        return new MediaView(current.deletedPartitions()[mediaType.ordinal()]::get,
+                current.deletedSizes()[mediaType.ordinal()],
+                current.deletedCounts()[mediaType.ordinal()],
+                retainedIn(current), mediaMetadata::get, mediaMetadata::deletedVersion, null,
+                current.version(), lease);
+    }
+
+    /**
+     * Finds one page of the Media objects of {@link MediaType} MOVIES and SERIES or ALL.
+     * Cursors hold the slot the next page starts at, so following them lists every {@link Media}
+     * stored before the first page and not deleted before its page once, even while writes
+     * and compaction go on.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @param cursor    cursor returned with the previous page, null for the first page.
+     * @param limit     maximum number of {@link Media} on the page.
+     * @return {@link MediaPage} in insertion order.
+     * @throws InvalidCursorException if the cursor was not issued for this listing.
+     */
+    public MediaPage findAll(MediaType mediaType, String cursor, int limit) {
+        try (MediaView view = liveView(mediaType)) {
+            return findPage(view, mediaType, false, cursor, limit);
+        }
+    }
+
+    /**
+     * Finds one page of the deleted {@link Media} based on {@link MediaType}.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @param cursor    cursor returned with the previous page, null for the first page.
+     * @param limit     maximum number of {@link Media} on the page.
+     * @return {@link MediaPage} of retained deleted {@link Media} in deletion order.
+     * @throws InvalidCursorException if the cursor was not issued for this listing.
+     */
+    public MediaPage findDeleted(MediaType mediaType, String cursor, int limit) {
+        try (MediaView view = deletedView(mediaType)) {
+            return findPage(view, mediaType, true, cursor, limit);
+        }
+    }
+
+    /**
+     * View of a listing of stored or deleted {@link Media}, whose version is that of the listing
+     * in the same snapshot: the partition version for stored and the repository version for deleted {@link Media}.
+     *
+     * @param mediaType can be MOVIE, SERIES or ALL.
+     * @param deleted   true to list deleted {@link Media}.
+     * @return {@link MediaView}, to be closed once read.
+     */
+    MediaView listing(MediaType mediaType, boolean deleted) {
+        return deleted ? deletedView(mediaType) : liveView(mediaType);
+    }
+
+    /**
+     * Read one page of a view returned by {@link #listing(MediaType, boolean)}.
+     *
+     * @param view      {@link MediaView} of the listing.
+     * @param mediaType {@link MediaType} of the listing.
+     * @param deleted   true if the listing is of deleted {@link Media}.
+     * @param cursor    cursor returned with the previous page, null for the first page.
+     * @param limit     maximum number of {@link Media} on the page.
+     * @return {@link MediaPage}.
+     * @throws InvalidCursorException if the cursor was not issued for this listing.
+     */
+    MediaPage findPage(MediaView view, MediaType mediaType, boolean deleted, String cursor, int limit) {
+        long start = metrics.start();
+        try {
+            return page(view, (deleted ? "DELETED_" : "") + mediaType.name(), cursor, limit);
+        } finally {
+            metrics.stop(deleted ? Operation.FIND_DELETED : Operation.FIND_ALL, start);
+        }
+    }
+
+    /**
+     * Find {@link Media} based on {@link UUID}.
+     *
+     * @param id UUID of {@link Media}.
+     * @return {@link Media} stored under the {@link UUID}.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
+     */
+    public Media findById(String id) {
+        long start = metrics.start();
+        try (SnapshotReaders.Lease lease = read()) {
+            return mediaMetadata.get(findSlot(id, visibleIn(lease.snapshot())));
+        } finally {
+            metrics.stop(Operation.FIND_BY_ID, start);
+        }
+    }
+
+    /**
+     * Find the {@link Media} stored under a list of ids, all read from the same snapshot.
+     * Every distinct id is looked up once.
+     *
+     * @param ids UUIDs of {@link Media}.
+     * @return {@link BatchGetResult} of the found {@link Media} and the missing ids.
+     */
+    public BatchGetResult findByIds(List<String> ids) {
+        long start = metrics.start();
+        try (SnapshotReaders.Lease lease = read()) {
+            IntPredicate visible = visibleIn(lease.snapshot());
+            Set<String> seen = new HashSet<>();
+            List<Media> found = new ArrayList<>(ids.size());
+            List<String> missing = new ArrayList<>();
+            for (String id : ids) {
+                if (!seen.add(id)) {
+                    continue;
+                }
+                Integer slot = null;
+                try {
+                    slot = id == null ? null : mediaIndex.get(UUID.fromString(id));
+                } catch (IllegalArgumentException e) {
+                    // not a UUID, so nothing is stored under it
+                }
+                if (slot != null && visible.test(slot)) {
+                    found.add(mediaMetadata.get(slot));
+                } else {
+                    missing.add(id);
+                }
+            }
+            return new BatchGetResult(found, missing);
+        } finally {
+            metrics.stop(Operation.FIND_BY_IDS, start);
+        }
+    }
+
+    /**
+     * Find {@link Media} based on characters present in title.
+     *
+     * @param characters string of characters present in the title.
+     * @return {@link List} of {@link Media} that were found.
+     */
+    public List<Media> findByCharacters(String characters) {
+        return findByCharacters(characters, false);
+    }
+
+    /**
+     * Find {@link Media} based on characters present in title, optionally ignoring case.
+     * Queries of at least {@link TrigramIndex#GRAM_LENGTH} characters only check the titles
+     * the {@link TrigramIndex} returns as candidates, shorter queries check every title.
+     *
+     * @param characters string of characters present in the title.
+     * @param ignoreCase true to match characters regardless of case.
+     * @return {@link List} of {@link Media} that were found, in insertion order.
+     */
+    public List<Media> findByCharacters(String characters, boolean ignoreCase) {
+        long start = metrics.start();
+        try {
+            String query = ignoreCase ? TrigramIndex.fold(characters) : characters;
+            Predicate<Media> matches = x -> x.getTitle() != null && (ignoreCase ?
+                    TrigramIndex.fold(x.getTitle()).contains(query) :
+                    x.getTitle().contains(query));
+            if (characters.length() < TrigramIndex.GRAM_LENGTH) {
+                try (MediaView all = liveView(MediaType.ALL)) {
+                    return all.stream().filter(matches).collect(Collectors.toList());
+                }
+            }
+            try (SnapshotReaders.Lease lease = read()) {
+                return Arrays.stream(trigramIndex.candidates(characters)).filter(visibleIn(lease.snapshot()))
+                        .mapToObj(mediaMetadata::get).filter(matches).collect(Collectors.toList());
+            }
+        } finally {
+            metrics.stop(Operation.FIND_BY_CHARACTERS, start);
+        }
+    }
+
+    /**
+     * Store {@link Media} in the repository.
+     *
+     * @param media String representing {@link Media} data.
+     * @return parsed and serialised {@link Media} object, or the stored {@link Media}
+     * if one with the same id or title already exists.
+     * @throws InvalidMediaException if the data is neither a {@link mediametadata.model.Movie}
+     *                               nor a {@link mediametadata.model.Series}.
+     */
+    public Media addMedia(String media) {
+        Media convertedMedia = null;
+        try {
+            convertedMedia = convertStringToMedia(media);
+        } catch (IOException e) {
+            metrics.parseFailures.increment();
+            throw new InvalidMediaException(e);
+        }
+        return addMedia(List.of(convertedMedia)).get(0);
+    }
+
+    /**
+     * Store several {@link Media} in the repository under one write, published as one snapshot.
+     * The new {@link Media} are written to the log before any index changes, so a write that
+     * cannot be logged leaves the repository as it was. A retained deleted {@link Media} with the
+     * id of a new {@link Media} is evicted first.
+     *
+     * @param media {@link List} of {@link Media} to store, in order.
+     * @return for every {@link Media} the same object if it was stored, or the stored {@link Media}
+     * if one with the same id or title already exists.
+     */
+    public List<Media> addMedia(List<Media> media) {
+        long start = metrics.start();
+        try {
+            List<Media> stored = new ArrayList<>(media.size());
+            long logPosition;
+            writeLock.lock();
+            try {
+                List<Media> added = new ArrayList<>(media.size());
+                List<Integer> evicted = new ArrayList<>();
+                Map<UUID, Media> addedIds = new HashMap<>();
+                Map<String, Media> addedTitles = new HashMap<>();
+                for (Media newMedia : media) {
+                    Media storedMedia = existing(newMedia, addedIds, addedTitles);
+                    if (storedMedia == null) {
+                        Integer tombstone = mediaIndex.get(newMedia.getId());
+                        if (tombstone != null) {
+                            evicted.add(tombstone);
+                        }
+                        storedMedia = newMedia;
+                        added.add(newMedia);
+                        addedIds.put(newMedia.getId(), newMedia);
+                        String title = titleIndex.key(newMedia.getTitle());
+                        if (title != null) {
+                            addedTitles.put(title, newMedia);
+                        }
+                    }
+                    stored.add(storedMedia);
+                }
+                if (log != null) {
+                    for (int slot : evicted) {
+                        log.evict(mediaMetadata.get(slot).getId());
+                    }
+                    for (Media newMedia : added) {
+                        log.add(newMedia);
+                    }
+                }
+                logPosition = flushLog(evicted.size() + added.size());
+                if (!added.isEmpty()) {
+                    MediaSnapshot current = snapshot;
+                    long version = current.version() + 1;
+                    int[] partitionSizes = current.partitionSizes().clone();
+                    int[] liveCounts = current.liveCounts().clone();
+                    int[] deletedCounts = current.deletedCounts().clone();
+                    long now = System.currentTimeMillis();
+                    for (int slot : evicted) {
+                        Media deleted = mediaMetadata.get(slot);
+                        mediaIndex.remove(deleted.getId(), slot);
+                        release(slot, deleted, version, deletedCounts, now);
+                    }
+                    for (Media newMedia : added) {
+                        insert(newMedia, current.partitions(), partitionSizes, liveCounts);
+                    }
+                    snapshot = current.next(version, mediaMetadata.size(),
+                            partitionSizes, current.deletedSizes(), liveCounts, deletedCounts);
+                }
+            } catch (IOException e) {
+                if (log != null) {
+                    log.discard();
+                }
+                throw new UncheckedIOException("Could not log media", e);
+            } finally {
+                writeLock.unlock();
+            }
+            syncLog(logPosition);
+            return stored;
+        } finally {
+            metrics.stop(Operation.ADD, start);
+        }
+    }
+
+    /**
+     * Store newline-delimited {@link Media} JSON. Lines are parsed one at a time with the shared
+     * reader and stored in batches of {@link MediaRepositoryProperties#getBulkBatchSize()},
+     * every batch under one write. Blank lines are skipped.
+     *
+     * @param ndjson stream of one {@link Media} JSON object per line.
+     * @return {@link BulkResult} with the outcome of every line.
+     * @throws IOException if reading the stream fails.
+     */
+    public BulkResult addMediaBulk(InputStream ndjson) throws IOException {
+        long start = metrics.start();
+        try {
+            List<BulkResult.Line> lines = new ArrayList<>();
+            List<Media> batch = new ArrayList<>(bulkBatchSize);
+            List<Integer> batchLines = new ArrayList<>(bulkBatchSize);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(ndjson, StandardCharsets.UTF_8));
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    batch.add(convertStringToMedia(line));
+                    batchLines.add(lineNumber);
+                } catch (IOException e) {
+                    metrics.parseFailures.increment();
+                    lines.add(new BulkResult.Line(lineNumber, BulkResult.Status.FAILED, null, e.getMessage()));
+                }
+                if (batch.size() == bulkBatchSize) {
+                    addBatch(batch, batchLines, lines);
+                }
+            }
+            addBatch(batch, batchLines, lines);
+            lines.sort(Comparator.comparingInt(BulkResult.Line::line));
+            int[] counts = new int[BulkResult.Status.values().length];
+            lines.forEach(line -> counts[line.status().ordinal()]++);
+            return new BulkResult(counts[BulkResult.Status.ADDED.ordinal()],
+                    counts[BulkResult.Status.DUPLICATE.ordinal()],
+                    counts[BulkResult.Status.FAILED.ordinal()], lines);
+        } finally {
+            metrics.stop(Operation.ADD_BULK, start);
+        }
+    }
+
+    /**
+     * Store a batch of a bulk load and record the outcome of its lines.
+     *
+     * @param batch      parsed {@link Media}, cleared afterwards.
+     * @param batchLines line number of every parsed {@link Media}, cleared afterwards.
+     * @param lines      outcomes the batch is added to.
+     */
+    private void addBatch(List<Media> batch, List<Integer> batchLines, List<BulkResult.Line> lines) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Media> stored = addMedia(batch);
+        for (int i = 0; i < stored.size(); i++) {
+            lines.add(new BulkResult.Line(batchLines.get(i),
+                    stored.get(i) == batch.get(i) ? BulkResult.Status.ADDED : BulkResult.Status.DUPLICATE,
+                    stored.get(i).getId(), null));
+        }
+        batch.clear();
+        batchLines.clear();
+    }
+
+    /**
+     * Find the {@link Media} already stored, or added earlier in the same write, under the id or
+     * title of {@link Media} without changing anything, holding the write lock.
+     *
+     * @param newMedia    {@link Media} to store.
+     * @param addedIds    {@link Media} added earlier in the write by id.
+     * @param addedTitles {@link Media} added earlier in the write by title key.
+     * @return {@link Media} holding the id or title, null if newMedia is new.
+     */
+    private Media existing(Media newMedia, Map<UUID, Media> addedIds, Map<String, Media> addedTitles) {
+        Integer slot = mediaIndex.get(newMedia.getId());
+        if (slot != null && mediaMetadata.deletedVersion(slot) != 0) {
+            slot = null;
+        }
+        Media added = addedIds.get(newMedia.getId());
+        if (slot != null || added != null) {
+            metrics.duplicateIds.increment();
+            return slot != null ? mediaMetadata.get(slot) : added;
+        }
+        slot = titleIndex.get(newMedia.getTitle());
+        String title = titleIndex.key(newMedia.getTitle());
+        added = title == null ? null : addedTitles.get(title);
+        if (slot != null || added != null) {
+            metrics.duplicateTitles.increment();
+            return slot != null ? mediaMetadata.get(slot) : added;
+        }
+        return null;
+    }
+
+    /**
+     * Store {@link Media} whose id and title are not stored yet, holding the write lock.
+     *
+     * @param newMedia       {@link Media} to store.
+     * @param partitions     partitions of the current snapshot.
+     * @param partitionSizes partition sizes of the next snapshot, raised for the new slot.
+     * @param liveCounts     live counts of the next snapshot, raised for the new slot.
+     */
+    private void insert(Media newMedia, IntPostingList[] partitions, int[] partitionSizes, int[] liveCounts) {
+        titleIndex.putIfAbsent(newMedia.getTitle(), mediaMetadata.size());
+        metrics.inserts.increment();
+        append(newMedia, partitions, partitionSizes);
+        for (MediaType mediaType : partitionsOf(newMedia)) {
+            liveCounts[mediaType.ordinal()]++;
+        }
+    }
+
+    /**
+     * Append {@link Media} to the next slot, index it by id, partition, trigrams, labels, label signature
+     * and range and count it, holding the write lock. The title index is left to the caller.
+     *
+     * @param newMedia       {@link Media} to append.
+     * @param partitions     partitions of the current snapshot.
+     * @param partitionSizes partition sizes of the next snapshot, raised for the new slot.
+     */
+    private void append(Media newMedia, IntPostingList[] partitions, int[] partitionSizes) {
+        int slot = mediaMetadata.append(newMedia);
+        mediaIndex.put(newMedia.getId(), slot);
+        IntPostingList partition = partitions[newMedia.getMediaType().ordinal()];
+        if (partition != null) {
+            partition.add(slot);
+        }
+        trigramIndex.add(slot, newMedia.getTitle());
+        fuzzyTitleIndex.add(slot, newMedia.getTitle());
+        labelIndex.add(slot, newMedia.getLabelSet());
+        minHashIndex.add(slot, newMedia.getLabelSet());
+        indexRange(slot, newMedia, true);
+        facetCounts.add(newMedia, 1);
+        for (MediaType mediaType : partitionsOf(newMedia)) {
+            partitionSizes[mediaType.ordinal()]++;
+        }
+    }
+
+    /**
+     * Use {@link UUID} to delete {@link Media}, keeping it as a tombstone that can be restored
+     * until the retention evicts it.
+     *
+     * @param id {@link UUID} of {@link Media}.
+     * @return true if it was deleted.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
+     */
+    public boolean deleteMedia(String id) {
+        return deleteMedia(id, System.currentTimeMillis());
+    }
 
     /**
-     * Constructor adds a few movies and TV series to the repository to initialize the repository.
+     * Delete {@link Media} and evict the oldest deleted {@link Media} beyond the retained count.
+     * The delete and the evictions are written to the log before any index changes, so a delete
+     * that cannot be logged leaves the repository as it was.
+     *
+     * @param id        {@link UUID} of {@link Media}.
+     * @param deletedAt time of the delete in milliseconds since the epoch.
+     * @return true if it was deleted.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
      */
-    public MediaRepository() {
+    private boolean deleteMedia(String id, long deletedAt) {
+        long start = metrics.start();
+        try {
+            long logPosition;
+            writeLock.lock();
+            try {
+                MediaSnapshot current = snapshot;
+                int slot = findSlot(id, visibleIn(current));
+                Media media = mediaMetadata.get(slot);
+                List<Integer> evicted = new ArrayList<>();
+                if (deletedMaxCount != null) {
+                    int excess = current.deletedCounts()[MediaType.ALL.ordinal()] + 1 - deletedMaxCount;
+                    evicted.addAll(oldestTombstones(excess, Long.MAX_VALUE));
+                    if (evicted.size() < excess) {
+                        evicted.add(slot);
+                    }
+                }
+                if (log != null) {
+                    log.delete(media.getId(), deletedAt);
+                    for (int evictedSlot : evicted) {
+                        log.evict(mediaMetadata.get(evictedSlot).getId());
+                    }
+                }
+                logPosition = flushLog(1 + evicted.size());
+                long version = current.version() + 1;
+                mediaMetadata.setDeletedVersion(slot, version);
+                titleIndex.remove(media.getTitle(), slot);
+                facetCounts.add(media, -1);
+                fragmentCache.invalidate(slot);
+
+                int[] deletedSizes = current.deletedSizes().clone();
+                int[] liveCounts = current.liveCounts().clone();
+                int[] deletedCounts = current.deletedCounts().clone();
+                for (MediaType mediaType : partitionsOf(media)) {
+                    current.deletedPartitions()[mediaType.ordinal()].add(slot);
+                    deletedSizes[mediaType.ordinal()]++;
+                    liveCounts[mediaType.ordinal()]--;
+                    deletedCounts[mediaType.ordinal()]++;
+                }
+                tombstones.add(new TimedSlot(slot, deletedAt));
+                for (int evictedSlot : evicted) {
+                    evict(evictedSlot, version, deletedCounts, deletedAt);
+                }
+                dropReleasedTombstones();
+                snapshot = current.next(version, current.size(), current.partitionSizes(), deletedSizes,
+                        liveCounts, deletedCounts);
+            } catch (IOException e) {
+                if (log != null) {
+                    log.discard();
+                }
+                throw new UncheckedIOException("Could not log delete of media " + id, e);
+            } finally {
+                writeLock.unlock();
+            }
+            syncLog(logPosition);
+            metrics.deletes.increment();
+            return true;
+        } finally {
+            metrics.stop(Operation.DELETE, start);
+        }
     }
 
     /**
-     * Finds all the Media objects of {@link MediaType} MOVIES and SERIES or ALL.
+     * Restore deleted {@link Media} by storing it again in a new slot, at the end of the insertion order.
+     * Its tombstone is released and leaves the deleted listings.
      *
-     * @param mediaType can be MOVIE, SERIES or ALL.
-     * @return {@link List} requested {@link MediaType}.
+     * @param id {@link UUID} of deleted {@link Media}.
+     * @return restored {@link Media}.
+     * @throws MediaNotFoundException if no deleted {@link Media} is retained under the id.
+     * @throws MediaConflictException if another stored {@link Media} has the title of the deleted {@link Media}.
      */
-    public List<Media> findAll(MediaType mediaType) {
-        switch (mediaType) {
-            case MOVIE -> {
-                return mediaMetadata.stream().filter(
-                        x -> x.getClass().equals(Movie.class)).collect(Collectors.toList());
+    public Media restoreMedia(String id) {
+        long start = metrics.start();
+        try {
+            Media media;
+            long logPosition;
+            writeLock.lock();
+            try {
+                MediaSnapshot current = snapshot;
+                int slot = findSlot(id, retainedIn(current));
+                media = mediaMetadata.get(slot);
+                if (titleIndex.get(media.getTitle()) != null) {
+                    throw new MediaConflictException(id, media.getTitle());
+                }
+                if (log != null) {
+                    log.restore(media.getId());
+                }
+                logPosition = flushLog(1);
+                long version = current.version() + 1;
+                int[] partitionSizes = current.partitionSizes().clone();
+                int[] liveCounts = current.liveCounts().clone();
+                int[] deletedCounts = current.deletedCounts().clone();
+                titleIndex.putIfAbsent(media.getTitle(), mediaMetadata.size());
+                release(slot, media, version, deletedCounts, System.currentTimeMillis());
+                append(media, current.partitions(), partitionSizes);
+                for (MediaType mediaType : partitionsOf(media)) {
+                    liveCounts[mediaType.ordinal()]++;
+                }
+                snapshot = current.next(version, mediaMetadata.size(), partitionSizes, current.deletedSizes(),
+                        liveCounts, deletedCounts);
+            } catch (IOException e) {
+                if (log != null) {
+                    log.discard();
+                }
+                throw new UncheckedIOException("Could not log restore of media " + id, e);
+            } finally {
+                writeLock.unlock();
             }
-            case SERIES -> {
-                return mediaMetadata.stream().filter(
-                        x -> x.getClass().equals(Series.class)).collect(Collectors.toList());
+            syncLog(logPosition);
+            return media;
+        } finally {
+            metrics.stop(Operation.RESTORE, start);
+        }
+    }
+
+    /**
+     * Evict retained deleted {@link Media} replayed from the log, ignored if it is no longer retained.
+     *
+     * @param id {@link UUID} of deleted {@link Media}.
+     */
+    private void evictMedia(UUID id) {
+        writeLock.lock();
+        try {
+            MediaSnapshot current = snapshot;
+            Integer slot = mediaIndex.get(id);
+            if (slot == null || !retainedIn(current).test(slot)) {
+                return;
             }
-            case ALL -> {
-                return mediaMetadata.stream().toList();
+            long version = current.version() + 1;
+            int[] deletedCounts = current.deletedCounts().clone();
+            evict(slot, version, deletedCounts, System.currentTimeMillis());
+            snapshot = current.next(version, current.size(), current.partitionSizes(), current.deletedSizes(),
+                    current.liveCounts(), deletedCounts);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Evict deleted {@link Media} so it can no longer be restored, holding the write lock.
+     * The eviction must already be logged.
+     *
+     * @param slot          deleted slot that is not released.
+     * @param version       repository version of the eviction.
+     * @param deletedCounts deleted counts of the next snapshot, lowered for the slot.
+     * @param now           time of the eviction in milliseconds since the epoch.
+     */
+    private void evict(int slot, long version, int[] deletedCounts, long now) {
+        Media media = mediaMetadata.get(slot);
+        mediaIndex.remove(media.getId(), slot);
+        release(slot, media, version, deletedCounts, now);
+    }
+
+    /**
+     * Slots of the oldest deleted {@link Media} that are still retained, holding the write lock.
+     *
+     * @param count  maximum number of slots.
+     * @param expiry latest time of the delete in milliseconds since the epoch.
+     * @return slots in the order they were deleted.
+     */
+    private List<Integer> oldestTombstones(int count, long expiry) {
+        List<Integer> oldest = new ArrayList<>();
+        for (TimedSlot tombstone : tombstones) {
+            if (oldest.size() >= count || tombstone.time() > expiry) {
+                break;
             }
-            default -> {
-                return null;
+            if (mediaMetadata.releasedVersion(tombstone.slot()) == 0) {
+                oldest.add(tombstone.slot());
             }
         }
+        return oldest;
     }
 
     /**
-     * Finds only deleted {@link Media} based on {@link MediaType}.
+     * Drop the released slots from the head of the tombstones, holding the write lock.
+     */
+    private void dropReleasedTombstones() {
+        while (!tombstones.isEmpty() && mediaMetadata.releasedVersion(tombstones.peek().slot()) != 0) {
+            tombstones.poll();
+        }
+    }
+
+    /**
+     * Release deleted slot and schedule the compaction that purges it, holding the write lock.
      *
-     * @param mediaType can be MOVIE, SERIES or ALL.
-     * @return {@link List} of deleted {@link Media}.
+     * @param slot          deleted slot.
+     * @param media         {@link Media} at the slot.
+     * @param version       repository version of the release.
+     * @param deletedCounts deleted counts of the next snapshot, lowered for the slot.
+     * @param now           time of the release in milliseconds since the epoch.
      */
-    public List<Media> findDeleted(MediaType mediaType) {
-        switch (mediaType) {
-            case MOVIE -> {
-                return deletedMediaMetadata.stream().filter(
-                        x -> x.getClass().equals(Movie.class)).collect(Collectors.toList());
-            }
-            case SERIES -> {
-                return deletedMediaMetadata.stream().filter(
-                        x -> x.getClass().equals(Series.class)).collect(Collectors.toList());
+    private void release(int slot, Media media, long version, int[] deletedCounts, long now) {
+        mediaMetadata.setReleasedVersion(slot, version);
+        for (MediaType mediaType : partitionsOf(media)) {
+            deletedCounts[mediaType.ordinal()]--;
+        }
+        released.add(new TimedSlot(slot, now));
+        scheduleCompaction();
+    }
+
+    /**
+     * Find the stored {@link Movie} released in a range of years.
+     *
+     * @param from first year, unbounded if null.
+     * @param to   last year, unbounded if null.
+     * @return read-only {@link MediaView} of the {@link Movie}, earliest year first and in insertion order
+     * within a year; close it once read.
+     */
+    public MediaView findMoviesByYear(Integer from, Integer to) {
+        return rangeView(releaseYearIndex, from, to);
+    }
+
+    /**
+     * Find one page of the stored {@link Movie} released in a range of years.
+     *
+     * @param from   first year, unbounded if null.
+     * @param to     last year, unbounded if null.
+     * @param cursor cursor returned with the previous page, null for the first page.
+     * @param limit  maximum number of {@link Movie} on the page.
+     * @return {@link MediaPage} ordered as by {@link #findMoviesByYear(Integer, Integer)}.
+     * @throws InvalidCursorException if the cursor was not issued for this range.
+     */
+    public MediaPage findMoviesByYear(Integer from, Integer to, String cursor, int limit) {
+        return rangePage(releaseYearIndex, "MOVIE_YEAR", from, to, cursor, limit);
+    }
+
+    /**
+     * Find the stored {@link Series} with a number of episodes in a range.
+     *
+     * @param min fewest episodes, unbounded if null.
+     * @param max most episodes, unbounded if null.
+     * @return read-only {@link MediaView} of the {@link Series}, fewest episodes first and in insertion order
+     * among equals; close it once read.
+     */
+    public MediaView findSeriesByEpisodes(Integer min, Integer max) {
+        return rangeView(episodesIndex, min, max);
+    }
+
+    /**
+     * Find one page of the stored {@link Series} with a number of episodes in a range.
+     *
+     * @param min    fewest episodes, unbounded if null.
+     * @param max    most episodes, unbounded if null.
+     * @param cursor cursor returned with the previous page, null for the first page.
+     * @param limit  maximum number of {@link Series} on the page.
+     * @return {@link MediaPage} ordered as by {@link #findSeriesByEpisodes(Integer, Integer)}.
+     * @throws InvalidCursorException if the cursor was not issued for this range.
+     */
+    public MediaPage findSeriesByEpisodes(Integer min, Integer max, String cursor, int limit) {
+        return rangePage(episodesIndex, "SERIES_EPISODES", min, max, cursor, limit);
+    }
+
+    /**
+     * View of the stored {@link Media} of a range of a {@link RangeIndex}, read in O(log n + k).
+     *
+     * @param index {@link RangeIndex} to read.
+     * @param from  lowest value, unbounded if null.
+     * @param to    highest value, unbounded if null.
+     * @return {@link MediaView} in the order of the index.
+     */
+    private MediaView rangeView(RangeIndex index, Integer from, Integer to) {
+        long start = metrics.start();
+        SnapshotReaders.Lease lease = read();
+        try {
+            IntPredicate visible = visibleIn(lease.snapshot());
+            int[] slots = new int[16];
+            int length = 0;
+            for (long key : index.range(from != null ? from : Integer.MIN_VALUE,
+                    to != null ? to : Integer.MAX_VALUE, 0)) {
+                int slot = RangeIndex.slot(key);
+                if (visible.test(slot)) {
+                    if (length == slots.length) {
+                        slots = Arrays.copyOf(slots, length * 2);
+                    }
+                    slots[length++] = slot;
+                }
             }
-            case ALL -> {
-                return deletedMediaMetadata.stream().toList();
+            int[] found = slots;
+            return new MediaView(entry -> found[entry], length, length, slot -> true,
+                    mediaMetadata::get, slot -> slot, this::fragment, lease.snapshot().version(), lease);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        } finally {
+            metrics.stop(Operation.FIND_BY_RANGE, start);
+        }
+    }
+
+    /**
+     * Read a page of a range of a {@link RangeIndex}, resuming at the key held by the cursor.
+     * Media deleted before their page are skipped and media added to the range before it are included.
+     *
+     * @param index   {@link RangeIndex} to read.
+     * @param listing name of the listing, cursors are only valid for the range they were issued for.
+     * @param from    lowest value, unbounded if null.
+     * @param to      highest value, unbounded if null.
+     * @param cursor  cursor of the page, null for the first page.
+     * @param limit   maximum number of {@link Media} on the page.
+     * @return {@link MediaPage}.
+     * @throws InvalidCursorException if the cursor was not issued for this range.
+     */
+    private MediaPage rangePage(RangeIndex index, String listing, Integer from, Integer to, String cursor,
+                                int limit) {
+        long start = metrics.start();
+        try (SnapshotReaders.Lease lease = read()) {
+            String range = listing + "_" + (from != null ? from : "") + "_" + (to != null ? to : "");
+            IntPredicate visible = visibleIn(lease.snapshot());
+            List<Media> items = new ArrayList<>();
+            for (long key : index.range(from != null ? from : Integer.MIN_VALUE,
+                    to != null ? to : Integer.MAX_VALUE, MediaCursor.decode(range, cursor))) {
+                int slot = RangeIndex.slot(key);
+                if (!visible.test(slot)) {
+                    continue;
+                }
+                if (items.size() == limit) {
+                    return new MediaPage(items, MediaCursor.encode(range, key));
+                }
+                items.add(mediaMetadata.get(slot));
             }
-            default -> {
-                return null;
+            return new MediaPage(items, null);
+        } finally {
+            metrics.stop(Operation.FIND_BY_RANGE, start);
+        }
+    }
+
+    /**
+     * Add or remove the value of {@link Media} in its {@link RangeIndex}, holding the write lock.
+     * {@link Movie} without a release date are not indexed.
+     *
+     * @param slot  slot of {@link Media}.
+     * @param media {@link Media}.
+     * @param add   true to add, false to remove.
+     */
+    private void indexRange(int slot, Media media, boolean add) {
+        RangeIndex index;
+        int value;
+        if (media instanceof Movie movie && movie.getReleaseDate() != null) {
+            index = releaseYearIndex;
+            value = releaseYear(movie);
+        } else if (media instanceof Series series) {
+            index = episodesIndex;
+            value = series.getNumberOfEpisodes();
+        } else {
+            return;
+        }
+        if (add) {
+            index.add(slot, value);
+        } else {
+            index.remove(slot, value);
+        }
+    }
+
+    /**
+     * Year of the release date of a {@link Movie} in UTC, as it is written to JSON.
+     *
+     * @param movie {@link Movie} with a release date.
+     * @return year.
+     */
+    static int releaseYear(Movie movie) {
+        return movie.getReleaseDate().toInstant().atOffset(ZoneOffset.UTC).getYear();
+    }
+
+    /**
+     * Count the stored {@link Media} matching a filter by type, label and release decade.
+     * Counts are kept up to date by every write, so this costs the same however many {@link Media} are stored.
+     *
+     * @param mediaType {@link MediaType} to count, ALL for every {@link Media}.
+     * @param label     genre label the counted {@link Media} have to carry, null for any.
+     * @return {@link Facets}.
+     */
+    public Facets facets(MediaType mediaType, String label) {
+        long start = metrics.start();
+        try {
+            return facetCounts.facets(mediaType, label);
+        } finally {
+            metrics.stop(Operation.FACETS, start);
+        }
+    }
+
+    /**
+     * Find the stored {@link Media} whose titles are closest to a query that may be misspelt,
+     * ranked by the trigram similarity of the {@link FuzzyTitleIndex}.
+     *
+     * @param query characters to search for.
+     * @param limit maximum number of {@link SearchHit} returned.
+     * @return {@link List} of {@link SearchHit}, best first.
+     */
+    public List<SearchHit> search(String query, int limit) {
+        long start = metrics.start();
+        try (SnapshotReaders.Lease lease = read()) {
+            List<SearchHit> hits = new ArrayList<>();
+            for (FuzzyTitleIndex.Match match : fuzzyTitleIndex.search(query, limit, visibleIn(lease.snapshot()))) {
+                hits.add(new SearchHit(match.score(), mediaMetadata.get(match.slot())));
             }
+            return hits;
+        } finally {
+            metrics.stop(Operation.SEARCH, start);
         }
     }
 
     /**
-     * Find {@link Media} based on {@link UUID}.
+     * Find {@link List} of {@link Media} that have matching labels.
      *
      * @param id UUID of {@link Media}.
-     * @return {@link List} of {@link Media}
+     * @return {@link List} of {@link Media}, most shared labels first.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
      */
-    public Media findById(String id) {
-        return mediaMetadata.stream().filter(
-                x -> x.getId().equals(UUID.fromString(id))).findFirst().get();
+    public List<Media> findByLabel(String id) {
+        return findByLabel(id, Integer.MAX_VALUE);
     }
 
     /**
-     * Find {@link Media} based on characters present in title.
+     * Find {@link List} of {@link Media} that have matching labels using the {@link LabelIndex},
+     * ranked by the number of labels shared and then by insertion order.
      *
-     * @param characters string of characters present in the title.
-     * @return {@link List} of {@link Media} that were found.
+     * @param id    UUID of {@link Media}.
+     * @param limit maximum number of {@link Media} returned.
+     * @return {@link List} of {@link Media}, most shared labels first.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
      */
-    public List<Media> findByCharacters(String characters) {
-        return mediaMetadata.stream().filter(
-                x -> x.getTitle().contains(characters)).collect(Collectors.toList());
+    public List<Media> findByLabel(String id, int limit) {
+        try (MediaView view = relatedView(id, limit)) {
+            return new ArrayList<>(view);
+        }
     }
 
     /**
-     * Store {@link Media} in the repository.
+     * View of the {@link Media} related to {@link Media} by label, ranked as by {@link #findByLabel(String, int)}.
      *
-     * @param media String representing {@link Media} data.
-     * @return parsed and serialised {@link Media} object.
+     * @param id    UUID of {@link Media}.
+     * @param limit maximum number of {@link Media} returned.
+     * @return {@link MediaView} of the ranked {@link Media}.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
      */
-    public Media addMedia(String media) {
-        Media convertedMedia = null;
+    MediaView relatedView(String id, int limit) {
+        long start = metrics.start();
+        SnapshotReaders.Lease lease = read();
         try {
-            convertedMedia = convertStringToMedia(media);
+            MediaSnapshot current = lease.snapshot();
+            Media findMedia = mediaMetadata.get(findSlot(id, visibleIn(current)));
+            int[] slots = labelIndex.related(findMedia.getLabelSet(), limit, visibleIn(current));
+            return new MediaView(entry -> slots[entry], slots.length, slots.length, slot -> true,
+                    mediaMetadata::get, slot -> slot, this::fragment, current.version(), lease);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        } finally {
+            metrics.stop(Operation.FIND_BY_LABEL, start);
+        }
+    }
+
+    /**
+     * Find the {@link Media} whose labels are most similar to those of {@link Media}, estimated by
+     * the {@link MinHashIndex} instead of comparing every {@link Media} sharing a label.
+     *
+     * @param id    UUID of {@link Media}.
+     * @param limit maximum number of {@link Media} returned.
+     * @return {@link List} of {@link Media}, highest estimated Jaccard index of the labels first.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
+     */
+    public List<Media> findSimilar(String id, int limit) {
+        try (MediaView view = similarView(id, limit)) {
+            return new ArrayList<>(view);
+        }
+    }
+
+    /**
+     * View of the {@link Media} with labels similar to {@link Media}, ranked as by {@link #findSimilar(String, int)}.
+     *
+     * @param id    UUID of {@link Media}.
+     * @param limit maximum number of {@link Media} returned.
+     * @return {@link MediaView} of the ranked {@link Media}.
+     * @throws MediaNotFoundException if no {@link Media} is stored under the id.
+     */
+    MediaView similarView(String id, int limit) {
+        long start = metrics.start();
+        SnapshotReaders.Lease lease = read();
+        try {
+            MediaSnapshot current = lease.snapshot();
+            Media findMedia = mediaMetadata.get(findSlot(id, visibleIn(current)));
+            MinHashIndex.Match[] matches = minHashIndex.search(findMedia.getLabelSet(), limit, visibleIn(current));
+            return new MediaView(entry -> matches[entry].slot(), matches.length, matches.length, slot -> true,
+                    mediaMetadata::get, slot -> slot, this::fragment, current.version(), lease);
+        } catch (RuntimeException e) {
+            lease.close();
+            throw e;
+        } finally {
+            metrics.stop(Operation.FIND_SIMILAR, start);
+        }
+    }
+
+    /**
+     * Take a {@link SnapshotReaders.Lease} on the current snapshot.
+     *
+     * @return {@link SnapshotReaders.Lease}, to be closed once no more records are read.
+     */
+    private SnapshotReaders.Lease read() {
+        return readers.acquire(() -> snapshot);
+    }
+
+    /**
+     * JSON of the stored {@link Media} at a slot from the {@link FragmentCache}.
+     *
+     * @param slot slot of stored {@link Media}.
+     * @return UTF-8 JSON.
+     */
+    private byte[] fragment(int slot) {
+        return fragmentCache.fragment(slot, mediaMetadata::get);
+    }
+
+    /**
+     * Write the records appended to the {@link WriteAheadLog} by the current write and schedule
+     * a snapshot once enough writes were logged since the last one, holding the write lock.
+     *
+     * @param writes number of writes logged.
+     * @return position to sync the log to before the write returns, 0 if nothing is persisted.
+     * @throws IOException if the log cannot be written.
+     */
+    private long flushLog(int writes) throws IOException {
+        if (log == null) {
+            return 0;
+        }
+        long position = log.flush();
+        loggedSinceSnapshot += writes;
+        if (loggedSinceSnapshot >= snapshotInterval && snapshotScheduled.compareAndSet(false, true)) {
+            maintenanceExecutor.execute(() -> {
+                try {
+                    writeSnapshot();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Could not write snapshot to {}", persistenceDirectory, e);
+                } finally {
+                    snapshotScheduled.set(false);
+                }
+            });
+        }
+        return position;
+    }
+
+    /**
+     * Make the logged records of a write durable, sharing the fsync with concurrent writers.
+     *
+     * @param position position returned by {@link #flushLog(int)}.
+     * @throws UncheckedIOException if the log cannot be synced.
+     */
+    private void syncLog(long position) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.sync(position);
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            throw new UncheckedIOException("Could not sync media log", e);
         }
-        Media findingMedia = convertedMedia;
-        if (mediaMetadata.stream().noneMatch(
-                x -> x.getTitle().equals(findingMedia.getTitle()))) {
-            mediaMetadata.add(convertedMedia);
+    }
+
+    /**
+     * Write a snapshot of the current {@link MediaSnapshot} and delete the log it covers.
+     * The log is rolled under the write lock, the snapshot itself is written without blocking
+     * writers, reading the slots of the {@link MediaSnapshot} like any other reader.
+     *
+     * @throws UncheckedIOException if the snapshot cannot be written.
+     */
+    void writeSnapshot() {
+        long start = metrics.start();
+        maintenanceLock.lock();
+        try {
+            long segment;
+            MediaSnapshot current;
+            int[] deletionOrder;
+            long[] deletedAt;
+            writeLock.lock();
+            try {
+                segment = log.roll();
+                current = snapshot;
+                loggedSinceSnapshot = 0;
+                IntPredicate retained = retainedIn(current);
+                List<TimedSlot> deleted = tombstones.stream()
+                        .filter(tombstone -> retained.test(tombstone.slot())).collect(Collectors.toList());
+                deletionOrder = deleted.stream().mapToInt(TimedSlot::slot).toArray();
+                deletedAt = deleted.stream().mapToLong(TimedSlot::time).toArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not roll media log", e);
+            } finally {
+                writeLock.unlock();
+            }
+            try {
+                SnapshotFile.write(persistenceDirectory, segment, current.size(), mediaMetadata::get,
+                        visibleIn(current), retainedIn(current), deletionOrder.length,
+                        i -> deletionOrder[i], i -> deletedAt[i]);
+                log.deleteBefore(segment);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write snapshot", e);
+            }
+        } finally {
+            maintenanceLock.unlock();
+            metrics.stop(Operation.SNAPSHOT, start);
         }
-        return mediaMetadata.stream().filter(
-                x -> x.getTitle().equals(findingMedia.getTitle())).findFirst().get();
     }
 
     /**
-     * Use {@link UUID} to delete {@link Media} and store in a separate datastructures.
+     * Evict deleted {@link Media} older than the retained age, purge the records of slots released
+     * for at least the compaction interval before the oldest leased snapshot and, once purged slots
+     * make up a quarter of the slots, drop purged slots from the indexes and released or deleted
+     * slots from the partitions.
+     * Rebuilt partitions are published with a new {@link MediaSnapshot}, readers of older
+     * snapshots keep reading the partitions they hold.
      *
-     * @param id {@link UUID} of {@link Media}.
-     * @return true if it was deleted.
+     * @throws UncheckedIOException if evictions cannot be logged.
      */
-    public boolean deleteMedia(String id) {
-        Media media = mediaMetadata.stream().filter(
-                x -> x.getId().equals(UUID.fromString(id))).findFirst().get();
-        deletedMediaMetadata.add(media);
-        return mediaMetadata.remove(media);
+    void compact() {
+        long start = metrics.start();
+        maintenanceLock.lock();
+        try {
+            long logPosition;
+            writeLock.lock();
+            try {
+                MediaSnapshot current = snapshot;
+                long now = System.currentTimeMillis();
+                long version = current.version() + 1;
+                int[] deletedCounts = current.deletedCounts().clone();
+                List<Integer> evicted = deletedMaxAge == null ? List.of()
+                        : oldestTombstones(Integer.MAX_VALUE, now - deletedMaxAge.toMillis());
+                if (log != null) {
+                    for (int slot : evicted) {
+                        log.evict(mediaMetadata.get(slot).getId());
+                    }
+                }
+                logPosition = flushLog(evicted.size());
+                for (int slot : evicted) {
+                    evict(slot, version, deletedCounts, now);
+                }
+                dropReleasedTombstones();
+                long purgeBefore = now - compactionInterval.toMillis();
+                long oldestRead = readers.oldestVersion(current.version());
+                while (!released.isEmpty() && released.peek().time() <= purgeBefore
+                        && mediaMetadata.releasedVersion(released.peek().slot()) <= oldestRead) {
+                    int slot = released.poll().slot();
+                    indexRange(slot, mediaMetadata.get(slot), false);
+                    mediaMetadata.purge(slot);
+                    fragmentCache.invalidate(slot);
+                    purged.set(slot);
+                    purgedInIndexes++;
+                }
+                MediaSnapshot next = evicted.isEmpty() ? current : current.next(version, current.size(),
+                        current.partitionSizes(), current.deletedSizes(), current.liveCounts(), deletedCounts);
+                if (purgedInIndexes > 0 && purgedInIndexes * REBUILD_RATIO >= next.size()) {
+                    next = rebuild(next);
+                }
+                snapshot = next;
+                if (!released.isEmpty()) {
+                    scheduleCompaction();
+                }
+            } catch (IOException e) {
+                if (log != null) {
+                    log.discard();
+                }
+                throw new UncheckedIOException("Could not log eviction of media", e);
+            } finally {
+                writeLock.unlock();
+            }
+            syncLog(logPosition);
+        } finally {
+            maintenanceLock.unlock();
+            metrics.stop(Operation.COMPACT, start);
+        }
     }
 
     /**
-     * Find {@link List} of {@link Media} that have matching labels.
+     * Drop purged slots from the indexes and copy the partitions without the slots no reader of
+     * the current version can see, holding the write lock.
      *
-     * @param id UUID of {@link Media}.
-     * @return {@link List} of {@link Media}.
+     * @param current {@link MediaSnapshot} to rebuild.
+     * @return {@link MediaSnapshot} at the same version with the rebuilt partitions.
      */
-    public List<Media> findByLabel(String id) {
-        Media findMedia = mediaMetadata.stream().filter(
-                x -> x.getId().equals(UUID.fromString(id))).findFirst().get();
-        return mediaMetadata.stream().filter(
-                m -> m.getLabels().stream().anyMatch(
-                        l -> findMedia.getLabels().contains(l))).collect(Collectors.toList());
+    private MediaSnapshot rebuild(MediaSnapshot current) {
+        IntPredicate indexed = slot -> !purged.get(slot);
+        trigramIndex.compact(indexed);
+        fuzzyTitleIndex.compact(indexed);
+        labelIndex.compact(indexed);
+        minHashIndex.compact(indexed);
+        purgedInIndexes = 0;
+        int types = MediaType.values().length;
+        IntPostingList[] partitions = new IntPostingList[types];
+        int[] partitionSizes = current.partitionSizes().clone();
+        IntPostingList[] deletedPartitions = new IntPostingList[types];
+        int[] deletedSizes = new int[types];
+        for (MediaType mediaType : MediaType.values()) {
+            int type = mediaType.ordinal();
+            if (current.partitions()[type] != null) {
+                partitions[type] = current.partitions()[type].filter(partitionSizes[type],
+                        slot -> mediaMetadata.deletedVersion(slot) == 0);
+                partitionSizes[type] = partitions[type].size();
+            }
+            deletedPartitions[type] = current.deletedPartitions()[type].filter(current.deletedSizes()[type],
+                    slot -> mediaMetadata.releasedVersion(slot) == 0);
+            deletedSizes[type] = deletedPartitions[type].size();
+        }
+        return new MediaSnapshot(current.version(), current.size(), partitions, partitionSizes,
+                deletedPartitions, deletedSizes, current.liveCounts(), current.deletedCounts(),
+                current.partitionVersions());
+    }
+
+    /**
+     * Compact, logging instead of throwing failures, for runs in the background.
+     */
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            LOGGER.error("Could not compact media", e);
+        }
+    }
+
+    /**
+     * Schedule a compaction after the compaction interval, unless one is already scheduled.
+     */
+    private void scheduleCompaction() {
+        if (!maintenanceExecutor.isShutdown() && compactionScheduled.compareAndSet(false, true)) {
+            maintenanceExecutor.schedule(() -> {
+                compactionScheduled.set(false);
+                compactInBackground();
+            }, compactionInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Load the latest snapshot and replay the log after it, before the repository is used.
+     * Snapshot slots are restored as they were, deleted slots numbered in deletion order.
+     * Logged writes go through the usual add, delete, restore and eviction and are not logged again.
+     *
+     * @param recovered {@link WriteAheadLog} to replay.
+     * @throws IOException if the snapshot or log cannot be read.
+     */
+    private void recover(WriteAheadLog recovered) throws IOException {
+        OptionalLong latest = SnapshotFile.latest(persistenceDirectory);
+        if (latest.isPresent()) {
+            MediaSnapshot empty = snapshot;
+            int types = MediaType.values().length;
+            int[] partitionSizes = new int[types];
+            int[] deletedSizes = new int[types];
+            int[] liveCounts = new int[types];
+            int[] deletedCounts = new int[types];
+            SnapshotFile.read(persistenceDirectory, latest.getAsLong(), new SnapshotFile.Loader() {
+                @Override
+                public void slot(Media media, boolean deleted) {
+                    if (!deleted) {
+                        titleIndex.putIfAbsent(media.getTitle(), mediaMetadata.size());
+                        for (MediaType mediaType : partitionsOf(media)) {
+                            liveCounts[mediaType.ordinal()]++;
+                        }
+                    }
+                    append(media, empty.partitions(), partitionSizes);
+                }
+
+                @Override
+                public void deleted(int slot, long deletedAt) {
+                    tombstones.add(new TimedSlot(slot, deletedAt));
+                    mediaMetadata.setDeletedVersion(slot, tombstones.size());
+                    facetCounts.add(mediaMetadata.get(slot), -1);
+                    for (MediaType mediaType : partitionsOf(mediaMetadata.get(slot))) {
+                        empty.deletedPartitions()[mediaType.ordinal()].add(slot);
+                        deletedSizes[mediaType.ordinal()]++;
+                        deletedCounts[mediaType.ordinal()]++;
+                    }
+                }
+            });
+            snapshot = empty.next(tombstones.size() + 1, mediaMetadata.size(), partitionSizes, deletedSizes,
+                    liveCounts, deletedCounts);
+        }
+        List<Media> replayed = new ArrayList<>(bulkBatchSize);
+        loggedSinceSnapshot = recovered.replay(latest.orElse(0), new WriteAheadLog.Replay() {
+            @Override
+            public void add(Media media) {
+                replayed.add(media);
+                if (replayed.size() == bulkBatchSize) {
+                    addMedia(replayed);
+                    replayed.clear();
+                }
+            }
+
+            @Override
+            public void delete(UUID id, long deletedAt) {
+                addMedia(replayed);
+                replayed.clear();
+                deleteMedia(id.toString(), deletedAt);
+            }
+
+            @Override
+            public void restore(UUID id) {
+                addMedia(replayed);
+                replayed.clear();
+                restoreMedia(id.toString());
+            }
+
+            @Override
+            public void evict(UUID id) {
+                addMedia(replayed);
+                replayed.clear();
+                evictMedia(id);
+            }
+        });
+        addMedia(replayed);
+    }
+
+    /**
+     * Stop background maintenance and sync and close the {@link WriteAheadLog} once a running
+     * snapshot has finished.
+     *
+     * @throws IOException if the log cannot be synced.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        maintenanceExecutor.shutdown();
+        if (log == null) {
+            return;
+        }
+        try {
+            maintenanceExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeLock.lock();
+        try {
+            log.close();
+            log = null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Read a page of a listing.
+     *
+     * @param view    {@link MediaView} of the listing.
+     * @param listing name of the listing, cursors are only valid for the listing they were issued for.
+     * @param cursor  cursor of the page, null for the first page.
+     * @param limit   maximum number of {@link Media} on the page.
+     * @return {@link MediaPage}.
+     */
+    private static MediaPage page(MediaView view, String listing, String cursor, int limit) {
+        List<Media> items = new ArrayList<>(Math.min(limit, view.size()));
+        int entry = view.advance(view.seek(MediaCursor.decode(listing, cursor)));
+        while (entry < view.entries() && items.size() < limit) {
+            items.add(view.get(entry));
+            entry = view.advance(entry + 1);
+        }
+        return new MediaPage(items, entry < view.entries() ? MediaCursor.encode(listing, view.key(entry)) : null);
+    }
+
+    /**
+     * Publish the number of stored and deleted {@link Media} by {@link MediaType}, the estimated
+     * memory of the records and the caches and the purged slots still in the indexes.
+     *
+     * @param registry {@link MeterRegistry} to register with.
+     */
+    private void registerGauges(MeterRegistry registry) {
+        for (MediaType mediaType : MediaType.values()) {
+            Gauge.builder("media.repository.records", this, repository -> repository.snapshot.liveCounts()[mediaType.ordinal()])
+                    .description("Stored media").tag("type", mediaType.name()).register(registry);
+            Gauge.builder("media.repository.deleted", this, repository -> repository.snapshot.deletedCounts()[mediaType.ordinal()])
+                    .description("Deleted media retained for restoring").tag("type", mediaType.name()).register(registry);
+        }
+        Gauge.builder("media.repository.memory", this, repository -> repository.mediaMetadata.heapBytes())
+                .description("Estimated bytes of the records").tag("area", "heap").baseUnit("bytes").register(registry);
+        Gauge.builder("media.repository.memory", this, repository -> repository.mediaMetadata.offHeapBytes())
+                .description("Estimated bytes of the records").tag("area", "offheap").baseUnit("bytes").register(registry);
+        Gauge.builder("media.repository.fragment.cache", this, repository -> repository.fragmentCache.bytes())
+                .description("Bytes of cached media JSON").baseUnit("bytes").register(registry);
+        Gauge.builder("media.repository.index.purged", this, repository -> repository.purgedInIndexes)
+                .description("Purged slots still in the indexes until they are rebuilt").register(registry);
+    }
+
+    /**
+     * Partitions a {@link Media} belongs to, ALL and its own {@link MediaType}.
+     *
+     * @param media {@link Media}.
+     * @return {@link Set} of {@link MediaType}.
+     */
+    private static Set<MediaType> partitionsOf(Media media) {
+        return EnumSet.of(MediaType.ALL, media.getMediaType());
+    }
+
+    /**
+     * Check which slots are visible in a {@link MediaSnapshot}: appended before it
+     * and not deleted at its version.
+     *
+     * @param snapshot {@link MediaSnapshot} of the reader.
+     * @return {@link IntPredicate} testing slots.
+     */
+    private IntPredicate visibleIn(MediaSnapshot snapshot) {
+        return slot -> {
+            if (slot >= snapshot.size()) {
+                return false;
+            }
+            long deletedVersion = mediaMetadata.deletedVersion(slot);
+            return deletedVersion == 0 || deletedVersion > snapshot.version();
+        };
+    }
+
+    /**
+     * Check which slots are retained deleted slots in a {@link MediaSnapshot}: deleted at
+     * its version and not yet restored or evicted.
+     *
+     * @param snapshot {@link MediaSnapshot} of the reader.
+     * @return {@link IntPredicate} testing slots.
+     */
+    private IntPredicate retainedIn(MediaSnapshot snapshot) {
+        return slot -> {
+            if (slot >= snapshot.size()) {
+                return false;
+            }
+            long deletedVersion = mediaMetadata.deletedVersion(slot);
+            long releasedVersion = mediaMetadata.releasedVersion(slot);
+            return deletedVersion != 0 && deletedVersion <= snapshot.version()
+                    && (releasedVersion == 0 || releasedVersion > snapshot.version());
+        };
+    }
+
+    /**
+     * Look up the slot of {@link Media} in mediaMetadata using the {@link UUID} index.
+     *
+     * @param id    UUID of {@link Media}.
+     * @param found check the slot has to pass, such as being visible in a {@link MediaSnapshot}.
+     * @return slot of the {@link Media}.
+     * @throws MediaNotFoundException if the id is not a {@link UUID} or no slot passing the check is under it.
+     */
+    private int findSlot(String id, IntPredicate found) {
+        Integer slot;
+        try {
+            slot = mediaIndex.get(UUID.fromString(id));
+        } catch (IllegalArgumentException e) {
+            throw new MediaNotFoundException(id);
+        }
+        if (slot == null || !found.test(slot)) {
+            throw new MediaNotFoundException(id);
+        }
+        return slot;
     }
 
     /**
@@ -160,14 +1782,21 @@ public class MediaRepository {
      *
      * @param media String data from POST request.
      * @return {@link Media} object.
-     * @throws IOException thrown if the {@link ObjectMapper} fails to parse string.
+     * @throws IOException thrown if the {@link ObjectMapper} fails to parse string
+     *                     or the string is not a {@link Media} object.
      */
     private Media convertStringToMedia(String media) throws IOException {
-        ObjectMapper objectMapper = objectMapper();
-        Reader reader = new StringReader(media);
-        Media newMedia = null;
-        newMedia = objectMapper.readValue(reader, Media.class);
-        return newMedia;
+        long start = metrics.start();
+        try {
+            Reader reader = new StringReader(media);
+            Media newMedia = mediaReader.readValue(reader);
+            if (newMedia == null) {
+                throw new IOException("Media is null");
+            }
+            return newMedia;
+        } finally {
+            metrics.stop(Operation.PARSE, start);
+        }
     }
 
     /**
@@ -177,9 +1806,27 @@ public class MediaRepository {
      */
     @Bean
     public ObjectMapper objectMapper() {
+        return createObjectMapper();
+    }
+
+    /**
+     * Create an {@link ObjectMapper} with {@link MediaDeserializer} registered.
+     *
+     * @return {@link ObjectMapper}.
+     */
+    private static ObjectMapper createObjectMapper() {
         SimpleModule simpleModule = new SimpleModule();
         simpleModule.addDeserializer(Media.class, new MediaDeserializer());
         return new ObjectMapper().registerModule(simpleModule);
     }
 
-}
\ No newline at end of file
+    /**
+     * Slot with the time it was deleted or released.
+     *
+     * @param slot slot in mediaMetadata.
+     * @param time time in milliseconds since the epoch.
+     */
+    private record TimedSlot(int slot, long time) {
+    }
+
+}
@@ -0,0 +1,174 @@
+package mediametadata.controller;
+
+import mediametadata.index.FuzzyTitleIndex;
+import mediametadata.index.TitleNormalisation;
+import mediametadata.storage.RecordStorage;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of {@link MediaRepository}, bound from the media.repository properties.
+ */
+@ConfigurationProperties(prefix = "media.repository")
+public class MediaRepositoryProperties {
+
+    /**
+     * How titles are normalised when checking if a title already exists.
+     */
+    private TitleNormalisation titleNormalisation = TitleNormalisation.NONE;
+
+    /**
+     * Where stored media are kept.
+     */
+    private RecordStorage recordStorage = RecordStorage.HEAP;
+
+    /**
+     * Number of lines of a bulk load stored under one write.
+     */
+    private int bulkBatchSize = 1000;
+
+    /**
+     * Directory of the write-ahead log and snapshots, nothing is persisted if null.
+     */
+    private Path persistenceDirectory;
+
+    /**
+     * Number of logged writes after which a snapshot is written in the background.
+     */
+    private int snapshotInterval = 100_000;
+
+    /**
+     * Maximum number of deleted media kept for restoring, the oldest are evicted beyond it. Unlimited if null.
+     */
+    private Integer deletedMaxCount;
+
+    /**
+     * Maximum time deleted media are kept for restoring. Kept until evicted by count if null.
+     */
+    private Duration deletedMaxAge;
+
+    /**
+     * Time released media are kept readable before compaction reclaims them.
+     */
+    private Duration compactionInterval = Duration.ofMinutes(1);
+
+    /**
+     * Maximum size of the serialised full listings kept to answer repeated requests.
+     */
+    private DataSize listingCacheSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Maximum size of the JSON of single media kept to write listings without serialising them again.
+     */
+    private DataSize fragmentCacheSize = DataSize.ofMegabytes(64);
+
+    /**
+     * Time one in this many repository operations, 1 to time every operation.
+     */
+    private int metricsSampleInterval = 1;
+
+    /**
+     * Maximum number of index entries read by one fuzzy search before the best candidates are checked.
+     */
+    private int searchScanBudget = FuzzyTitleIndex.DEFAULT_SCAN_BUDGET;
+
+    public TitleNormalisation getTitleNormalisation() {
+        return titleNormalisation;
+    }
+
+    public void setTitleNormalisation(TitleNormalisation titleNormalisation) {
+        this.titleNormalisation = titleNormalisation;
+    }
+
+    public RecordStorage getRecordStorage() {
+        return recordStorage;
+    }
+
+    public void setRecordStorage(RecordStorage recordStorage) {
+        this.recordStorage = recordStorage;
+    }
+
+    public int getBulkBatchSize() {
+        return bulkBatchSize;
+    }
+
+    public void setBulkBatchSize(int bulkBatchSize) {
+        this.bulkBatchSize = bulkBatchSize;
+    }
+
+    public Path getPersistenceDirectory() {
+        return persistenceDirectory;
+    }
+
+    public void setPersistenceDirectory(Path persistenceDirectory) {
+        this.persistenceDirectory = persistenceDirectory;
+    }
+
+    public int getSnapshotInterval() {
+        return snapshotInterval;
+    }
+
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    public Integer getDeletedMaxCount() {
+        return deletedMaxCount;
+    }
+
+    public void setDeletedMaxCount(Integer deletedMaxCount) {
+        this.deletedMaxCount = deletedMaxCount;
+    }
+
+    public Duration getDeletedMaxAge() {
+        return deletedMaxAge;
+    }
+
+    public void setDeletedMaxAge(Duration deletedMaxAge) {
+        this.deletedMaxAge = deletedMaxAge;
+    }
+
+    public Duration getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    public void setCompactionInterval(Duration compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public DataSize getListingCacheSize() {
+        return listingCacheSize;
+    }
+
+    public void setListingCacheSize(DataSize listingCacheSize) {
+        this.listingCacheSize = listingCacheSize;
+    }
+
+    public DataSize getFragmentCacheSize() {
+        return fragmentCacheSize;
+    }
+
+    public void setFragmentCacheSize(DataSize fragmentCacheSize) {
+        this.fragmentCacheSize = fragmentCacheSize;
+    }
+
+    public int getMetricsSampleInterval() {
+        return metricsSampleInterval;
+    }
+
+    public void setMetricsSampleInterval(int metricsSampleInterval) {
+        this.metricsSampleInterval = metricsSampleInterval;
+    }
+
+    public int getSearchScanBudget() {
+        return searchScanBudget;
+    }
+
+    public void setSearchScanBudget(int searchScanBudget) {
+        this.searchScanBudget = searchScanBudget;
+    }
+
+}
@@ -0,0 +1,71 @@
+package mediametadata.controller;
+
+import mediametadata.index.IntPostingList;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+
+/**
+ * Point-in-time view of {@link MediaRepository}, replaced as a whole by every write.
+ * Arrays are indexed by {@link MediaType#ordinal()} and never changed after publishing.
+ * The partitions are held by the snapshot, so compaction can replace them without
+ * disturbing readers of older snapshots.
+ *
+ * @param version           repository version, raised by every write.
+ * @param size              number of slots, later slots are not visible.
+ * @param partitions        slots of each {@link MediaType} in insertion order, null for ALL which holds every slot.
+ * @param partitionSizes    number of entries of each live partition, including deleted {@link Media}.
+ * @param deletedPartitions slots of deleted {@link Media} of each {@link MediaType} in deletion order.
+ * @param deletedSizes      number of entries of each deleted partition, including released {@link Media}.
+ * @param liveCounts        number of stored {@link Media} of each {@link MediaType}.
+ * @param deletedCounts     number of deleted {@link Media} of each {@link MediaType} still retained.
+ * @param partitionVersions version of the last write that changed the stored {@link Media} of each {@link MediaType}.
+ */
+record MediaSnapshot(long version, int size,
+                     IntPostingList[] partitions, int[] partitionSizes,
+                     IntPostingList[] deletedPartitions, int[] deletedSizes,
+                     int[] liveCounts, int[] deletedCounts, long[] partitionVersions) {
+
+    /**
+     * Snapshot of an empty repository.
+     *
+     * @return {@link MediaSnapshot} at version 0.
+     */
+    static MediaSnapshot empty() {
+        int types = MediaType.values().length;
+        IntPostingList[] partitions = new IntPostingList[types];
+        IntPostingList[] deletedPartitions = new IntPostingList[types];
+        for (MediaType mediaType : MediaType.values()) {
+            if (mediaType != MediaType.ALL) {
+                partitions[mediaType.ordinal()] = new IntPostingList();
+            }
+            deletedPartitions[mediaType.ordinal()] = new IntPostingList();
+        }
+        return new MediaSnapshot(0, 0, partitions, new int[types], deletedPartitions, new int[types],
+                new int[types], new int[types], new long[types]);
+    }
+
+    /**
+     * Copy of this snapshot at a new version with new counts, sharing the partitions.
+     * The partition version of every {@link MediaType} whose live count changed is raised to the new version.
+     *
+     * @param version        repository version of the new snapshot.
+     * @param size           number of slots.
+     * @param partitionSizes number of entries of each live partition.
+     * @param deletedSizes   number of entries of each deleted partition.
+     * @param liveCounts     number of stored {@link Media} of each {@link MediaType}.
+     * @param deletedCounts  number of retained deleted {@link Media} of each {@link MediaType}.
+     * @return {@link MediaSnapshot}.
+     */
+    MediaSnapshot next(long version, int size, int[] partitionSizes, int[] deletedSizes,
+                       int[] liveCounts, int[] deletedCounts) {
+        long[] nextVersions = partitionVersions.clone();
+        for (int type = 0; type < nextVersions.length; type++) {
+            if (liveCounts[type] != this.liveCounts[type] || partitionSizes[type] != this.partitionSizes[type]) {
+                nextVersions[type] = version;
+            }
+        }
+        return new MediaSnapshot(version, size, partitions, partitionSizes, deletedPartitions, deletedSizes,
+                liveCounts, deletedCounts, nextVersions);
+    }
+
+}
@@ -0,0 +1,300 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+import static org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE;
+
+/**
+ * Streaming counterpart of the listings of {@link MediaController}, chosen by requesting
+ * application/x-ndjson or text/event-stream on the same paths.
+ * <p>
+ * Every listing is a {@link Flux} over the lazy view of one {@link MediaSnapshot}: more is only
+ * read once the client has taken what was sent, so a slow client neither holds a request thread
+ * while it waits nor a copy of the listing. Server-Sent Events carry one {@link Media} each, NDJSON
+ * is sent in chunks of lines written by {@link MediaJsonWriter#writeLines(Iterable)}. Streams are
+ * not paged and carry no ETag.
+ * <p>
+ * Every path has one handler per format, so Spring MVC picks the format by the quality and
+ * specificity of the Accept header, like any other content negotiation.
+ */
+@RestController
+public class MediaStreamController {
+
+    /**
+     * {@link MediaRepository}.
+     */
+    private final MediaRepository mediaRepository;
+
+    /**
+     * {@link MediaJsonWriter}.
+     */
+    private final MediaJsonWriter mediaJsonWriter;
+
+    /**
+     * Initialises the {@link MediaRepository}.
+     *
+     * @param mediaRepository repository used to {@link Media}.
+     * @param mediaJsonWriter writer of NDJSON chunks.
+     */
+    MediaStreamController(MediaRepository mediaRepository, MediaJsonWriter mediaJsonWriter) {
+        this.mediaRepository = mediaRepository;
+        this.mediaJsonWriter = mediaJsonWriter;
+    }
+
+    /**
+     * Stream all {@link Media}, or those whose title contains the given characters, as NDJSON.
+     *
+     * @param title      Optional variable to stream matched characters in title.
+     * @param ignoreCase Optional variable to match the title characters regardless of case.
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> allLines(@RequestParam(required = false, value = "title") String title,
+                          @RequestParam(defaultValue = "false", value = "ignoreCase") boolean ignoreCase) {
+        return lines(all(title, ignoreCase));
+    }
+
+    /**
+     * Stream all {@link Media}, or those whose title contains the given characters, as Server-Sent Events.
+     *
+     * @param title      Optional variable to stream matched characters in title.
+     * @param ignoreCase Optional variable to match the title characters regardless of case.
+     * @return {@link Flux} of {@link Media}.
+     */
+    @GetMapping(value = "/media", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> allEvents(@RequestParam(required = false, value = "title") String title,
+                          @RequestParam(defaultValue = "false", value = "ignoreCase") boolean ignoreCase) {
+        return events(all(title, ignoreCase));
+    }
+
+    /**
+     * Stream all {@link Movie}, or those released in a range of years ordered by year, as NDJSON.
+     *
+     * @param yearFrom Optional first release year.
+     * @param yearTo   Optional last release year.
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/movies", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> moviesLines(@RequestParam(required = false, value = "yearFrom") Integer yearFrom,
+                             @RequestParam(required = false, value = "yearTo") Integer yearTo) {
+        return lines(movies(yearFrom, yearTo));
+    }
+
+    /**
+     * Stream all {@link Movie}, or those released in a range of years ordered by year, as Server-Sent Events.
+     *
+     * @param yearFrom Optional first release year.
+     * @param yearTo   Optional last release year.
+     * @return {@link Flux} of {@link Movie}.
+     */
+    @GetMapping(value = "/media/movies", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> moviesEvents(@RequestParam(required = false, value = "yearFrom") Integer yearFrom,
+                             @RequestParam(required = false, value = "yearTo") Integer yearTo) {
+        return events(movies(yearFrom, yearTo));
+    }
+
+    /**
+     * Stream all {@link Series}, or those with a range of episodes ordered by number of episodes, as NDJSON.
+     *
+     * @param minEpisodes Optional fewest episodes.
+     * @param maxEpisodes Optional most episodes.
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/series", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> seriesLines(@RequestParam(required = false, value = "minEpisodes") Integer minEpisodes,
+                             @RequestParam(required = false, value = "maxEpisodes") Integer maxEpisodes) {
+        return lines(series(minEpisodes, maxEpisodes));
+    }
+
+    /**
+     * Stream all {@link Series}, or those with a range of episodes ordered by number of episodes,
+     * as Server-Sent Events.
+     *
+     * @param minEpisodes Optional fewest episodes.
+     * @param maxEpisodes Optional most episodes.
+     * @return {@link Flux} of {@link Series}.
+     */
+    @GetMapping(value = "/media/series", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> seriesEvents(@RequestParam(required = false, value = "minEpisodes") Integer minEpisodes,
+                             @RequestParam(required = false, value = "maxEpisodes") Integer maxEpisodes) {
+        return events(series(minEpisodes, maxEpisodes));
+    }
+
+    /**
+     * Stream deleted {@link Media} as NDJSON.
+     *
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/deleted", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> deletedAllLines() {
+        return lines(mediaRepository.findDeleted(MediaType.ALL));
+    }
+
+    /**
+     * Stream deleted {@link Media} as Server-Sent Events.
+     *
+     * @return {@link Flux} of deleted {@link Media}.
+     */
+    @GetMapping(value = "/media/deleted", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> deletedAllEvents() {
+        return events(mediaRepository.findDeleted(MediaType.ALL));
+    }
+
+    /**
+     * Stream deleted {@link Movie} as NDJSON.
+     *
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/movie/deleted", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> deletedMoviesLines() {
+        return lines(mediaRepository.findDeleted(MediaType.MOVIE));
+    }
+
+    /**
+     * Stream deleted {@link Movie} as Server-Sent Events.
+     *
+     * @return {@link Flux} of deleted {@link Movie}.
+     */
+    @GetMapping(value = "/media/movie/deleted", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> deletedMoviesEvents() {
+        return events(mediaRepository.findDeleted(MediaType.MOVIE));
+    }
+
+    /**
+     * Stream deleted {@link Series} as NDJSON.
+     *
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/series/deleted", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> deletedSeriesLines() {
+        return lines(mediaRepository.findDeleted(MediaType.SERIES));
+    }
+
+    /**
+     * Stream deleted {@link Series} as Server-Sent Events.
+     *
+     * @return {@link Flux} of deleted {@link Series}.
+     */
+    @GetMapping(value = "/media/series/deleted", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> deletedSeriesEvents() {
+        return events(mediaRepository.findDeleted(MediaType.SERIES));
+    }
+
+    /**
+     * Stream {@link Media} based on related labels as NDJSON.
+     *
+     * @param id          {@link java.util.UUID}.
+     * @param limit       Optional maximum number of {@link Media} streamed.
+     * @param approximate Optional variable to rank by the estimated Jaccard index of the labels.
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    @GetMapping(value = "/media/related/{id}", produces = APPLICATION_NDJSON_VALUE)
+    Flux<byte[]> relatedLines(@PathVariable String id,
+                              @RequestParam(required = false, value = "limit") Integer limit,
+                              @RequestParam(defaultValue = "false", value = "approximate") boolean approximate) {
+        return lines(related(id, limit, approximate));
+    }
+
+    /**
+     * Stream {@link Media} based on related labels as Server-Sent Events.
+     *
+     * @param id          {@link java.util.UUID}.
+     * @param limit       Optional maximum number of {@link Media} streamed.
+     * @param approximate Optional variable to rank by the estimated Jaccard index of the labels.
+     * @return {@link Flux} of related {@link Media}.
+     */
+    @GetMapping(value = "/media/related/{id}", produces = TEXT_EVENT_STREAM_VALUE)
+    Flux<Media> relatedEvents(@PathVariable String id,
+                              @RequestParam(required = false, value = "limit") Integer limit,
+                              @RequestParam(defaultValue = "false", value = "approximate") boolean approximate) {
+        return events(related(id, limit, approximate));
+    }
+
+    /**
+     * All {@link Media}, or those whose title contains the given characters.
+     *
+     * @param title      characters in the title, null for all {@link Media}.
+     * @param ignoreCase true to match the title characters regardless of case.
+     * @return {@link Collection} of {@link Media}.
+     */
+    private Collection<Media> all(String title, boolean ignoreCase) {
+        if (title == null) {
+            return mediaRepository.findAll(MediaType.ALL);
+        }
+        return mediaRepository.findByCharacters(title, ignoreCase);
+    }
+
+    /**
+     * All {@link Movie}, or those released in a range of years ordered by year.
+     *
+     * @param yearFrom first release year, unbounded if null.
+     * @param yearTo   last release year, unbounded if null.
+     * @return {@link Collection} of {@link Movie}.
+     */
+    private Collection<Media> movies(Integer yearFrom, Integer yearTo) {
+        if (yearFrom == null && yearTo == null) {
+            return mediaRepository.findAll(MediaType.MOVIE);
+        }
+        return mediaRepository.findMoviesByYear(yearFrom, yearTo);
+    }
+
+    /**
+     * All {@link Series}, or those with a range of episodes ordered by number of episodes.
+     *
+     * @param minEpisodes fewest episodes, unbounded if null.
+     * @param maxEpisodes most episodes, unbounded if null.
+     * @return {@link Collection} of {@link Series}.
+     */
+    private Collection<Media> series(Integer minEpisodes, Integer maxEpisodes) {
+        if (minEpisodes == null && maxEpisodes == null) {
+            return mediaRepository.findAll(MediaType.SERIES);
+        }
+        return mediaRepository.findSeriesByEpisodes(minEpisodes, maxEpisodes);
+    }
+
+    /**
+     * {@link Media} related by labels, most shared labels or most similar label sets first.
+     *
+     * @param id          {@link java.util.UUID}.
+     * @param limit       maximum number of {@link Media}, null for the default.
+     * @param approximate true to rank by the estimated Jaccard index of the labels.
+     * @return {@link Collection} of related {@link Media}.
+     */
+    private Collection<Media> related(String id, Integer limit, boolean approximate) {
+        return approximate ?
+                mediaRepository.similarView(id, limit != null ? limit : MediaController.DEFAULT_SIMILAR_LIMIT) :
+                mediaRepository.relatedView(id, limit != null ? limit : Integer.MAX_VALUE);
+    }
+
+    /**
+     * Stream a collection as NDJSON chunks as they are requested.
+     *
+     * @param media {@link Collection} of {@link Media}, iterated lazily and closed once the stream ends.
+     * @return {@link Flux} of NDJSON chunks.
+     */
+    private Flux<byte[]> lines(Collection<Media> media) {
+        return mediaJsonWriter.writeLines(media);
+    }
+
+    /**
+     * Stream a collection as it is requested, one {@link Media} per event.
+     *
+     * @param media {@link Collection} of {@link Media}, iterated lazily and closed once the stream ends.
+     * @return {@link Flux} of {@link Media}.
+     */
+    private static Flux<Media> events(Collection<Media> media) {
+        return Flux.fromIterable(media).doFinally(signal -> MediaView.close(media));
+    }
+
+}
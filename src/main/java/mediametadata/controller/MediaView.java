@@ -0,0 +1,221 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+
+import java.lang.ref.Cleaner;
+import java.lang.ref.Reference;
+import java.util.AbstractCollection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Read-only {@link java.util.Collection} of {@link Media} read lazily from a partition of a
+ * {@link MediaSnapshot}, nothing is copied when it is created or iterated.
+ * <p>
+ * Every entry has a key that rises along the partition, so a position can be found again by key
+ * after compaction dropped entries before it. Views of stored {@link Media} also give the JSON
+ * fragment of an entry from the {@link FragmentCache}.
+ * <p>
+ * A view holds a {@link SnapshotReaders.Lease} on its snapshot, so compaction does not purge the
+ * records it reads. Callers must {@link #close()} a view once they have read it, for example in a
+ * try-with-resources statement; a view that is dropped unclosed only releases its lease once the
+ * garbage collector finds it unreachable, holding back compaction until then.
+ */
+public final class MediaView extends AbstractCollection<Media> implements AutoCloseable {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final IntUnaryOperator slotAt;
+
+    private final int entries;
+
+    private final int size;
+
+    private final IntPredicate visible;
+
+    private final IntFunction<Media> media;
+
+    private final IntToLongFunction key;
+
+    private final IntFunction<byte[]> fragment;
+
+    private final long version;
+
+    private final Cleaner.Cleanable lease;
+
+    /**
+     * Create view.
+     *
+     * @param slotAt   slot of each entry of the partition.
+     * @param entries  number of entries of the partition in the snapshot.
+     * @param size     number of visible entries.
+     * @param visible  check if a slot is visible in the snapshot.
+     * @param media    {@link Media} stored at a slot.
+     * @param key      key of a slot, rising along the partition.
+     * @param fragment JSON fragment of the {@link Media} at a slot, null if fragments are not cached.
+     * @param version  version of what the view shows, read from the same snapshot.
+     * @param lease    {@link SnapshotReaders.Lease} on the snapshot, released with the view.
+     */
+    MediaView(IntUnaryOperator slotAt, int entries, int size, IntPredicate visible, IntFunction<Media> media,
+              IntToLongFunction key, IntFunction<byte[]> fragment, long version, SnapshotReaders.Lease lease) {
+        this.slotAt = slotAt;
+        this.entries = entries;
+        this.size = size;
+        this.visible = visible;
+        this.media = media;
+        this.key = key;
+        this.fragment = fragment;
+        this.version = version;
+        this.lease = CLEANER.register(this, lease::close);
+    }
+
+    @Override
+    public Iterator<Media> iterator() {
+        return new Iterator<>() {
+
+            private int entry = advance(0);
+
+            @Override
+            public boolean hasNext() {
+                return entry < entries;
+            }
+
+            @Override
+            public Media next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Media next = get(entry);
+                entry = advance(entry + 1);
+                return next;
+            }
+        };
+    }
+
+    /**
+     * Find first visible entry.
+     *
+     * @param from entry to start at.
+     * @return first visible entry at or after from, or the number of entries if there is none.
+     */
+    int advance(int from) {
+        while (from < entries && !visible.test(slotAt.applyAsInt(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Find first entry with a key at or above a key using binary search.
+     *
+     * @param from key to start at.
+     * @return entry, or the number of entries if every key is below.
+     */
+    int seek(long from) {
+        int low = 0;
+        int high = entries;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(middle) < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Key of an entry.
+     *
+     * @param entry entry of the partition.
+     * @return key.
+     */
+    long key(int entry) {
+        return key.applyAsLong(slotAt.applyAsInt(entry));
+    }
+
+    /**
+     * {@link Media} of an entry.
+     *
+     * @param entry entry of the partition.
+     * @return {@link Media}.
+     */
+    Media get(int entry) {
+        try {
+            return media.apply(slotAt.applyAsInt(entry));
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Check if {@link #fragment(int)} can be used.
+     *
+     * @return true if the view gives JSON fragments.
+     */
+    boolean hasFragments() {
+        return fragment != null;
+    }
+
+    /**
+     * JSON fragment of the {@link Media} of an entry.
+     *
+     * @param entry entry of the partition.
+     * @return UTF-8 JSON, not to be modified.
+     */
+    byte[] fragment(int entry) {
+        try {
+            return fragment.apply(slotAt.applyAsInt(entry));
+        } finally {
+            Reference.reachabilityFence(this);
+        }
+    }
+
+    /**
+     * Number of entries of the partition in the snapshot, visible or not.
+     *
+     * @return number of entries.
+     */
+    int entries() {
+        return entries;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Version of what the view shows in its snapshot, such as the partition version of a listing.
+     *
+     * @return version.
+     */
+    long version() {
+        return version;
+    }
+
+    /**
+     * Release the lease on the snapshot, the view must not be read afterwards.
+     */
+    @Override
+    public void close() {
+        lease.clean();
+    }
+
+    /**
+     * Close {@link Media} if they are a {@link MediaView}.
+     *
+     * @param media {@link Media} that were read.
+     */
+    static void close(Iterable<Media> media) {
+        if (media instanceof MediaView view) {
+            view.close();
+        }
+    }
+
+}
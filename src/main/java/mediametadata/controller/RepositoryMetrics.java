@@ -0,0 +1,138 @@
+package mediametadata.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and counters of {@link MediaRepository}.
+ * <p>
+ * Every operation is timed by the media.repository.operations timer tagged with the operation,
+ * publishing a percentile histogram. Only one in {@link MediaRepositoryProperties#getMetricsSampleInterval()}
+ * calls is timed, picked at random, so busy repositories can skip most clock reads and histogram
+ * updates; counters count every call.
+ */
+final class RepositoryMetrics {
+
+    /**
+     * Start time of a call that is not timed.
+     */
+    static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /**
+     * Timed operations, tagged by name.
+     */
+    enum Operation {
+
+        FIND_ALL("findAll"),
+        FIND_DELETED("findDeleted"),
+        FIND_BY_ID("findById"),
+        FIND_BY_IDS("findByIds"),
+        FIND_BY_CHARACTERS("findByCharacters"),
+        FIND_BY_LABEL("findByLabel"),
+        FIND_SIMILAR("findSimilar"),
+        FIND_BY_RANGE("findByRange"),
+        SEARCH("search"),
+        FACETS("facets"),
+        PARSE("parse"),
+        ADD("add"),
+        ADD_BULK("addBulk"),
+        DELETE("delete"),
+        RESTORE("restore"),
+        COMPACT("compact"),
+        SNAPSHOT("snapshot");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+
+    }
+
+    private final Timer[] timers = new Timer[Operation.values().length];
+
+    private final int sampleInterval;
+
+    /**
+     * {@link mediametadata.model.Media} stored by an add.
+     */
+    final Counter inserts;
+
+    /**
+     * {@link mediametadata.model.Media} not stored because its id was already stored.
+     */
+    final Counter duplicateIds;
+
+    /**
+     * {@link mediametadata.model.Media} not stored because its title was already stored.
+     */
+    final Counter duplicateTitles;
+
+    /**
+     * {@link mediametadata.model.Media} deleted.
+     */
+    final Counter deletes;
+
+    /**
+     * Posted JSON that could not be parsed into {@link mediametadata.model.Media}.
+     */
+    final Counter parseFailures;
+
+    /**
+     * Register the meters.
+     *
+     * @param registry       {@link MeterRegistry} to register with.
+     * @param sampleInterval time one in this many calls, 1 to time every call.
+     */
+    RepositoryMetrics(MeterRegistry registry, int sampleInterval) {
+        this.sampleInterval = Math.max(1, sampleInterval);
+        for (Operation operation : Operation.values()) {
+            timers[operation.ordinal()] = Timer.builder("media.repository.operations")
+                    .description("Time of repository operations")
+                    .tag("operation", operation.tag)
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        inserts = Counter.builder("media.repository.inserts")
+                .description("Media stored by adds").register(registry);
+        duplicateIds = Counter.builder("media.repository.duplicates")
+                .description("Media rejected because their id or title was already stored")
+                .tag("field", "id").register(registry);
+        duplicateTitles = Counter.builder("media.repository.duplicates")
+                .description("Media rejected because their id or title was already stored")
+                .tag("field", "title").register(registry);
+        deletes = Counter.builder("media.repository.deletes")
+                .description("Media deleted").register(registry);
+        parseFailures = Counter.builder("media.repository.parse.failures")
+                .description("Posted JSON that could not be parsed into media").register(registry);
+    }
+
+    /**
+     * Start timing a call if it is sampled.
+     *
+     * @return start time to pass to {@link #stop(Operation, long)}, {@link #NOT_SAMPLED} if the call is not timed.
+     */
+    long start() {
+        if (sampleInterval > 1 && ThreadLocalRandom.current().nextInt(sampleInterval) != 0) {
+            return NOT_SAMPLED;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time of a sampled call.
+     *
+     * @param operation operation that was called.
+     * @param start     start time returned by {@link #start()}.
+     */
+    void stop(Operation operation, long start) {
+        if (start != NOT_SAMPLED) {
+            timers[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+}
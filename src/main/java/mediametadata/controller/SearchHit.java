@@ -0,0 +1,12 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+
+/**
+ * {@link Media} found by a fuzzy title search.
+ *
+ * @param score trigram similarity of the title to the query, between 0 and 1.
+ * @param media {@link Media} found.
+ */
+public record SearchHit(double score, Media media) {
+}
@@ -0,0 +1,81 @@
+package mediametadata.controller;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the {@link MediaSnapshot} readers of {@link MediaRepository} are reading, so compaction
+ * only purges slots that no registered reader can still see.
+ * <p>
+ * A reader registers a {@link Lease} on the current snapshot and checks the snapshot is still current
+ * afterwards, retrying otherwise. A compaction that found no lease on an older snapshot therefore
+ * cannot race with a reader that is about to take one: that reader sees the newer snapshot and retries.
+ */
+final class SnapshotReaders {
+
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Take a lease on the current snapshot.
+     *
+     * @param current supplier of the current {@link MediaSnapshot}.
+     * @return {@link Lease}, to be closed once the reader no longer reads records.
+     */
+    Lease acquire(Supplier<MediaSnapshot> current) {
+        while (true) {
+            MediaSnapshot snapshot = current.get();
+            Lease lease = new Lease(snapshot);
+            leases.add(lease);
+            if (current.get() == snapshot) {
+                return lease;
+            }
+            leases.remove(lease);
+        }
+    }
+
+    /**
+     * Oldest version a reader may still read, holding the write lock.
+     *
+     * @param current version of the current snapshot.
+     * @return lowest version of the leased snapshots, or the current version if there is none older.
+     */
+    long oldestVersion(long current) {
+        long oldest = current;
+        for (Lease lease : leases) {
+            oldest = Math.min(oldest, lease.snapshot.version());
+        }
+        return oldest;
+    }
+
+    /**
+     * Registration of one reader of a {@link MediaSnapshot}.
+     */
+    final class Lease implements AutoCloseable {
+
+        private final MediaSnapshot snapshot;
+
+        private Lease(MediaSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Snapshot the lease was taken on.
+         *
+         * @return {@link MediaSnapshot}.
+         */
+        MediaSnapshot snapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Release the lease, closing it again has no effect.
+         */
+        @Override
+        public void close() {
+            leases.remove(this);
+        }
+
+    }
+
+}
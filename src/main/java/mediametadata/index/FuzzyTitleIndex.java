@@ -0,0 +1,367 @@
+package mediametadata.index;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Index of the word trigrams of every title, ranking titles by trigram similarity to a query
+ * with typos.
+ * <p>
+ * Titles are folded to lower case without accents and split into words of letters and digits;
+ * every word is padded with two spaces in front and one behind, so its start weighs more and
+ * single letters have a trigram. The similarity of a title is the Jaccard index of its distinct
+ * trigrams and those of the query.
+ * <p>
+ * Work per query is bounded: the slots of the rarest posting lists are counted, up to a scan budget
+ * of slots read, giving the candidates. A list longer than the whole budget is sampled at even
+ * steps, so old and new titles are as likely to become candidates. The candidates are checked against the remaining, more common lists by binary
+ * search in the order of the highest similarity they can still reach, at most {@link #VERIFY_LIMIT}
+ * of them and only until none can beat the matches found. A title that only shares common trigrams
+ * with the query can therefore be missed, which makes it a poor match anyway.
+ * <p>
+ * Slots are only removed by {@link #compact(IntPredicate)}, candidates include deleted media which
+ * readers skip. One thread at a time may add or compact while any number of threads search.
+ */
+public class FuzzyTitleIndex {
+
+    /**
+     * Default maximum number of slots read from posting lists by one search.
+     */
+    public static final int DEFAULT_SCAN_BUDGET = 1 << 18;
+
+    /**
+     * Maximum number of candidates of one search checked against the lists that were not scanned.
+     */
+    public static final int VERIFY_LIMIT = 1 << 10;
+
+    /**
+     * Number of buckets candidates are ordered into by the highest similarity they can reach.
+     */
+    private static final int BOUND_BUCKETS = 1024;
+
+    /**
+     * Best score first, then lowest slot.
+     */
+    private static final Comparator<Match> RANKING =
+            Comparator.comparingDouble(Match::score).reversed().thenComparingInt(Match::slot);
+
+    private final Map<Long, IntPostingList> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Maximum number of slots read from posting lists by one search.
+     */
+    private final int scanBudget;
+
+    /**
+     * Number of distinct trigrams of the title at every slot, published before the slot is added to postings.
+     */
+    private volatile int[] gramCounts = new int[1024];
+
+    /**
+     * Slot of a title and its similarity to the query.
+     *
+     * @param slot  slot of the media.
+     * @param score Jaccard index of the trigrams of title and query, between 0 and 1.
+     */
+    public record Match(int slot, double score) {
+    }
+
+    /**
+     * Create index with the {@link #DEFAULT_SCAN_BUDGET}.
+     */
+    public FuzzyTitleIndex() {
+        this(DEFAULT_SCAN_BUDGET);
+    }
+
+    /**
+     * Create index.
+     *
+     * @param scanBudget maximum number of slots read from posting lists by one search, trading
+     *                   work per search for finding the best matches among common trigrams.
+     */
+    public FuzzyTitleIndex(int scanBudget) {
+        this.scanBudget = Math.max(1, scanBudget);
+    }
+
+    /**
+     * Index title of the media at slot.
+     *
+     * @param slot  slot of media, larger than every slot already indexed.
+     * @param title title of media, nothing is indexed if null.
+     */
+    public void add(int slot, String title) {
+        if (title == null) {
+            return;
+        }
+        long[] grams = grams(title);
+        if (grams.length == 0) {
+            return;
+        }
+        int[] counts = gramCounts;
+        if (slot >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(slot + 1, counts.length * 2));
+        }
+        counts[slot] = grams.length;
+        gramCounts = counts;
+        for (long gram : grams) {
+            postings.computeIfAbsent(gram, g -> new IntPostingList()).add(slot);
+        }
+    }
+
+    /**
+     * Replace every posting list by a copy without the slots that fail a check, dropping empty lists.
+     * Searches that already hold a list keep reading it.
+     *
+     * @param keep check if a slot stays indexed.
+     */
+    public void compact(IntPredicate keep) {
+        postings.replaceAll((gram, list) -> list.filter(list.size(), keep));
+        postings.values().removeIf(IntPostingList::isEmpty);
+    }
+
+    /**
+     * Find the titles most similar to the query.
+     *
+     * @param query   characters to search for, typos allowed.
+     * @param limit   maximum number of matches.
+     * @param visible check if a slot may be returned.
+     * @return {@link Match} of the most similar titles, best first and by slot among equal scores.
+     */
+    public Match[] search(String query, int limit, IntPredicate visible) {
+        long[] grams = grams(query);
+        IntPostingList[] lists = new IntPostingList[grams.length];
+        int count = 0;
+        for (long gram : grams) {
+            IntPostingList list = postings.get(gram);
+            if (list != null) {
+                lists[count++] = list;
+            }
+        }
+        if (count == 0 || limit < 1) {
+            return new Match[0];
+        }
+        lists = Arrays.copyOf(lists, count);
+        Arrays.sort(lists, Comparator.comparingInt(IntPostingList::size));
+        int[] sizes = new int[lists.length];
+        for (int i = 0; i < lists.length; i++) {
+            sizes[i] = lists[i].size();
+        }
+
+        int total = 0;
+        int scanned = 0;
+        // a slot is counted once per scanned list, so at most Byte.MAX_VALUE lists fit its tally
+        while (scanned < lists.length && scanned < Byte.MAX_VALUE
+                && (scanned == 0 || total + sizes[scanned] <= scanBudget)) {
+            total += Math.min(sizes[scanned], scanBudget);
+            scanned++;
+        }
+        int[] counts = gramCounts;
+        Tally tally = new Tally(total);
+        int[] slots = new int[total];
+        int length = 0;
+        for (int i = 0; i < scanned; i++) {
+            int[] entries = lists[i].entries();
+            int take = Math.min(sizes[i], scanBudget);
+            for (int j = 0; j < take; j++) {
+                int slot = entries[take == sizes[i] ? j : (int) ((long) j * sizes[i] / take)];
+                slots[length] = slot;
+                length += tally.increment(slot) == 0 ? 1 : 0;
+            }
+        }
+
+        int unscanned = lists.length - scanned;
+        byte[] shared = new byte[length];
+        int[] bounds = new int[length];
+        for (int i = 0; i < length; i++) {
+            shared[i] = tally.get(slots[i]);
+            bounds[i] = bound(grams.length, lists.length, counts[slots[i]], shared[i], unscanned);
+        }
+        int[] order = byBound(bounds, length);
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        for (int i = 0; i < order.length && i < VERIFY_LIMIT; i++) {
+            int position = order[i];
+            if (best.size() == limit && (bounds[position] + 1.0) / (BOUND_BUCKETS - 1) < best.peek().score()) {
+                break;
+            }
+            int slot = slots[position];
+            if (!visible.test(slot)) {
+                continue;
+            }
+            int overlap = shared[position];
+            for (int j = scanned; j < lists.length; j++) {
+                if (lists[j].contains(slot, sizes[j])) {
+                    overlap++;
+                }
+            }
+            best.add(new Match(slot, (double) overlap / (grams.length + counts[slot] - overlap)));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        Match[] matches = best.toArray(new Match[0]);
+        Arrays.sort(matches, RANKING);
+        return matches;
+    }
+
+    /**
+     * Highest similarity a candidate can reach once the lists that were not scanned are checked,
+     * as a bucket of {@link #BOUND_BUCKETS}.
+     *
+     * @param queryGrams   number of distinct trigrams of the query.
+     * @param indexedGrams number of them that have a posting list.
+     * @param titleGrams   number of distinct trigrams of the title.
+     * @param shared       number of scanned lists holding the title.
+     * @param unscanned    number of lists not scanned.
+     * @return bucket of the upper bound of the Jaccard index.
+     */
+    private static int bound(int queryGrams, int indexedGrams, int titleGrams, int shared, int unscanned) {
+        int overlap = Math.min(Math.min(titleGrams, indexedGrams), shared + unscanned);
+        return (int) ((float) overlap / (queryGrams + titleGrams - overlap) * (BOUND_BUCKETS - 1));
+    }
+
+    /**
+     * Number of scanned lists holding each slot read by one search, in an open addressing table
+     * sized to the slots read rather than to every slot of the index.
+     */
+    private static final class Tally {
+
+        /**
+         * Slot plus one at every position, 0 if the position is free.
+         */
+        private final int[] keys;
+
+        private final byte[] counts;
+
+        private final int mask;
+
+        /**
+         * Create tally.
+         *
+         * @param capacity maximum number of slots counted.
+         */
+        Tally(int capacity) {
+            int positions = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+            keys = new int[positions];
+            counts = new byte[positions];
+            mask = positions - 1;
+        }
+
+        /**
+         * Count slot once more.
+         *
+         * @param slot slot read from a list.
+         * @return count before.
+         */
+        byte increment(int slot) {
+            int position = position(slot);
+            keys[position] = slot + 1;
+            return counts[position]++;
+        }
+
+        /**
+         * Count of slot.
+         *
+         * @param slot slot read from a list.
+         * @return count, 0 if it was not read.
+         */
+        byte get(int slot) {
+            return counts[position(slot)];
+        }
+
+        private int position(int slot) {
+            int hash = slot * 0x9E3779B9;
+            int position = (hash ^ hash >>> 16) & mask;
+            while (keys[position] != 0 && keys[position] != slot + 1) {
+                position = (position + 1) & mask;
+            }
+            return position;
+        }
+
+    }
+
+    /**
+     * Order candidates by descending bucket, counting them into buckets instead of sorting.
+     *
+     * @param bounds bucket of every candidate.
+     * @param length number of candidates.
+     * @return positions of the candidates, highest bucket first and by position within a bucket.
+     */
+    private static int[] byBound(int[] bounds, int length) {
+        int[] starts = new int[BOUND_BUCKETS + 1];
+        for (int i = 0; i < length; i++) {
+            starts[BOUND_BUCKETS - bounds[i]]++;
+        }
+        for (int bucket = 1; bucket <= BOUND_BUCKETS; bucket++) {
+            starts[bucket] += starts[bucket - 1];
+        }
+        int[] order = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[starts[BOUND_BUCKETS - 1 - bounds[i]]++] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Fold a title to lower case letters and digits without accents, every other character
+     * separating words.
+     *
+     * @param value title or query.
+     * @return words separated by single spaces.
+     */
+    static String normalise(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFKD);
+        StringBuilder normalised = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                normalised.append(Character.toLowerCase(c));
+            } else if (normalised.length() > 0 && normalised.charAt(normalised.length() - 1) != ' ') {
+                normalised.append(' ');
+            }
+        }
+        return normalised.toString();
+    }
+
+    /**
+     * Distinct trigrams of the padded words of the normalised value, packed like those of
+     * {@link TrigramIndex}.
+     *
+     * @param value title or query.
+     * @return distinct trigrams in ascending order.
+     */
+    private static long[] grams(String value) {
+        String normalised = normalise(value);
+        long[] grams = new long[normalised.length() * 3 + 3];
+        int length = 0;
+        int start = 0;
+        while (start < normalised.length()) {
+            int end = normalised.indexOf(' ', start);
+            if (end < 0) {
+                end = normalised.length();
+            }
+            String padded = "  " + normalised.substring(start, end) + " ";
+            for (int i = 0; i + 2 < padded.length(); i++) {
+                grams[length++] = ((long) padded.charAt(i) << 42) | ((long) padded.charAt(i + 1) << 21)
+                        | padded.charAt(i + 2);
+            }
+            start = end + 1;
+        }
+        Arrays.sort(grams, 0, length);
+        int distinct = 0;
+        for (int i = 0; i < length; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+}
@@ -0,0 +1,90 @@
+package mediametadata.index;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Append-only list of slots, stored as a growable int array.
+ * <p>
+ * One writer at a time may append while any number of readers read. A reader that has seen
+ * {@link #size()} return n can read the first n slots: the array holding them is published
+ * before the size is raised past the capacity of the previous one.
+ */
+public class IntPostingList {
+
+    private volatile int[] slots = new int[4];
+
+    private volatile int size;
+
+    /**
+     * Append slot. Only one thread may append at a time.
+     *
+     * @param slot slot to append, larger than every slot in the list if it is searched.
+     */
+    public void add(int slot) {
+        int[] current = slots;
+        int length = size;
+        if (length == current.length) {
+            current = Arrays.copyOf(current, length + (length >> 1));
+            slots = current;
+        }
+        current[length] = slot;
+        size = length + 1;
+    }
+
+    /**
+     * Check if slot is among the first entries using binary search,
+     * only valid if slots were appended in ascending order.
+     *
+     * @param slot  slot to look for.
+     * @param count number of entries to search, at most {@link #size()}.
+     * @return true if the slot is in the list.
+     */
+    public boolean contains(int slot, int count) {
+        return Arrays.binarySearch(slots, 0, count, slot) >= 0;
+    }
+
+    /**
+     * Copy the entries that pass a check into a new list, keeping their order.
+     *
+     * @param count number of entries to copy from, at most {@link #size()}.
+     * @param keep  check if a slot is copied.
+     * @return new list.
+     */
+    public IntPostingList filter(int count, IntPredicate keep) {
+        int[] current = slots;
+        IntPostingList filtered = new IntPostingList();
+        int[] kept = new int[Math.max(4, count)];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep.test(current[i])) {
+                kept[length++] = current[i];
+            }
+        }
+        filtered.slots = length < kept.length / 2 ? Arrays.copyOf(kept, Math.max(4, length)) : kept;
+        filtered.size = length;
+        return filtered;
+    }
+
+    /**
+     * Array holding the slots, valid for the first {@link #size()} read before it.
+     *
+     * @return array of slots, not to be modified.
+     */
+    int[] entries() {
+        return slots;
+    }
+
+    public int get(int index) {
+        return slots[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+}
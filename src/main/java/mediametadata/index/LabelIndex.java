@@ -0,0 +1,162 @@
+package mediametadata.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index of genre labels to the ascending slots of the media carrying them.
+ * Labels are given as bitsets of their ids in {@link mediametadata.model.LabelDictionary},
+ * and postings are looked up by id in an array.
+ * <p>
+ * Slots are only removed by {@link #compact(IntPredicate)}, deleted media are skipped through the
+ * visibility check of the reader. One thread at a time may add or compact while any number of threads search.
+ */
+public class LabelIndex {
+
+    /**
+     * Postings by label id, null for labels without media.
+     */
+    private volatile IntPostingList[] postings = new IntPostingList[0];
+
+    /**
+     * Index labels of the media at slot.
+     *
+     * @param slot     slot of media, larger than every slot already indexed.
+     * @param labelSet bitset of the label ids of media.
+     */
+    public void add(int slot, long[] labelSet) {
+        for (int id = nextLabel(labelSet, 0); id >= 0; id = nextLabel(labelSet, id + 1)) {
+            IntPostingList[] current = postings;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+                postings = current;
+            }
+            if (current[id] == null) {
+                current[id] = new IntPostingList();
+            }
+            current[id].add(slot);
+        }
+    }
+
+    /**
+     * Replace every posting list by a copy without the slots that fail a check.
+     * Searches that already hold the postings keep reading them.
+     *
+     * @param keep check if a slot stays indexed.
+     */
+    public void compact(IntPredicate keep) {
+        IntPostingList[] compacted = postings.clone();
+        for (int id = 0; id < compacted.length; id++) {
+            if (compacted[id] != null) {
+                IntPostingList list = compacted[id].filter(compacted[id].size(), keep);
+                compacted[id] = list.isEmpty() ? null : list;
+            }
+        }
+        postings = compacted;
+    }
+
+    /**
+     * Find slots sharing at least one label, ranked by the number of shared labels and then by slot.
+     * <p>
+     * The postings of the labels are merged in ascending slot order while keeping the best
+     * results. Once the worst kept result shares at least as many labels as there are postings
+     * left to merge, no later slot can rank above it and merging stops, so a label carried by
+     * most of the catalogue costs little when a limit is given.
+     *
+     * @param labelSet bitset of the label ids to relate to.
+     * @param limit    maximum number of slots returned.
+     * @param visible  check if a slot is visible to the reader.
+     * @return ranked slots.
+     */
+    public int[] related(long[] labelSet, int limit, IntPredicate visible) {
+        IntPostingList[] current = postings;
+        List<IntPostingList> lists = new ArrayList<>();
+        for (int id = nextLabel(labelSet, 0); id >= 0 && id < current.length; id = nextLabel(labelSet, id + 1)) {
+            if (current[id] != null) {
+                lists.add(current[id]);
+            }
+        }
+        int[] sizes = new int[lists.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = lists.get(i).size();
+        }
+        int[] cursors = new int[lists.size()];
+        PriorityQueue<Long> best = new PriorityQueue<>();
+        while (limit > 0) {
+            int slot = Integer.MAX_VALUE;
+            int remaining = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i] < sizes[i]) {
+                    remaining++;
+                    slot = Math.min(slot, lists.get(i).get(cursors[i]));
+                }
+            }
+            if (remaining == 0 || best.size() == limit && shared(best.peek()) >= remaining) {
+                break;
+            }
+            int shared = 0;
+            for (int i = 0; i < cursors.length; i++) {
+                if (cursors[i] < sizes[i] && lists.get(i).get(cursors[i]) == slot) {
+                    cursors[i]++;
+                    shared++;
+                }
+            }
+            if (!visible.test(slot)) {
+                continue;
+            }
+            long rank = rank(shared, slot);
+            if (best.size() < limit) {
+                best.add(rank);
+            } else if (rank > best.peek()) {
+                best.poll();
+                best.add(rank);
+            }
+        }
+        int[] slots = new int[best.size()];
+        for (int i = slots.length - 1; i >= 0; i--) {
+            slots[i] = Integer.MAX_VALUE - (int) (long) best.poll();
+        }
+        return slots;
+    }
+
+    /**
+     * Rank where more shared labels and then a lower slot rank higher.
+     *
+     * @param shared number of shared labels.
+     * @param slot   slot of media.
+     * @return rank.
+     */
+    private static long rank(int shared, int slot) {
+        return ((long) shared << 32) | (Integer.MAX_VALUE - slot);
+    }
+
+    private static int shared(long rank) {
+        return (int) (rank >>> 32);
+    }
+
+    /**
+     * Find the next label id in a bitset.
+     *
+     * @param labelSet bitset of label ids.
+     * @param from     first id to check.
+     * @return next id set from the given id on, or -1 if there is none.
+     */
+    public static int nextLabel(long[] labelSet, int from) {
+        int word = from >> 6;
+        if (word >= labelSet.length) {
+            return -1;
+        }
+        long bits = labelSet[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == labelSet.length) {
+                return -1;
+            }
+            bits = labelSet[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+}
@@ -0,0 +1,368 @@
+package mediametadata.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Locality-sensitive index of genre label sets, finding the media whose labels are most similar
+ * to a set of labels without reading every media that shares one of them.
+ * <p>
+ * Every label set gets a MinHash signature of {@link #HASHES} values, the lowest hash of its labels
+ * under each of as many hash functions, so two sets agree on a value with a probability equal to
+ * their Jaccard index. Media with the same signature, in practice the same distinct labels, share
+ * one group. The signature is cut into {@link #BANDS} bands of {@link #ROWS} values, and a group is
+ * filed under each of its bands: sets with a Jaccard index of 0.5 share a band with a probability
+ * of 99%, sets with 0.2 of 48% and disjoint sets practically never.
+ * <p>
+ * A search reads the groups filed under the bands of the query, estimates their similarity from
+ * the share of equal signature values and takes slots from the best groups until it has enough.
+ * It never reads a posting list further than the slots it returns, so its cost depends on the
+ * number of distinct label sets near the query and the number of results, not on the number of media.
+ * <p>
+ * Slots are only removed by {@link #compact(IntPredicate)}, deleted media are skipped through the
+ * visibility check of the reader. One thread at a time may add or compact while any number of threads search.
+ */
+public class MinHashIndex {
+
+    /**
+     * Number of values of a signature.
+     */
+    public static final int HASHES = 32;
+
+    /**
+     * Number of bands a signature is cut into.
+     */
+    public static final int BANDS = 16;
+
+    /**
+     * Number of signature values of a band.
+     */
+    public static final int ROWS = HASHES / BANDS;
+
+    /**
+     * Low bits of every byte of a sketch word.
+     */
+    private static final long BYTE_LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+    /**
+     * Number of bits of a band in a sketch word.
+     */
+    private static final int BAND_BITS = ROWS * Byte.SIZE;
+
+    /**
+     * Number of bands in a sketch word.
+     */
+    private static final int BANDS_PER_WORD = Long.SIZE / BAND_BITS;
+
+    /**
+     * Low bits of every band of a sketch word.
+     */
+    private static final long BAND_LOW_BITS = 0x7fff7fff7fff7fffL;
+
+    /**
+     * Seeds of the hash functions, one per signature value.
+     */
+    private static final int[] SEEDS = new int[HASHES];
+
+    static {
+        int seed = 0x9e3779b9;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + 0x7f4a7c15);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /**
+     * Group of every signature.
+     */
+    private final Map<Signature, Group> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Groups by band and hash of the band's values, replaced by a longer copy when a group is added.
+     */
+    private final Map<Long, Group[]> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Slot of media found by a search and its estimated similarity to the query.
+     *
+     * @param slot       slot of the media.
+     * @param similarity share of equal signature values, an estimate of the Jaccard index of the label sets.
+     */
+    public record Match(int slot, double similarity) {
+    }
+
+    /**
+     * MinHash signature, compared by its values.
+     *
+     * @param values lowest hash of the labels under every hash function.
+     */
+    private record Signature(int[] values) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Signature signature && Arrays.equals(values, signature.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+    }
+
+    /**
+     * Media sharing a signature, with the low byte of every signature value packed into four
+     * words, so a search compares a group to the query a band or a byte at a time without reading
+     * another object. Values of unrelated sets agree on their low byte with a probability of 1/256.
+     *
+     * @param sketch0 low bytes of signature values 0 to 7, value 0 in the lowest byte.
+     * @param sketch1 low bytes of signature values 8 to 15.
+     * @param sketch2 low bytes of signature values 16 to 23.
+     * @param sketch3 low bytes of signature values 24 to 31.
+     * @param slots   ascending slots of the media.
+     */
+    private record Group(long sketch0, long sketch1, long sketch2, long sketch3, IntPostingList slots) {
+
+        /**
+         * Create group of a signature without slots.
+         *
+         * @param values signature values.
+         */
+        private Group(int[] values) {
+            this(sketch(values, 0), sketch(values, 1), sketch(values, 2), sketch(values, 3), new IntPostingList());
+        }
+
+        /**
+         * Copy group with other slots.
+         *
+         * @param slots ascending slots of the media.
+         * @return copy.
+         */
+        private Group withSlots(IntPostingList slots) {
+            return new Group(sketch0, sketch1, sketch2, sketch3, slots);
+        }
+
+    }
+
+    /**
+     * Index labels of the media at slot, nothing is indexed for media without labels.
+     *
+     * @param slot     slot of media, larger than every slot already indexed.
+     * @param labelSet bitset of the label ids of media.
+     */
+    public void add(int slot, long[] labelSet) {
+        int[] values = signature(labelSet);
+        if (values == null) {
+            return;
+        }
+        Group group = groups.get(new Signature(values));
+        if (group == null) {
+            group = new Group(values);
+            for (int band = 0; band < BANDS; band++) {
+                Group[] filed = buckets.getOrDefault(bucket(values, band), new Group[0]);
+                Group[] next = Arrays.copyOf(filed, filed.length + 1);
+                next[filed.length] = group;
+                buckets.put(bucket(values, band), next);
+            }
+            groups.put(new Signature(values), group);
+        }
+        group.slots().add(slot);
+    }
+
+    /**
+     * Replace the slots of every group by a copy without the slots that fail a check. Groups stay
+     * filed when they become empty, there is at most one per distinct label set.
+     *
+     * @param keep check if a slot stays indexed.
+     */
+    public void compact(IntPredicate keep) {
+        Map<Group, Group> compacted = new IdentityHashMap<>();
+        groups.replaceAll((signature, group) -> {
+            Group copy = group.withSlots(group.slots().filter(group.slots().size(), keep));
+            compacted.put(group, copy);
+            return copy;
+        });
+        buckets.replaceAll((bucket, filed) -> {
+            Group[] copies = new Group[filed.length];
+            for (int i = 0; i < filed.length; i++) {
+                copies[i] = compacted.getOrDefault(filed[i], filed[i]);
+            }
+            return copies;
+        });
+    }
+
+    /**
+     * Find the media whose labels are most similar to a label set.
+     *
+     * @param labelSet bitset of the label ids to relate to.
+     * @param limit    maximum number of matches.
+     * @param visible  check if a slot may be returned.
+     * @return {@link Match} of the most similar media, best first and by slot within a group.
+     */
+    public Match[] search(long[] labelSet, int limit, IntPredicate visible) {
+        int[] values = signature(labelSet);
+        if (values == null || limit < 1) {
+            return new Match[0];
+        }
+        long query0 = sketch(values, 0);
+        long query1 = sketch(values, 1);
+        long query2 = sketch(values, 2);
+        long query3 = sketch(values, 3);
+        List<List<Group>> byEqual = new ArrayList<>(Collections.nCopies(HASHES + 1, null));
+        for (int band = 0; band < BANDS; band++) {
+            Group[] filed = buckets.get(bucket(values, band));
+            if (filed == null) {
+                continue;
+            }
+            for (Group group : filed) {
+                long diff0 = query0 ^ group.sketch0();
+                long diff1 = query1 ^ group.sketch1();
+                long diff2 = query2 ^ group.sketch2();
+                long diff3 = query3 ^ group.sketch3();
+                // a group is filed under every band it shares with the query, read it under the first
+                if (firstSharedBand(diff0, diff1, diff2, diff3) != band) {
+                    continue;
+                }
+                int equal = Long.bitCount(zeros(diff0, BYTE_LOW_BITS)) + Long.bitCount(zeros(diff1, BYTE_LOW_BITS))
+                        + Long.bitCount(zeros(diff2, BYTE_LOW_BITS)) + Long.bitCount(zeros(diff3, BYTE_LOW_BITS));
+                if (byEqual.get(equal) == null) {
+                    byEqual.set(equal, new ArrayList<>());
+                }
+                byEqual.get(equal).add(group);
+            }
+        }
+        List<Match> matches = new ArrayList<>(limit);
+        for (int equal = HASHES; equal > 0 && matches.size() < limit; equal--) {
+            List<Group> ranked = byEqual.get(equal);
+            if (ranked == null) {
+                continue;
+            }
+            ranked.sort(Comparator.comparingInt(group -> group.slots().isEmpty() ? Integer.MAX_VALUE : group.slots().get(0)));
+            for (int i = 0; i < ranked.size() && matches.size() < limit; i++) {
+                IntPostingList slots = ranked.get(i).slots();
+                int size = slots.size();
+                for (int j = 0; j < size && matches.size() < limit; j++) {
+                    int slot = slots.get(j);
+                    if (visible.test(slot)) {
+                        matches.add(new Match(slot, (double) equal / HASHES));
+                    }
+                }
+            }
+        }
+        return matches.toArray(new Match[0]);
+    }
+
+    /**
+     * Find the first band in which the sketches of two signatures agree.
+     *
+     * @param diff0 first words of the sketches xored.
+     * @param diff1 second words of the sketches xored.
+     * @param diff2 third words of the sketches xored.
+     * @param diff3 fourth words of the sketches xored.
+     * @return band, {@link #BANDS} if they agree in none.
+     */
+    private static int firstSharedBand(long diff0, long diff1, long diff2, long diff3) {
+        long shared0 = zeros(diff0, BAND_LOW_BITS);
+        if (shared0 != 0) {
+            return Long.numberOfTrailingZeros(shared0) / BAND_BITS;
+        }
+        long shared1 = zeros(diff1, BAND_LOW_BITS);
+        if (shared1 != 0) {
+            return BANDS_PER_WORD + Long.numberOfTrailingZeros(shared1) / BAND_BITS;
+        }
+        long shared2 = zeros(diff2, BAND_LOW_BITS);
+        if (shared2 != 0) {
+            return 2 * BANDS_PER_WORD + Long.numberOfTrailingZeros(shared2) / BAND_BITS;
+        }
+        long shared3 = zeros(diff3, BAND_LOW_BITS);
+        if (shared3 != 0) {
+            return 3 * BANDS_PER_WORD + Long.numberOfTrailingZeros(shared3) / BAND_BITS;
+        }
+        return BANDS;
+    }
+
+    /**
+     * Mark the lanes of a word that are zero, lanes being bytes or bands.
+     *
+     * @param word     word to check.
+     * @param lowBits  every bit of a lane but its highest, {@link #BYTE_LOW_BITS} or {@link #BAND_LOW_BITS}.
+     * @return word with the highest bit of every zero lane set and no other bit.
+     */
+    private static long zeros(long word, long lowBits) {
+        return ~(((word & lowBits) + lowBits) | word | lowBits);
+    }
+
+    /**
+     * Pack the low bytes of eight signature values into a sketch word.
+     *
+     * @param values signature values.
+     * @param word   word of the sketch, 0 to 3.
+     * @return low bytes of values 8 * word to 8 * word + 7, the first in the lowest byte.
+     */
+    private static long sketch(int[] values, int word) {
+        long sketch = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            sketch = sketch << Byte.SIZE | (values[word * Long.BYTES + i] & 0xff);
+        }
+        return sketch;
+    }
+
+    /**
+     * MinHash signature of a label set.
+     *
+     * @param labelSet bitset of label ids.
+     * @return lowest hash of the labels under every hash function, null if there are no labels.
+     */
+    private static int[] signature(long[] labelSet) {
+        int label = LabelIndex.nextLabel(labelSet, 0);
+        if (label < 0) {
+            return null;
+        }
+        int[] values = new int[HASHES];
+        Arrays.fill(values, Integer.MAX_VALUE);
+        for (; label >= 0; label = LabelIndex.nextLabel(labelSet, label + 1)) {
+            for (int i = 0; i < HASHES; i++) {
+                values[i] = Math.min(values[i], mix(label ^ SEEDS[i]) & Integer.MAX_VALUE);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Key of the bucket of a band of a signature.
+     *
+     * @param values signature values.
+     * @param band   band of the signature.
+     * @return key, the band in the high bits above a hash of its values.
+     */
+    private static long bucket(int[] values, int band) {
+        int hash = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            hash = mix(hash * 31 + values[row]);
+        }
+        return (long) band << 32 | (hash & 0xffffffffL);
+    }
+
+    /**
+     * Scramble the bits of an int, the finaliser of MurmurHash3.
+     *
+     * @param value int to scramble.
+     * @return scrambled int.
+     */
+    private static int mix(int value) {
+        value ^= value >>> 16;
+        value *= 0x85ebca6b;
+        value ^= value >>> 13;
+        value *= 0xc2b2ae35;
+        value ^= value >>> 16;
+        return value;
+    }
+
+}
@@ -0,0 +1,86 @@
+package mediametadata.index;
+
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Sorted index of an int value of the media, such as a release year, to the slots carrying it.
+ * <p>
+ * Every entry is a key packing the value above the slot, kept in a {@link ConcurrentSkipListSet},
+ * so the keys of a value range are found in O(log n) and read in ascending value and slot order
+ * while the index changes. Keys are never negative and serve as positions to resume a range at.
+ * <p>
+ * Slots are removed when the record of their deleted media is purged rather than on the delete,
+ * so readers of older snapshots still find them, and every reader checks the visibility of a slot.
+ * Unlike the other indexes, they are removed one by one, so ranges do not slow down with purged media.
+ * One thread at a time may add or remove while any number of threads read.
+ */
+public class RangeIndex {
+
+    /**
+     * Number of low bits of a key holding the slot.
+     */
+    private static final int SLOT_BITS = 31;
+
+    private final NavigableSet<Long> keys = new ConcurrentSkipListSet<>();
+
+    /**
+     * Index value of the media at slot.
+     *
+     * @param slot  slot of media.
+     * @param value value of media.
+     */
+    public void add(int slot, int value) {
+        keys.add(key(value, slot));
+    }
+
+    /**
+     * Remove value of the media at slot, nothing happens if it was not indexed.
+     *
+     * @param slot  slot of media.
+     * @param value value the media was indexed with.
+     */
+    public void remove(int slot, int value) {
+        keys.remove(key(value, slot));
+    }
+
+    /**
+     * Keys of the media with values in a range, lowest value first and by slot among equal values.
+     *
+     * @param from  lowest value, inclusive.
+     * @param to    highest value, inclusive.
+     * @param start lowest key, to resume the range at a key read before, 0 for the whole range.
+     * @return live view of the keys, empty if from is above to.
+     */
+    public NavigableSet<Long> range(int from, int to, long start) {
+        long low = Math.max(key(from, 0), start);
+        long high = key(to, Integer.MAX_VALUE);
+        if (from > to || low > high) {
+            return Collections.emptyNavigableSet();
+        }
+        return keys.subSet(low, true, high, true);
+    }
+
+    /**
+     * Key of a value and slot, ordered by value and then by slot.
+     *
+     * @param value value of media.
+     * @param slot  slot of media.
+     * @return key, never negative.
+     */
+    public static long key(int value, int slot) {
+        return ((long) value - Integer.MIN_VALUE) << SLOT_BITS | slot;
+    }
+
+    /**
+     * Slot of a key.
+     *
+     * @param key key returned by {@link #key(int, int)}.
+     * @return slot.
+     */
+    public static int slot(long key) {
+        return (int) (key & Integer.MAX_VALUE);
+    }
+
+}
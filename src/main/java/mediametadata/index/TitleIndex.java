@@ -0,0 +1,71 @@
+package mediametadata.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unique index of titles, mapping every normalised title to the slot of the media holding it.
+ * One thread at a time may change the index while any number of threads read it.
+ */
+public class TitleIndex {
+
+    private final TitleNormalisation normalisation;
+
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Create an empty index.
+     *
+     * @param normalisation {@link TitleNormalisation} applied to every title used as key.
+     */
+    public TitleIndex(TitleNormalisation normalisation) {
+        this.normalisation = normalisation;
+    }
+
+    /**
+     * Key a title is indexed under.
+     *
+     * @param title title of media.
+     * @return normalised title or null if the title is not indexed.
+     */
+    public String key(String title) {
+        return normalisation.apply(title);
+    }
+
+    /**
+     * Find slot of the media holding the title.
+     *
+     * @param title title of media.
+     * @return slot or null if the title is not indexed.
+     */
+    public Integer get(String title) {
+        String key = normalisation.apply(title);
+        return key == null ? null : slots.get(key);
+    }
+
+    /**
+     * Index title unless an equal title is already present.
+     *
+     * @param title title of media.
+     * @param slot  slot of the media.
+     * @return slot already holding the title or null if the title was added.
+     */
+    public Integer putIfAbsent(String title, int slot) {
+        String key = normalisation.apply(title);
+        return key == null ? null : slots.putIfAbsent(key, slot);
+    }
+
+    /**
+     * Remove title from the index if it still belongs to the media at slot.
+     *
+     * @param title title of media.
+     * @param slot  slot of the media.
+     */
+    public void remove(String title, int slot) {
+        String key = normalisation.apply(title);
+        if (key != null) {
+            slots.remove(key, slot);
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package mediametadata.index;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * How a title is normalised before it is used as a key in {@link TitleIndex}.
+ */
+public enum TitleNormalisation {
+
+    /**
+     * Titles are compared exactly as they were posted.
+     */
+    NONE,
+    /**
+     * Titles that only differ in case are the same title.
+     */
+    CASE_INSENSITIVE,
+    /**
+     * Titles are NFKC normalised and compared without case, so composed and decomposed
+     * characters or compatibility forms count as the same title.
+     */
+    UNICODE;
+
+    /**
+     * Normalise a title.
+     *
+     * @param title title of media, may be null.
+     * @return normalised title or null if title is null.
+     */
+    public String apply(String title) {
+        if (title == null) {
+            return null;
+        }
+        return switch (this) {
+            case NONE -> title;
+            case CASE_INSENSITIVE -> title.toLowerCase(Locale.ROOT);
+            case UNICODE -> Normalizer.normalize(title, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        };
+    }
+
+}
@@ -0,0 +1,131 @@
+package mediametadata.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Index of every three character sequence in a title to the slots of the titles containing it.
+ * <p>
+ * Titles are indexed case folded, which narrows candidates for both case-sensitive and
+ * case-insensitive searches: if a title contains the query, its folded form contains every
+ * trigram of the folded query. Candidates still have to be verified against the title.
+ * <p>
+ * Slots are only removed by {@link #compact(IntPredicate)}, candidates include deleted media which
+ * readers skip. One thread at a time may add or compact while any number of threads search.
+ */
+public class TrigramIndex {
+
+    /**
+     * Shortest query the index can narrow down, shorter queries have no trigram.
+     */
+    public static final int GRAM_LENGTH = 3;
+
+    private final Map<Long, IntPostingList> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Fold case of every character without changing the length of the string,
+     * so a folded title contains a folded query wherever the title contains the query.
+     *
+     * @param value string to fold.
+     * @return folded string.
+     */
+    public static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Index title of the media at slot.
+     *
+     * @param slot  slot of media, larger than every slot already indexed.
+     * @param title title of media, nothing is indexed if null.
+     */
+    public void add(int slot, String title) {
+        if (title == null) {
+            return;
+        }
+        for (long gram : grams(title)) {
+            postings.computeIfAbsent(gram, g -> new IntPostingList()).add(slot);
+        }
+    }
+
+    /**
+     * Replace every posting list by a copy without the slots that fail a check, dropping empty lists.
+     * Searches that already hold a list keep reading it.
+     *
+     * @param keep check if a slot stays indexed.
+     */
+    public void compact(IntPredicate keep) {
+        postings.replaceAll((gram, list) -> list.filter(list.size(), keep));
+        postings.values().removeIf(IntPostingList::isEmpty);
+    }
+
+    /**
+     * Find slots of titles that may contain the query, in ascending order.
+     *
+     * @param query characters to search for, at least {@link #GRAM_LENGTH} long.
+     * @return candidate slots which have every trigram of the query.
+     */
+    public int[] candidates(String query) {
+        long[] grams = grams(query);
+        IntPostingList[] lists = new IntPostingList[grams.length];
+        int i = 0;
+        for (long gram : grams) {
+            IntPostingList list = postings.get(gram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists[i++] = list;
+        }
+        int[] sizes = new int[lists.length];
+        Arrays.sort(lists, Comparator.comparingInt(IntPostingList::size));
+        for (int j = 0; j < lists.length; j++) {
+            sizes[j] = lists[j].size();
+        }
+        IntPostingList smallest = lists[0];
+        int[] candidates = new int[sizes[0]];
+        int count = 0;
+        for (int j = 0; j < sizes[0]; j++) {
+            int slot = smallest.get(j);
+            boolean inAll = true;
+            for (int k = 1; k < lists.length && inAll; k++) {
+                inAll = lists[k].contains(slot, sizes[k]);
+            }
+            if (inAll) {
+                candidates[count++] = slot;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Distinct trigrams of the folded value, three chars packed into a long 21 bits apart, so the
+     * chars land on separate bits of {@link Long#hashCode()} and trigrams rarely share a hash bucket.
+     * Sorted in an array rather than collected in a set, so indexing does not box every trigram.
+     *
+     * @param value title or query.
+     * @return distinct trigrams in ascending order.
+     */
+    private static long[] grams(String value) {
+        String folded = fold(value);
+        long[] grams = new long[Math.max(0, folded.length() - GRAM_LENGTH + 1)];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) folded.charAt(i) << 42) | ((long) folded.charAt(i + 1) << 21) | folded.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+}
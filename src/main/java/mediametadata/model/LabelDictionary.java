@@ -0,0 +1,79 @@
+package mediametadata.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of genre labels, giving every distinct label a small int id in the order labels are first seen.
+ * Ids are never reused or removed. Any number of threads may look up and add labels at the same time.
+ */
+public class LabelDictionary {
+
+    private static final LabelDictionary GLOBAL = new LabelDictionary();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile String[] labels = new String[16];
+
+    private int size;
+
+    /**
+     * Dictionary shared by every {@link Media}, so equal labels are stored once however many
+     * {@link Media} carry them.
+     *
+     * @return global {@link LabelDictionary}.
+     */
+    public static LabelDictionary global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Find the id of a label, adding the label if it is new.
+     *
+     * @param label genre label.
+     * @return id of the label.
+     */
+    public int id(String label) {
+        Integer id = ids.get(label);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(label);
+            if (id != null) {
+                return id;
+            }
+            String[] current = labels;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = label;
+            labels = current;
+            ids.put(label, size);
+            return size++;
+        }
+    }
+
+    /**
+     * Find the id of a label without adding it.
+     *
+     * @param label genre label.
+     * @return id of the label, -1 if no {@link Media} ever carried it.
+     */
+    public int find(String label) {
+        Integer id = ids.get(label);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Find the label of an id.
+     *
+     * @param id id returned by {@link #id(String)}.
+     * @return genre label.
+     */
+    public String label(int id) {
+        return labels[id];
+    }
+
+}
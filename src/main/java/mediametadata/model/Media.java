@@ -1,33 +1,43 @@
 package mediametadata.model;
 
 
-import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.UUID;
 
 public class Media {
 
     @JsonProperty("id")
-    private UUID id = UUID.randomUUID();
+    private UUID id;
 
     @JsonProperty("title")
     private String title;
 
-    @JsonProperty("labels")
-    @JsonFormat(shape = JsonFormat.Shape.OBJECT)
-    private List<String> labels = new ArrayList<>();
+    /**
+     * Ids of the genre labels in the {@link LabelDictionary#global()} dictionary, in the order they were
+     * posted and -1 for a null label, or null if there are no labels.
+     */
+    @JsonIgnore
+    private int[] labelIds = new int[0];
+
+    /**
+     * Bitset of the distinct label ids.
+     */
+    @JsonIgnore
+    private long[] labelSet = new long[0];
 
     @JsonIgnore
     private MediaType mediaType = MediaType.ALL;
 
     /**
-     * Creator constructor.
+     * Creator constructor, with a random {@link UUID} until an id is read.
      */
     public Media() {
+        this.id = UUID.randomUUID();
     }
 
     /**
@@ -42,13 +52,25 @@ public class Media {
                  List<String> labels) {
         this.id = id == null ? UUID.randomUUID() : id;
         this.title = title;
-        this.labels = labels;
+        setLabels(labels);
     }
 
     public UUID getId() {
         return id;
     }
 
+    /**
+     * Set the id read from JSON, keeping the random {@link UUID} if the id is null.
+     *
+     * @param id {@link UUID} or null.
+     */
+    @JsonProperty("id")
+    private void setId(UUID id) {
+        if (id != null) {
+            this.id = id;
+        }
+    }
+
     /**
      * Title of Media.
      *
@@ -61,10 +83,102 @@ public class Media {
     /**
      * Media genre labels.
      *
-     * @return List of Labels.
+     * @return List of Labels, read-only and looked up in the {@link LabelDictionary#global()} dictionary.
      */
+    @JsonProperty("labels")
     public List<String> getLabels() {
-        return labels;
+        return labelIds == null ? null : new LabelList(labelIds);
+    }
+
+    /**
+     * Set genre labels, interned into the {@link LabelDictionary#global()} dictionary.
+     *
+     * @param labels genre labels, may be null.
+     */
+    @JsonProperty("labels")
+    public void setLabels(List<String> labels) {
+        if (labels == null) {
+            setLabelIds(null);
+            return;
+        }
+        LabelDictionary dictionary = LabelDictionary.global();
+        int[] ids = new int[labels.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String label = labels.get(i);
+            ids[i] = label == null ? -1 : dictionary.id(label);
+        }
+        setLabelIds(ids);
+    }
+
+    /**
+     * Set genre labels by their ids in the {@link LabelDictionary#global()} dictionary.
+     *
+     * @param labelIds ids in the order of the labels, -1 for a null label, or null if there are no labels.
+     */
+    @JsonIgnore
+    public void setLabelIds(int[] labelIds) {
+        if (labelIds == null) {
+            this.labelIds = null;
+            this.labelSet = new long[0];
+            return;
+        }
+        int maxId = -1;
+        for (int id : labelIds) {
+            maxId = Math.max(maxId, id);
+        }
+        long[] set = new long[(maxId >> 6) + 1];
+        for (int id : labelIds) {
+            if (id >= 0) {
+                set[id >> 6] |= 1L << id;
+            }
+        }
+        this.labelIds = labelIds;
+        this.labelSet = set;
+    }
+
+    /**
+     * Ids of the genre labels in the {@link LabelDictionary#global()} dictionary.
+     *
+     * @return ids in the order the labels were posted, -1 for a null label, or null if there are
+     * no labels. Must not be changed.
+     */
+    @JsonIgnore
+    public int[] getLabelIds() {
+        return labelIds;
+    }
+
+    /**
+     * Distinct genre labels as a bitset of their ids in the {@link LabelDictionary#global()} dictionary.
+     *
+     * @return bitset, bit n of word n / 64 set if the label with id n is present. Must not be changed.
+     */
+    @JsonIgnore
+    public long[] getLabelSet() {
+        return labelSet;
+    }
+
+    /**
+     * Count the distinct genre labels shared with another Media, one bitwise and per 64 labels.
+     *
+     * @param other Media to compare with.
+     * @return number of shared labels.
+     */
+    public int sharedLabels(Media other) {
+        long[] otherSet = other.labelSet;
+        int shared = 0;
+        for (int i = Math.min(labelSet.length, otherSet.length) - 1; i >= 0; i--) {
+            shared += Long.bitCount(labelSet[i] & otherSet[i]);
+        }
+        return shared;
+    }
+
+    /**
+     * {@link MediaType} of Media.
+     *
+     * @return MOVIE, SERIES or ALL.
+     */
+    public MediaType getMediaType() {
+        return mediaType;
     }
 
     /**
@@ -76,4 +190,28 @@ public class Media {
         this.mediaType = mediaType;
     }
 
+    /**
+     * Read-only view of label ids as labels.
+     */
+    private static final class LabelList extends AbstractList<String> implements RandomAccess {
+
+        private final int[] ids;
+
+        LabelList(int[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public String get(int index) {
+            int id = ids[index];
+            return id < 0 ? null : LabelDictionary.global().label(id);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+
+    }
+
 }
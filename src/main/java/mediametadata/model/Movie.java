@@ -22,6 +22,7 @@ public class Movie extends Media {
      * Creator constructor.
      */
     public Movie() {
+        super.setMediaType(MediaType.MOVIE);
     }
 
     /**
@@ -44,4 +45,22 @@ public class Movie extends Media {
         this.releaseDate = releaseDate;
     }
 
+    /**
+     * Director of Movie.
+     *
+     * @return director.
+     */
+    public String getDirector() {
+        return director;
+    }
+
+    /**
+     * Release year of the Movie.
+     *
+     * @return release date.
+     */
+    public Date getReleaseDate() {
+        return releaseDate;
+    }
+
 }
@@ -16,6 +16,7 @@ public class Series extends Media {
      * Creator constructor.
      */
     public Series() {
+        super.setMediaType(MediaType.SERIES);
     }
 
     /**
@@ -35,4 +36,13 @@ public class Series extends Media {
         this.numberOfEpisodes = numberOfEpisodes;
     }
 
+    /**
+     * Number of episodes of the Series.
+     *
+     * @return number of episodes.
+     */
+    public int getNumberOfEpisodes() {
+        return numberOfEpisodes;
+    }
+
 }
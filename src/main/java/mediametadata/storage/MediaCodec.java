@@ -0,0 +1,126 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Compact binary form of {@link Media}, shared by the write-ahead log and snapshots.
+ * <p>
+ * A record starts with the {@link MediaType}, followed by the {@link UUID} as two longs, the title,
+ * the labels and the fields of the subtype. Strings are written as their UTF-8 length and bytes,
+ * a length of -1 standing for null.
+ * <p>
+ * Records are written to a stream but read from a {@link ByteBuffer} holding the whole record,
+ * so reading costs no call per field into a synchronised stream.
+ */
+public final class MediaCodec {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final MediaType[] MEDIA_TYPES = MediaType.values();
+
+    private MediaCodec() {
+    }
+
+    /**
+     * Write {@link Media}.
+     *
+     * @param out   output to write to.
+     * @param media {@link Media} to write.
+     * @throws IOException if writing fails.
+     */
+    public static void write(DataOutput out, Media media) throws IOException {
+        out.writeByte(media.getMediaType().ordinal());
+        out.writeLong(media.getId().getMostSignificantBits());
+        out.writeLong(media.getId().getLeastSignificantBits());
+        writeString(out, media.getTitle());
+        List<String> labels = media.getLabels();
+        out.writeInt(labels == null ? -1 : labels.size());
+        if (labels != null) {
+            for (String label : labels) {
+                writeString(out, label);
+            }
+        }
+        if (media instanceof Movie movie) {
+            writeString(out, movie.getDirector());
+            out.writeLong(movie.getReleaseDate() == null ? NO_DATE : movie.getReleaseDate().getTime());
+        } else if (media instanceof Series series) {
+            out.writeInt(series.getNumberOfEpisodes());
+        }
+    }
+
+    /**
+     * Read {@link Media} written by {@link #write(DataOutput, Media)}.
+     *
+     * @param in buffer positioned at the record, positioned after it once read.
+     * @return {@link Media}.
+     * @throws IOException if the record is not {@link Media}.
+     */
+    public static Media read(ByteBuffer in) throws IOException {
+        int type = Byte.toUnsignedInt(in.get());
+        if (type >= MEDIA_TYPES.length) {
+            throw new IOException("Unknown media type " + type);
+        }
+        UUID id = new UUID(in.getLong(), in.getLong());
+        String title = readString(in);
+        int labelCount = in.getInt();
+        List<String> labels = null;
+        if (labelCount >= 0) {
+            labels = new ArrayList<>(labelCount);
+            for (int i = 0; i < labelCount; i++) {
+                labels.add(readString(in));
+            }
+        }
+        switch (MEDIA_TYPES[type]) {
+            case MOVIE:
+                String director = readString(in);
+                long releaseDate = in.getLong();
+                return new Movie(id, title, labels, director, releaseDate == NO_DATE ? null : new Date(releaseDate));
+            case SERIES:
+                return new Series(id, title, labels, in.getInt());
+            default:
+                return new Media(id, title, labels);
+        }
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (in.hasArray()) {
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,443 @@
+package mediametadata.storage;
+
+import mediametadata.model.LabelDictionary;
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link RecordStore} keeping {@link Media} as compact binary records in direct memory, so the heap
+ * holds three longs per slot instead of an object graph per {@link Media}.
+ * <p>
+ * A record holds the {@link MediaType}, the {@link UUID} as two longs, the title and the labels as
+ * their ids in {@link LabelDictionary#global()}, followed by the director and release year of a {@link Movie}
+ * or the number of episodes of a {@link Series}. Lengths, counts and label ids are variable-length
+ * ints. Only the release year is kept, which is all a {@link Movie} shows of its release date.
+ * <p>
+ * Records are appended to fixed size segments and decoded into a new {@link Media} on every
+ * {@link #get(int)}. Purging a record only marks its bytes dead; once half of a segment is dead,
+ * its remaining records are copied to the last segment and the segment is dropped. Every segment
+ * lists the slots stored in it, so only its own records are visited. A reader that finds the
+ * segment of an offset dropped reads the offset again, it was moved before the drop.
+ */
+public class OffHeapSlotStore implements RecordStore {
+
+    private static final int CHUNK_BITS = 14;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final int SEGMENT_BYTES = 1 << 20;
+
+    private static final MediaType[] MEDIA_TYPES = MediaType.values();
+
+    /**
+     * Offset of a purged slot.
+     */
+    private static final long PURGED = -1;
+
+    /**
+     * Year written in place of a release date outside the range of a short, followed by the date.
+     */
+    private static final short FULL_DATE = Short.MIN_VALUE + 1;
+
+    private static final short NO_DATE = Short.MIN_VALUE;
+
+    /**
+     * Segments by number, null once a segment is dropped.
+     */
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+    /**
+     * Bytes of purged records in every segment, only used by the writing thread.
+     */
+    private int[] deadBytes = new int[0];
+
+    /**
+     * Slots whose records were stored in every segment, purged or moved ones included, only used by the writing thread.
+     */
+    private int[][] segmentSlots = new int[0][];
+
+    /**
+     * Number of entries of every segment in segmentSlots.
+     */
+    private int[] segmentSlotCounts = new int[0];
+
+    /**
+     * Heap bytes of segmentSlots.
+     */
+    private volatile long segmentSlotBytes;
+
+    /**
+     * Segment in the upper and position in the lower half of the record offset of every slot.
+     */
+    private volatile AtomicLongArray[] offsets = new AtomicLongArray[0];
+
+    /**
+     * Deleted version of every slot followed by its released version.
+     */
+    private volatile AtomicLongArray[] versions = new AtomicLongArray[0];
+
+    private int size;
+
+    private int segmentPosition;
+
+    private volatile long recordBytes;
+
+    /**
+     * Record being encoded, only used by the writing thread.
+     */
+    private byte[] scratch = new byte[256];
+
+    private int scratchLength;
+
+    @Override
+    public int append(Media newMedia) {
+        encode(newMedia);
+        int slot = size;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == offsets.length) {
+            AtomicLongArray[] grownOffsets = Arrays.copyOf(offsets, chunk + 1);
+            AtomicLongArray[] grownVersions = Arrays.copyOf(versions, chunk + 1);
+            grownOffsets[chunk] = new AtomicLongArray(CHUNK_SIZE);
+            grownVersions[chunk] = new AtomicLongArray(2 * CHUNK_SIZE);
+            offsets = grownOffsets;
+            versions = grownVersions;
+        }
+        offsets[chunk].set(slot & CHUNK_MASK, store(slot, scratch, scratchLength));
+        recordBytes += scratchLength;
+        size = slot + 1;
+        return slot;
+    }
+
+    @Override
+    public Media get(int slot) {
+        AtomicLongArray chunk = offsets[slot >>> CHUNK_BITS];
+        while (true) {
+            long offset = chunk.get(slot & CHUNK_MASK);
+            if (offset == PURGED) {
+                return null;
+            }
+            ByteBuffer segment = segments[(int) (offset >>> 32)];
+            if (segment != null) {
+                return new Decoder(segment, (int) offset).media();
+            }
+        }
+    }
+
+    @Override
+    public long deletedVersion(int slot) {
+        return versions[slot >>> CHUNK_BITS].get(2 * (slot & CHUNK_MASK));
+    }
+
+    @Override
+    public void setDeletedVersion(int slot, long version) {
+        versions[slot >>> CHUNK_BITS].set(2 * (slot & CHUNK_MASK), version);
+    }
+
+    @Override
+    public long releasedVersion(int slot) {
+        return versions[slot >>> CHUNK_BITS].get(2 * (slot & CHUNK_MASK) + 1);
+    }
+
+    @Override
+    public void setReleasedVersion(int slot, long version) {
+        versions[slot >>> CHUNK_BITS].set(2 * (slot & CHUNK_MASK) + 1, version);
+    }
+
+    @Override
+    public void purge(int slot) {
+        AtomicLongArray chunk = offsets[slot >>> CHUNK_BITS];
+        long offset = chunk.get(slot & CHUNK_MASK);
+        if (offset == PURGED) {
+            return;
+        }
+        int segment = (int) (offset >>> 32);
+        int length = recordLength(segments[segment], (int) offset);
+        chunk.set(slot & CHUNK_MASK, PURGED);
+        recordBytes -= length;
+        deadBytes[segment] += length;
+        if (segment != segments.length - 1 && 2L * deadBytes[segment] >= segments[segment].capacity()) {
+            relocate(segment);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Bytes of the stored records, not counting purged records and the unused end of the segments.
+     *
+     * @return number of bytes.
+     */
+    public long recordBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * Heap bytes of the offset and versions of every slot and the slots of every segment,
+     * the records themselves are off the heap.
+     *
+     * @return number of bytes.
+     */
+    @Override
+    public long heapBytes() {
+        return (long) offsets.length * CHUNK_SIZE * 3 * Long.BYTES + segmentSlotBytes;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return recordBytes;
+    }
+
+    /**
+     * Copy the record of a slot to the last segment, starting a new segment if it does not fit.
+     *
+     * @param slot   slot of the record.
+     * @param record bytes of the record.
+     * @param length length of the record.
+     * @return offset of the record.
+     */
+    private long store(int slot, byte[] record, int length) {
+        ByteBuffer[] current = segments;
+        int last = current.length - 1;
+        if (last < 0 || segmentPosition + length > current[last].capacity()) {
+            current = Arrays.copyOf(current, current.length + 1);
+            last++;
+            current[last] = ByteBuffer.allocateDirect(Math.max(SEGMENT_BYTES, length));
+            deadBytes = Arrays.copyOf(deadBytes, current.length);
+            segmentSlots = Arrays.copyOf(segmentSlots, current.length);
+            segmentSlots[last] = new int[64];
+            segmentSlotCounts = Arrays.copyOf(segmentSlotCounts, current.length);
+            segmentSlotBytes += 64 * Integer.BYTES;
+            segments = current;
+            segmentPosition = 0;
+        }
+        current[last].put(segmentPosition, record, 0, length);
+        long offset = ((long) last << 32) | segmentPosition;
+        segmentPosition += length;
+        int[] slots = segmentSlots[last];
+        if (segmentSlotCounts[last] == slots.length) {
+            segmentSlotBytes += (long) slots.length * Integer.BYTES;
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            segmentSlots[last] = slots;
+        }
+        slots[segmentSlotCounts[last]++] = slot;
+        return offset;
+    }
+
+    /**
+     * Move the records left in a segment to the last segment and drop it.
+     *
+     * @param segment number of the segment, not the last one.
+     */
+    private void relocate(int segment) {
+        ByteBuffer dropped = segments[segment];
+        int[] slots = segmentSlots[segment];
+        byte[] record = new byte[256];
+        for (int i = 0; i < segmentSlotCounts[segment]; i++) {
+            int slot = slots[i];
+            AtomicLongArray chunk = offsets[slot >>> CHUNK_BITS];
+            long offset = chunk.get(slot & CHUNK_MASK);
+            if (offset != PURGED && (int) (offset >>> 32) == segment) {
+                int length = recordLength(dropped, (int) offset);
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                dropped.get((int) offset, record, 0, length);
+                chunk.set(slot & CHUNK_MASK, store(slot, record, length));
+            }
+        }
+        ByteBuffer[] remaining = segments.clone();
+        remaining[segment] = null;
+        segments = remaining;
+        deadBytes[segment] = 0;
+        segmentSlotBytes -= (long) slots.length * Integer.BYTES;
+        segmentSlots[segment] = null;
+        segmentSlotCounts[segment] = 0;
+    }
+
+    private static int recordLength(ByteBuffer segment, int position) {
+        Decoder decoder = new Decoder(segment, position);
+        decoder.media();
+        return decoder.position - position;
+    }
+
+    /**
+     * Encode {@link Media} into the scratch record.
+     *
+     * @param media {@link Media} to encode.
+     */
+    private void encode(Media media) {
+        scratchLength = 0;
+        writeByte(media.getMediaType().ordinal());
+        writeLong(media.getId().getMostSignificantBits());
+        writeLong(media.getId().getLeastSignificantBits());
+        writeString(media.getTitle());
+        int[] labelIds = media.getLabelIds();
+        writeVarInt(labelIds == null ? 0 : labelIds.length + 1);
+        if (labelIds != null) {
+            for (int labelId : labelIds) {
+                writeVarInt(labelId + 1);
+            }
+        }
+        if (media instanceof Movie movie) {
+            writeString(movie.getDirector());
+            writeDate(movie.getReleaseDate());
+        } else if (media instanceof Series series) {
+            writeVarInt(series.getNumberOfEpisodes());
+        }
+    }
+
+    private void writeDate(Date date) {
+        if (date == null) {
+            writeShort(NO_DATE);
+            return;
+        }
+        int year = date.toInstant().atZone(ZoneOffset.UTC).getYear();
+        if (year > FULL_DATE && year <= Short.MAX_VALUE) {
+            writeShort(year);
+        } else {
+            writeShort(FULL_DATE);
+            writeLong(date.getTime());
+        }
+    }
+
+    private void writeString(String value) {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length + 1);
+        ensureScratch(bytes.length);
+        System.arraycopy(bytes, 0, scratch, scratchLength, bytes.length);
+        scratchLength += bytes.length;
+    }
+
+    /**
+     * Write an unsigned int in 7 bit groups, a set top bit meaning more groups follow.
+     *
+     * @param value int to write, treated as unsigned.
+     */
+    private void writeVarInt(int value) {
+        while ((value & ~0x7f) != 0) {
+            writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeShort(int value) {
+        writeByte(value >>> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) {
+        ensureScratch(1);
+        scratch[scratchLength++] = (byte) value;
+    }
+
+    private void ensureScratch(int length) {
+        if (scratchLength + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        }
+    }
+
+    /**
+     * Reads one record with absolute gets, so any number of readers can share a segment.
+     */
+    private static final class Decoder {
+
+        private final ByteBuffer segment;
+
+        private int position;
+
+        Decoder(ByteBuffer segment, int position) {
+            this.segment = segment;
+            this.position = position;
+        }
+
+        Media media() {
+            MediaType mediaType = MEDIA_TYPES[segment.get(position++)];
+            UUID id = new UUID(readLong(), readLong());
+            String title = readString();
+            int labelCount = readVarInt() - 1;
+            int[] labelIds = null;
+            if (labelCount >= 0) {
+                labelIds = new int[labelCount];
+                for (int i = 0; i < labelCount; i++) {
+                    labelIds[i] = readVarInt() - 1;
+                }
+            }
+            Media media = switch (mediaType) {
+                case MOVIE -> new Movie(id, title, null, readString(), readDate());
+                case SERIES -> new Series(id, title, null, readVarInt());
+                default -> new Media(id, title, null);
+            };
+            media.setLabelIds(labelIds);
+            return media;
+        }
+
+        private Date readDate() {
+            short year = segment.getShort(position);
+            position += Short.BYTES;
+            if (year == NO_DATE) {
+                return null;
+            }
+            if (year == FULL_DATE) {
+                return new Date(readLong());
+            }
+            return Date.from(LocalDate.of(year, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+        }
+
+        private String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            segment.get(position, bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = segment.get(position++);
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private long readLong() {
+            long value = segment.getLong(position);
+            position += Long.BYTES;
+            return value;
+        }
+
+    }
+
+}
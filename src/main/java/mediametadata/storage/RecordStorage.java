@@ -0,0 +1,31 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+
+/**
+ * Where the {@link RecordStore} of the repository keeps {@link Media}.
+ */
+public enum RecordStorage {
+
+    /**
+     * {@link Media} objects on the heap, served as stored.
+     */
+    HEAP,
+    /**
+     * Compact binary records in direct memory, decoded into {@link Media} whenever they are read.
+     */
+    OFF_HEAP;
+
+    /**
+     * Create an empty store.
+     *
+     * @return {@link RecordStore}.
+     */
+    public RecordStore create() {
+        return switch (this) {
+            case HEAP -> new SlotStore();
+            case OFF_HEAP -> new OffHeapSlotStore();
+        };
+    }
+
+}
@@ -0,0 +1,96 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+
+/**
+ * Append-only store of {@link Media} by slot.
+ * <p>
+ * Every slot also records the repository version that deleted it, 0 while it is stored, and the
+ * version that released the deleted slot, once it is restored into a new slot or evicted.
+ * One thread at a time may append, delete or purge while any number of threads read; a reader may only
+ * read slots that were published to it, for example through a volatile snapshot written after the append.
+ */
+public interface RecordStore {
+
+    /**
+     * Store {@link Media} in the next slot.
+     *
+     * @param newMedia {@link Media} to store.
+     * @return slot of the {@link Media}.
+     */
+    int append(Media newMedia);
+
+    /**
+     * {@link Media} stored at slot.
+     *
+     * @param slot slot below the published size.
+     * @return {@link Media}, null if the slot was purged.
+     */
+    Media get(int slot);
+
+    /**
+     * Repository version that deleted the slot.
+     *
+     * @param slot slot below the published size.
+     * @return version or 0 if the slot is not deleted.
+     */
+    long deletedVersion(int slot);
+
+    /**
+     * Mark slot deleted from a repository version on.
+     *
+     * @param slot    slot to mark.
+     * @param version repository version of the delete, 0 to clear the mark.
+     */
+    void setDeletedVersion(int slot, long version);
+
+    /**
+     * Repository version from which a deleted slot is no longer kept as deleted.
+     *
+     * @param slot slot below the published size.
+     * @return version or 0 if the slot is not released.
+     */
+    long releasedVersion(int slot);
+
+    /**
+     * Mark deleted slot released from a repository version on.
+     *
+     * @param slot    slot to mark.
+     * @param version repository version of the restore or eviction.
+     */
+    void setReleasedVersion(int slot, long version);
+
+    /**
+     * Drop the record of a released slot to reclaim its memory. Only call once no reader
+     * can still see the slot, {@link #get(int)} returns null afterwards.
+     *
+     * @param slot released slot.
+     */
+    void purge(int slot);
+
+    /**
+     * Number of slots appended, only meaningful to the writing thread.
+     *
+     * @return number of slots.
+     */
+    int size();
+
+    /**
+     * Estimated heap bytes of the stored records and the per slot state, for monitoring.
+     * Other threads may read a slightly stale value.
+     *
+     * @return number of bytes.
+     */
+    long heapBytes();
+
+    /**
+     * Bytes of the records kept outside the heap, for monitoring.
+     * Other threads may read a slightly stale value.
+     *
+     * @return number of bytes, 0 if records are kept on the heap.
+     */
+    default long offHeapBytes() {
+        return 0;
+    }
+
+}
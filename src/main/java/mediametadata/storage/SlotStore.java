@@ -0,0 +1,126 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+import mediametadata.model.Movie;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link RecordStore} keeping {@link Media} objects on the heap, in fixed size chunks so growing never copies records.
+ */
+public class SlotStore implements RecordStore {
+
+    private static final int CHUNK_BITS = 14;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Bytes of the reference and versions of a slot.
+     */
+    private static final int SLOT_BYTES = 4 + 2 * Long.BYTES;
+
+    private volatile Media[][] media = new Media[0][];
+
+    /**
+     * Deleted version of every slot followed by its released version.
+     */
+    private volatile AtomicLongArray[] versions = new AtomicLongArray[0];
+
+    private int size;
+
+    private volatile long heapBytes;
+
+    @Override
+    public int append(Media newMedia) {
+        int slot = size;
+        int chunk = slot >>> CHUNK_BITS;
+        if (chunk == media.length) {
+            Media[][] grownMedia = Arrays.copyOf(media, chunk + 1);
+            AtomicLongArray[] grownVersions = Arrays.copyOf(versions, chunk + 1);
+            grownMedia[chunk] = new Media[CHUNK_SIZE];
+            grownVersions[chunk] = new AtomicLongArray(2 * CHUNK_SIZE);
+            media = grownMedia;
+            versions = grownVersions;
+        }
+        media[chunk][slot & CHUNK_MASK] = newMedia;
+        heapBytes += SLOT_BYTES + estimate(newMedia);
+        size = slot + 1;
+        return slot;
+    }
+
+    @Override
+    public Media get(int slot) {
+        return media[slot >>> CHUNK_BITS][slot & CHUNK_MASK];
+    }
+
+    @Override
+    public long deletedVersion(int slot) {
+        return versions[slot >>> CHUNK_BITS].get(2 * (slot & CHUNK_MASK));
+    }
+
+    @Override
+    public void setDeletedVersion(int slot, long version) {
+        versions[slot >>> CHUNK_BITS].set(2 * (slot & CHUNK_MASK), version);
+    }
+
+    @Override
+    public long releasedVersion(int slot) {
+        return versions[slot >>> CHUNK_BITS].get(2 * (slot & CHUNK_MASK) + 1);
+    }
+
+    @Override
+    public void setReleasedVersion(int slot, long version) {
+        versions[slot >>> CHUNK_BITS].set(2 * (slot & CHUNK_MASK) + 1, version);
+    }
+
+    @Override
+    public void purge(int slot) {
+        Media purged = get(slot);
+        if (purged != null) {
+            media[slot >>> CHUNK_BITS][slot & CHUNK_MASK] = null;
+            heapBytes -= estimate(purged);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long heapBytes() {
+        return heapBytes;
+    }
+
+    /**
+     * Estimate the heap bytes of {@link Media} with compressed references: the object with its
+     * fields, the {@link java.util.UUID}, the title and director as Latin-1 strings,
+     * the label ids and bitset and the release date.
+     *
+     * @param media {@link Media}.
+     * @return number of bytes.
+     */
+    private static long estimate(Media media) {
+        long bytes = 40 + 32 + string(media.getTitle());
+        if (media.getLabelIds() != null) {
+            bytes += align(16 + 4L * media.getLabelIds().length);
+        }
+        bytes += align(16 + 8L * media.getLabelSet().length);
+        if (media instanceof Movie movie) {
+            bytes += 8 + string(movie.getDirector()) + (movie.getReleaseDate() == null ? 0 : 24);
+        }
+        return bytes;
+    }
+
+    private static long string(String value) {
+        return value == null ? 0 : 24 + align(16 + value.length());
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+}
@@ -0,0 +1,209 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of the stored and deleted slots of the repository, named after the first
+ * {@link WriteAheadLog} segment it does not cover.
+ * <p>
+ * A snapshot holds the slots in order with their deleted mark and the length of their
+ * {@link MediaCodec} record, followed by the deleted slots in deletion order with the time of
+ * their delete, and ends with a CRC32C checksum of its content. Slots that are neither stored
+ * nor deleted are left out and the rest are numbered without gaps. It is written to a temporary file, synced and then renamed,
+ * so a snapshot file is either complete or missing.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x4d4d534e;
+
+    private static final int FORMAT = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Receives the content of a snapshot.
+     */
+    public interface Loader {
+
+        /**
+         * Next slot.
+         *
+         * @param media   {@link Media} at the slot.
+         * @param deleted true if the {@link Media} was deleted.
+         */
+        void slot(Media media, boolean deleted);
+
+        /**
+         * Next slot in deletion order, after every slot was loaded.
+         *
+         * @param slot      deleted slot.
+         * @param deletedAt time of the delete in milliseconds since the epoch.
+         */
+        void deleted(int slot, long deletedAt);
+
+    }
+
+    /**
+     * Write a snapshot and delete the snapshots it replaces.
+     *
+     * @param directory     directory of the snapshot files.
+     * @param segment       first segment the snapshot does not cover.
+     * @param size          number of slots.
+     * @param media         {@link Media} at a slot.
+     * @param stored        check if a slot is stored.
+     * @param deleted       check if a slot is deleted.
+     * @param deletedCount  number of deleted slots.
+     * @param deletionOrder slot of the nth delete.
+     * @param deletedAt     time of the nth delete in milliseconds since the epoch.
+     * @throws IOException if the snapshot cannot be written.
+     */
+    public static void write(Path directory, long segment, int size, IntFunction<Media> media,
+                             IntPredicate stored, IntPredicate deleted, int deletedCount,
+                             IntUnaryOperator deletionOrder, IntToLongFunction deletedAt) throws IOException {
+        Path file = snapshotFile(directory, segment);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int[] written = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < size; slot++) {
+            written[slot] = stored.test(slot) || deleted.test(slot) ? count++ : -1;
+        }
+        try (OutputStream fileOut = Files.newOutputStream(temporary)) {
+            BufferedOutputStream buffered = new BufferedOutputStream(fileOut, BUFFER_SIZE);
+            CheckedOutputStream checked = new CheckedOutputStream(buffered, new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(count);
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream recordOut = new DataOutputStream(record);
+            for (int slot = 0; slot < size; slot++) {
+                if (written[slot] < 0) {
+                    continue;
+                }
+                record.reset();
+                MediaCodec.write(recordOut, media.apply(slot));
+                out.writeBoolean(deleted.test(slot));
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+            out.writeInt(deletedCount);
+            for (int i = 0; i < deletedCount; i++) {
+                out.writeInt(written[deletionOrder.applyAsInt(i)]);
+                out.writeLong(deletedAt.applyAsLong(i));
+            }
+            new DataOutputStream(buffered).writeInt((int) checked.getChecksum().getValue());
+            buffered.flush();
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        for (long old : snapshots(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(snapshotFile(directory, old));
+            }
+        }
+    }
+
+    /**
+     * Find the latest snapshot.
+     *
+     * @param directory directory of the snapshot files.
+     * @return first segment the latest snapshot does not cover, empty if there is no snapshot.
+     * @throws IOException if the directory cannot be listed.
+     */
+    public static OptionalLong latest(Path directory) throws IOException {
+        List<Long> snapshots = snapshots(directory);
+        return snapshots.isEmpty() ? OptionalLong.empty() : OptionalLong.of(snapshots.get(snapshots.size() - 1));
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param directory directory of the snapshot files.
+     * @param segment   segment the snapshot is named after.
+     * @param loader    receiver of the content.
+     * @throws IOException if the snapshot cannot be read or its checksum does not match.
+     */
+    public static void read(Path directory, long segment, Loader loader) throws IOException {
+        Path file = snapshotFile(directory, segment);
+        try (InputStream fileIn = Files.newInputStream(file)) {
+            BufferedInputStream buffered = new BufferedInputStream(fileIn, BUFFER_SIZE);
+            CheckedInputStream checked = new CheckedInputStream(buffered, new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException("Not a snapshot " + file);
+            }
+            int size = in.readInt();
+            byte[] record = new byte[256];
+            for (int slot = 0; slot < size; slot++) {
+                boolean deleted = in.readBoolean();
+                int length = in.readInt();
+                if (length > record.length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                in.readFully(record, 0, length);
+                loader.slot(MediaCodec.read(ByteBuffer.wrap(record, 0, length)), deleted);
+            }
+            int deletedCount = in.readInt();
+            for (int i = 0; i < deletedCount; i++) {
+                loader.deleted(in.readInt(), in.readLong());
+            }
+            int checksum = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(buffered).readInt() != checksum) {
+                throw new IOException("Checksum mismatch in " + file);
+            }
+        }
+    }
+
+    private static Path snapshotFile(Path directory, long segment) {
+        return directory.resolve(String.format("snapshot-%016d.bin", segment));
+    }
+
+    /**
+     * Segments the snapshot files in directory are named after, in ascending order.
+     *
+     * @param directory directory of the snapshot files.
+     * @return segment numbers.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static List<Long> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("snapshot-\\d{16}\\.bin"))
+                    .map(name -> Long.parseLong(name.substring(9, 25)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+package mediametadata.storage;
+
+import mediametadata.model.Media;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of the adds, deletes, restores and evictions of the repository, split into numbered segment files.
+ * <p>
+ * Every record is framed by its length and a CRC32C checksum, so a record torn by a crash is
+ * recognised on replay and cut off. Appending only hands the records to the file system,
+ * {@link #sync(long)} makes them durable. Writers that sync at the same time share one fsync:
+ * whoever syncs first covers every record appended before it started, the others return
+ * without syncing again.
+ * <p>
+ * One thread at a time may append or roll while any number of threads sync.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final byte ADD = 1;
+
+    private static final byte DELETE = 2;
+
+    private static final byte RESTORE = 3;
+
+    private static final byte EVICT = 4;
+
+    private static final int HEADER_LENGTH = 2 * Integer.BYTES;
+
+    private final Path directory;
+
+    private final RecordBuffer records = new RecordBuffer();
+
+    private final DataOutputStream recordsOut = new DataOutputStream(records);
+
+    /**
+     * Guards syncing and swapping the channel. A lock rather than a monitor, so virtual threads
+     * waiting for a shared fsync do not pin their carriers.
+     */
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private FileChannel channel;
+
+    private long segment;
+
+    /**
+     * Bytes appended over all segments, the position {@link #sync(long)} is given.
+     */
+    private volatile long appended;
+
+    private long synced;
+
+    /**
+     * Open the log in directory, appending to the latest segment.
+     * Call {@link #replay(long, Replay)} first, it cuts off a torn tail before it is appended to.
+     *
+     * @param directory directory of the segment files, created if missing.
+     * @throws IOException if the directory or segment cannot be opened.
+     */
+    public WriteAheadLog(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        List<Long> segments = segments(directory);
+        segment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        channel = open(segment);
+    }
+
+    /**
+     * Receives the records of the log in the order they were appended.
+     */
+    public interface Replay {
+
+        /**
+         * {@link Media} was stored.
+         *
+         * @param media stored {@link Media}.
+         */
+        void add(Media media);
+
+        /**
+         * {@link Media} was deleted.
+         *
+         * @param id        {@link UUID} of the deleted {@link Media}.
+         * @param deletedAt time of the delete in milliseconds since the epoch.
+         */
+        void delete(UUID id, long deletedAt);
+
+        /**
+         * Deleted {@link Media} was restored.
+         *
+         * @param id {@link UUID} of the restored {@link Media}.
+         */
+        void restore(UUID id);
+
+        /**
+         * Deleted {@link Media} was evicted.
+         *
+         * @param id {@link UUID} of the evicted {@link Media}.
+         */
+        void evict(UUID id);
+
+    }
+
+    /**
+     * Replay every record of the segments from a segment on. A torn record at the end of the
+     * latest segment is cut off, a broken record anywhere else fails the replay.
+     *
+     * @param fromSegment first segment to replay, earlier segments are covered by a snapshot.
+     * @param replay      receiver of the records.
+     * @return number of records replayed.
+     * @throws IOException if a segment cannot be read or is broken before its end.
+     */
+    public long replay(long fromSegment, Replay replay) throws IOException {
+        long count = 0;
+        for (long replayed : segments(directory)) {
+            if (replayed < fromSegment) {
+                continue;
+            }
+            Path file = segmentFile(replayed);
+            long valid = 0;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                CRC32C crc = new CRC32C();
+                byte[] record = new byte[256];
+                while (true) {
+                    int length;
+                    int checksum;
+                    try {
+                        length = in.readInt();
+                        checksum = in.readInt();
+                        if (length < 1) {
+                            break;
+                        }
+                        if (length > record.length) {
+                            record = new byte[Math.max(length, record.length * 2)];
+                        }
+                        in.readFully(record, 0, length);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(record, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    ByteBuffer recordIn = ByteBuffer.wrap(record, 1, length - 1);
+                    if (record[0] == ADD) {
+                        replay.add(MediaCodec.read(recordIn));
+                    } else if (record[0] == DELETE) {
+                        replay.delete(new UUID(recordIn.getLong(), recordIn.getLong()), recordIn.getLong());
+                    } else if (record[0] == RESTORE) {
+                        replay.restore(new UUID(recordIn.getLong(), recordIn.getLong()));
+                    } else if (record[0] == EVICT) {
+                        replay.evict(new UUID(recordIn.getLong(), recordIn.getLong()));
+                    } else {
+                        break;
+                    }
+                    valid += HEADER_LENGTH + length;
+                    count++;
+                }
+            }
+            long size = Files.size(file);
+            if (valid < size) {
+                if (replayed != segment) {
+                    throw new IOException("Broken record at " + valid + " of " + file);
+                }
+                channel.truncate(valid);
+                channel.position(valid);
+            }
+        }
+        appended = synced = channel.position();
+        return count;
+    }
+
+    /**
+     * Append the add of {@link Media}, written by the next {@link #flush()}.
+     *
+     * @param media stored {@link Media}.
+     * @throws IOException if encoding fails.
+     */
+    public void add(Media media) throws IOException {
+        int start = startRecord(ADD);
+        MediaCodec.write(recordsOut, media);
+        endRecord(start);
+    }
+
+    /**
+     * Append the delete of {@link Media}, written by the next {@link #flush()}.
+     *
+     * @param id        {@link UUID} of the deleted {@link Media}.
+     * @param deletedAt time of the delete in milliseconds since the epoch.
+     * @throws IOException if encoding fails.
+     */
+    public void delete(UUID id, long deletedAt) throws IOException {
+        int start = startRecord(DELETE);
+        writeId(id);
+        recordsOut.writeLong(deletedAt);
+        endRecord(start);
+    }
+
+    /**
+     * Append the restore of deleted {@link Media}, written by the next {@link #flush()}.
+     *
+     * @param id {@link UUID} of the restored {@link Media}.
+     * @throws IOException if encoding fails.
+     */
+    public void restore(UUID id) throws IOException {
+        int start = startRecord(RESTORE);
+        writeId(id);
+        endRecord(start);
+    }
+
+    /**
+     * Append the eviction of deleted {@link Media}, written by the next {@link #flush()}.
+     *
+     * @param id {@link UUID} of the evicted {@link Media}.
+     * @throws IOException if encoding fails.
+     */
+    public void evict(UUID id) throws IOException {
+        int start = startRecord(EVICT);
+        writeId(id);
+        endRecord(start);
+    }
+
+    /**
+     * Write the appended records to the current segment without syncing. If writing fails, the
+     * segment is cut back to where it ended and the records are dropped.
+     *
+     * @return position to pass to {@link #sync(long)} to make the records durable.
+     * @throws IOException if writing fails.
+     */
+    public long flush() throws IOException {
+        if (records.size() > 0) {
+            long end = channel.position();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(records.bytes(), 0, records.size());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                records.reset();
+                try {
+                    channel.truncate(end);
+                    channel.position(end);
+                } catch (IOException truncate) {
+                    e.addSuppressed(truncate);
+                }
+                throw e;
+            }
+            appended += records.size();
+            records.reset();
+        }
+        return appended;
+    }
+
+    /**
+     * Drop the records appended since the last {@link #flush()}, for a write that failed before it was flushed.
+     */
+    public void discard() {
+        records.reset();
+    }
+
+    /**
+     * Make every record up to position durable, sharing the fsync with concurrent callers.
+     *
+     * @param position position returned by {@link #flush()}.
+     * @throws IOException if syncing fails.
+     */
+    public void sync(long position) throws IOException {
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                return;
+            }
+            long target = appended;
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Sync and close the current segment and continue in a new one.
+     *
+     * @return number of the new segment, every earlier record is in an earlier segment.
+     * @throws IOException if the current segment cannot be synced or the new one opened.
+     */
+    public long roll() throws IOException {
+        flush();
+        syncLock.lock();
+        try {
+            channel.force(false);
+            synced = appended;
+            channel.close();
+            segment++;
+            channel = open(segment);
+        } finally {
+            syncLock.unlock();
+        }
+        return segment;
+    }
+
+    /**
+     * Delete the segments before a segment, once a snapshot covers them.
+     *
+     * @param segment first segment to keep.
+     * @throws IOException if a segment cannot be deleted.
+     */
+    public void deleteBefore(long segment) throws IOException {
+        for (long old : segments(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(segmentFile(old));
+            }
+        }
+    }
+
+    /**
+     * Sync and close the current segment.
+     *
+     * @throws IOException if syncing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        syncLock.lock();
+        try {
+            channel.force(false);
+            synced = appended;
+            channel.close();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private int startRecord(byte type) throws IOException {
+        int start = records.size();
+        recordsOut.writeLong(0);
+        recordsOut.writeByte(type);
+        return start;
+    }
+
+    private void writeId(UUID id) throws IOException {
+        recordsOut.writeLong(id.getMostSignificantBits());
+        recordsOut.writeLong(id.getLeastSignificantBits());
+    }
+
+    /**
+     * Fill in the length and checksum of the record started at start.
+     *
+     * @param start offset of the record in the pending records.
+     */
+    private void endRecord(int start) {
+        byte[] bytes = records.bytes();
+        int length = records.size() - start - HEADER_LENGTH;
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, start + HEADER_LENGTH, length);
+        ByteBuffer.wrap(bytes, start, HEADER_LENGTH).putInt(length).putInt((int) crc.getValue());
+    }
+
+    private FileChannel open(long segment) throws IOException {
+        FileChannel opened = FileChannel.open(segmentFile(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        opened.position(opened.size());
+        return opened;
+    }
+
+    private Path segmentFile(long segment) {
+        return directory.resolve(String.format("wal-%016d.log", segment));
+    }
+
+    /**
+     * Numbers of the segment files in directory, in ascending order.
+     *
+     * @param directory directory of the segment files.
+     * @return segment numbers.
+     * @throws IOException if the directory cannot be listed.
+     */
+    private static List<Long> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.matches("wal-\\d{16}\\.log"))
+                    .map(name -> Long.parseLong(name.substring(4, 20)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Pending records, patched in place once a record is complete.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        byte[] bytes() {
+            return buf;
+        }
+
+    }
+
+}
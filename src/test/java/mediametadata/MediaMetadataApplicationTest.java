@@ -1,6 +1,8 @@
 package mediametadata;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import mediametadata.controller.Facets;
 import mediametadata.controller.MediaRepository;
 import mediametadata.model.Media;
 import mediametadata.model.MediaType;
@@ -9,6 +11,7 @@ import mediametadata.model.Series;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.restdocs.RestDocumentationContextProvider;
@@ -17,23 +20,31 @@ import org.springframework.restdocs.mockmvc.MockMvcRestDocumentation;
 import org.springframework.restdocs.mockmvc.RestDocumentationRequestBuilders;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
 import static org.springframework.restdocs.operation.preprocess.Preprocessors.prettyPrint;
 import static org.springframework.restdocs.payload.PayloadDocumentation.fieldWithPath;
 import static org.springframework.restdocs.payload.PayloadDocumentation.responseFields;
+import static org.springframework.restdocs.payload.PayloadDocumentation.subsectionWithPath;
 import static org.springframework.restdocs.request.RequestDocumentation.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -43,6 +54,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @ExtendWith({RestDocumentationExtension.class, SpringExtension.class})
 @SpringBootTest
 @AutoConfigureRestDocs(outputDir = "target/generated-snippets")
+@AutoConfigureMetrics
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class MediaMetadataApplicationTest {
 
@@ -292,4 +304,351 @@ public class MediaMetadataApplicationTest {
                 .andDo(MockMvcRestDocumentation.document("delete-media", pathParameters(
                         parameterWithName("id").description("UUID of media object"))));
     }
+
+    /**
+     * Get {@link Media} object by Id after it has been deleted.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(10)
+    public void testGetByIdNotFound() throws Exception {
+        mockMvc.perform(get("/media/{id}", "e407def8-395e-4590-8984-6af13a6a5c8f")
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    /**
+     * POST {@link Series} with a title that is already stored returns the stored {@link Series}.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(11)
+    public void testPostDuplicateTitle() throws Exception {
+        mockMvc.perform(post("/series")
+                        .content("{\"id\": \"e207def8-395e-4590-8984-6af13a6a5c8f\"," +
+                                "\"title\": \"Daredevil\", \"labels\": [], \"numberOfEpisodes\": 13}")
+                        .contentType("application/json"))
+                .andExpectAll(jsonPath("$.id", is("e307def8-395e-4590-8984-6af13a6a5c8f")),
+                        jsonPath("$.numberOfEpisodes", is(30)));
+    }
+
+    /**
+     * Get a page of {@link Media} objects.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(12)
+    public void testGetAllPage() throws Exception {
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media?limit=1")
+                        .contentType("application/json"))
+                .andDo(MockMvcRestDocumentation.document("get-all-page", requestParameters(
+                        parameterWithName("limit").description("Maximum number of media on the page."))))
+                .andExpectAll(jsonPath("$.items[0].id", is("e307def8-395e-4590-8984-6af13a6a5c8f")),
+                        jsonPath("$.items[0].title", is("Daredevil")),
+                        jsonPath("$.nextCursor").doesNotExist());
+        mockMvc.perform(get("/media/movies?cursor=invalid"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    /**
+     * POST newline-delimited {@link Media} JSON to store in repository.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(13)
+    public void testPostBulk() throws Exception {
+        mockMvc.perform(post("/media/bulk")
+                        .content("{\"id\": \"e507def8-395e-4590-8984-6af13a6a5c8f\", \"title\": \"Hulk\", " +
+                                "\"labels\": [\"Comics\"], \"director\": \"Ang Lee\", \"releaseDate\": 2003}\n" +
+                                "\n" +
+                                "{\"title\": \"Daredevil\", \"labels\": [], \"numberOfEpisodes\": 13}\n" +
+                                "{\"title\": \n")
+                        .contentType("application/x-ndjson"))
+                .andDo(document("post-bulk",
+                        responseFields(
+                                fieldWithPath("added").description("Number of lines stored as new media."),
+                                fieldWithPath("duplicates").description("Number of lines whose id or title was already stored."),
+                                fieldWithPath("failed").description("Number of lines that could not be parsed."),
+                                fieldWithPath("lines[].line").description("Line number."),
+                                fieldWithPath("lines[].status").description("ADDED, DUPLICATE or FAILED."),
+                                fieldWithPath("lines[].id").optional().description("UUID of the stored media."),
+                                fieldWithPath("lines[].error").optional().description("Reason the line failed."))))
+                .andExpectAll(jsonPath("$.added", is(1)),
+                        jsonPath("$.duplicates", is(1)),
+                        jsonPath("$.failed", is(1)),
+                        jsonPath("$.lines[0].id", is("e507def8-395e-4590-8984-6af13a6a5c8f")),
+                        jsonPath("$.lines[1].line", is(3)),
+                        jsonPath("$.lines[1].id", is("e307def8-395e-4590-8984-6af13a6a5c8f")),
+                        jsonPath("$.lines[2].status", is("FAILED")));
+    }
+
+    /**
+     * Restore deleted {@link Media}, which cannot be restored twice.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(14)
+    public void testRestore() throws Exception {
+        mockMvc.perform(RestDocumentationRequestBuilders.post("/media/{id}/restore",
+                        "e407def8-395e-4590-8984-6af13a6a5c8f"))
+                .andDo(MockMvcRestDocumentation.document("restore-media", pathParameters(
+                        parameterWithName("id").description("UUID of deleted media object"))))
+                .andExpectAll(jsonPath("$.id", is("e407def8-395e-4590-8984-6af13a6a5c8f")),
+                        jsonPath("$.title", is("Spiderman")));
+        mockMvc.perform(post("/media/{id}/restore", "e407def8-395e-4590-8984-6af13a6a5c8f"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(get("/media/{id}", "e407def8-395e-4590-8984-6af13a6a5c8f"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    /**
+     * GET with the ETag of the previous response is not modified until media of the listing change.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(15)
+    public void testConditionalGet() throws Exception {
+        String movies = mockMvc.perform(get("/media/movies"))
+                .andExpect(MockMvcResultMatchers.header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        String body = mockMvc.perform(get("/media/movies"))
+                .andExpect(MockMvcResultMatchers.header().string("ETag", movies))
+                .andReturn().getResponse().getContentAsString();
+        mockMvc.perform(get("/media/movies").header("If-None-Match", movies))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        String id = mockMvc.perform(get("/media/series?limit=1"))
+                .andReturn().getResponse().getContentAsString().replaceAll(".*\"id\":\"([^\"]+)\".*", "$1");
+        String record = mockMvc.perform(get("/media/{id}", id))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(get("/media/{id}", id).header("If-None-Match", record))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        mockMvc.perform(post("/series")
+                        .content("{\"title\": \"Moon Knight\", \"labels\": [\"Comics\"], \"numberOfEpisodes\": 6}")
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(get("/media/movies").header("If-None-Match", movies))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+        mockMvc.perform(get("/media").header("If-None-Match", movies))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(post("/movie")
+                        .content("{\"title\": \"Eternals\", \"labels\": [\"Comics\"], \"director\": \"Chloe Zhao\", \"releaseDate\": 2021}")
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(get("/media/movies").header("If-None-Match", movies))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("ETag", not(movies)))
+                .andExpect(MockMvcResultMatchers.content().string(not(body)));
+    }
+
+    /**
+     * Repository metrics are exposed in Prometheus format.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(16)
+    public void testPrometheusMetrics() throws Exception {
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string(containsString(
+                        "media_repository_operations_seconds_bucket{operation=\"findById\"")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString(
+                        "media_repository_records{type=\"MOVIE\",}")))
+                .andExpect(MockMvcResultMatchers.content().string(containsString(
+                        "media_repository_parse_failures_total")));
+    }
+
+    /**
+     * Listings requested as NDJSON or Server-Sent Events are streamed one {@link Media} at a time,
+     * matching the JSON listing.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(17)
+    public void testStreaming() throws Exception {
+        List<Media> movies = objectMapper.readValue(mockMvc.perform(get("/media/movies"))
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        MvcResult ndjson = mockMvc.perform(get("/media/movies").accept("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        ndjson.getAsyncResult();
+        String[] lines = ndjson.getResponse().getContentAsString().split("\n");
+        Assertions.assertEquals(movies.size(), lines.length);
+        for (int i = 0; i < lines.length; i++) {
+            Assertions.assertEquals(movies.get(i).getId(), objectMapper.readValue(lines[i], Media.class).getId());
+        }
+        MvcResult events = mockMvc.perform(get("/media/movies").accept("text/event-stream"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        events.getAsyncResult();
+        Assertions.assertEquals(movies.size(), events.getResponse().getContentAsString().split("data:", -1).length - 1);
+        MvcResult preferred = mockMvc.perform(get("/media/movies")
+                        .header("Accept", "application/x-ndjson, text/event-stream;q=0.1"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        preferred.getAsyncResult();
+        Assertions.assertEquals(String.join("\n", lines), preferred.getResponse().getContentAsString().strip());
+        mockMvc.perform(get("/media/movies").accept("*/*"))
+                .andExpect(MockMvcResultMatchers.content().contentType("application/json"));
+        mockMvc.perform(get("/media/related/{id}", UUID.randomUUID()).accept("application/x-ndjson"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    /**
+     * Fuzzy search finds misspelt titles, closest first.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(18)
+    public void testSearch() throws Exception {
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media/search?q={q}&k={k}", "spidrman", 2))
+                .andDo(MockMvcRestDocumentation.document("search-media", requestParameters(
+                        parameterWithName("q").description("Title to search for, typos allowed"),
+                        parameterWithName("k").description("Number of results, 10 by default"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$[0].media.title", is("Spiderman")))
+                .andExpect(jsonPath("$[0].score", isA(Double.class)));
+        mockMvc.perform(get("/media/search?q=Dardevil"))
+                .andExpect(jsonPath("$[0].media.title", is("Daredevil")));
+        mockMvc.perform(get("/media/search?q=Spiderman&k=0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+    /**
+     * Movies are found by a range of release years and series by a range of episodes, in value order and paged.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(19)
+    public void testRangeQueries() throws Exception {
+        mockMvc.perform(post("/movie")
+                        .content("{\"title\": \"Shang-Chi\", \"labels\": [\"Comics\"], \"director\": \"Destin Daniel Cretton\", \"releaseDate\": \"2021\"}")
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media/movies?yearFrom={yearFrom}&yearTo={yearTo}", 2020, 2022))
+                .andDo(MockMvcRestDocumentation.document("movies-by-year", requestParameters(
+                        parameterWithName("yearFrom").description("First release year, unbounded if left out"),
+                        parameterWithName("yearTo").description("Last release year, unbounded if left out"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$[*].title", contains("Shang-Chi")));
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media/series?minEpisodes={minEpisodes}&maxEpisodes={maxEpisodes}&limit={limit}", 1, 6, 1))
+                .andDo(MockMvcRestDocumentation.document("series-by-episodes", requestParameters(
+                        parameterWithName("minEpisodes").description("Fewest episodes, unbounded if left out"),
+                        parameterWithName("maxEpisodes").description("Most episodes, unbounded if left out"),
+                        parameterWithName("limit").description("Optional page size"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.items[0].title", is("Moon Knight")))
+                .andExpect(jsonPath("$.items[0].numberOfEpisodes", is(6)));
+        mockMvc.perform(get("/media/series?minEpisodes=1&limit=0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    /**
+     * Facets count the stored media by type, label and release decade, optionally filtered.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(20)
+    public void testFacets() throws Exception {
+        Facets all = objectMapper.readValue(mockMvc.perform(get("/media/facets"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getContentAsString(), Facets.class);
+        List<Media> media = objectMapper.readValue(mockMvc.perform(get("/media"))
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        Assertions.assertEquals(media.size(), all.count());
+        Assertions.assertEquals(media.stream().filter(next -> next instanceof Series).count(),
+                (long) all.types().get(MediaType.SERIES));
+        long comicSeries = media.stream()
+                .filter(next -> next instanceof Series && next.getLabels() != null && next.getLabels().contains("Comics"))
+                .count();
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media/facets?type={type}&label={label}", "SERIES", "Comics"))
+                .andDo(MockMvcRestDocumentation.document("media-facets", requestParameters(
+                        parameterWithName("type").description("Optional MOVIE or SERIES to count, ALL by default"),
+                        parameterWithName("label").description("Optional genre label the counted media carry"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.count", is((int) comicSeries)))
+                .andExpect(jsonPath("$.types.MOVIE", is(0)));
+    }
+
+    /**
+     * A batch get resolves many ids in one request, listing the ids it could not find.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(21)
+    public void testBatchGet() throws Exception {
+        List<Media> media = objectMapper.readValue(mockMvc.perform(get("/media"))
+                .andReturn().getResponse().getContentAsString(), new TypeReference<>() {
+        });
+        String unknown = UUID.randomUUID().toString();
+        mockMvc.perform(RestDocumentationRequestBuilders.post("/media/batch-get")
+                        .content("[\"" + media.get(1).getId() + "\", \"" + unknown + "\", \"" + media.get(0).getId() + "\"]")
+                        .contentType("application/json"))
+                .andDo(MockMvcRestDocumentation.document("batch-get-media", responseFields(
+                        subsectionWithPath("found").description("Media stored under the ids, in the order of the ids"),
+                        fieldWithPath("missing").description("Ids under which no media is stored"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.found[*].id", contains(media.get(1).getId().toString(), media.get(0).getId().toString())))
+                .andExpect(jsonPath("$.missing", contains(unknown)));
+        mockMvc.perform(post("/media/batch-get")
+                        .content(objectMapper.writeValueAsString(Collections.nCopies(1001, unknown)))
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    /**
+     * Get {@link Media} with the most similar labels, estimated by MinHash.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(22)
+    public void testGetSimilar() throws Exception {
+        mockMvc.perform(RestDocumentationRequestBuilders.get("/media/related/{id}",
+                                "e307def8-395e-4590-8984-6af13a6a5c8f")
+                        .param("approximate", "true")
+                        .param("limit", "100"))
+                .andDo(MockMvcRestDocumentation.document("get-similar",
+                        pathParameters(parameterWithName("id").description("UUID of media object")),
+                        requestParameters(
+                                parameterWithName("approximate").description("Rank by the estimated Jaccard index of the labels"),
+                                parameterWithName("limit").description("Optional maximum number of media, 10 by default"))))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$[*].id", hasItem("e307def8-395e-4590-8984-6af13a6a5c8f")));
+        mockMvc.perform(get("/media/related/{id}", "e307def8-395e-4590-8984-6af13a6a5c8f")
+                        .param("approximate", "true")
+                        .param("limit", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)));
+    }
+
+    /**
+     * POST {@link Series} with a null id stores it under a random id.
+     *
+     * @throws Exception
+     */
+    @Test
+    @Order(23)
+    public void testPostNullId() throws Exception {
+        mockMvc.perform(post("/series")
+                        .content("{\"id\": null, \"title\": \"Alias\", \"labels\": [], \"numberOfEpisodes\": 105}")
+                        .contentType("application/json"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpectAll(jsonPath("$.id", notNullValue()),
+                        jsonPath("$.title", is("Alias")));
+    }
+
 }
@@ -0,0 +1,40 @@
+package mediametadata;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VirtualThreadCustomizerTest {
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withUserConfiguration(VirtualThreadCustomizer.class);
+
+    /**
+     * The customizer is only created when media.web.virtual-threads is true.
+     */
+    @Test
+    public void testOnlyCreatedWhenEnabled() {
+        contextRunner.run(context ->
+                assertTrue(context.getBeansOfType(VirtualThreadCustomizer.class).isEmpty()));
+        contextRunner.withPropertyValues("media.web.virtual-threads=false").run(context ->
+                assertTrue(context.getBeansOfType(VirtualThreadCustomizer.class).isEmpty()));
+        contextRunner.withPropertyValues("media.web.virtual-threads=true").run(context ->
+                assertEquals(1, context.getBeansOfType(VirtualThreadCustomizer.class).size()));
+    }
+
+    /**
+     * The connectors get the virtual thread executor on Java 21 or later and keep the worker pool before.
+     */
+    @Test
+    public void testCustomizesConnectorsOnlyWithVirtualThreads() {
+        VirtualThreadCustomizer customizer = new VirtualThreadCustomizer();
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory();
+        customizer.customize(factory);
+        assertEquals(Runtime.version().feature() >= 21 ? 1 : 0, factory.getTomcatProtocolHandlerCustomizers().size());
+        customizer.destroy();
+    }
+
+}
@@ -0,0 +1,961 @@
+package mediametadata.controller;
+
+import mediametadata.model.Media;
+import mediametadata.model.MediaType;
+import mediametadata.model.Movie;
+import mediametadata.model.Series;
+import mediametadata.storage.OffHeapSlotStore;
+import mediametadata.storage.RecordStorage;
+import mediametadata.storage.WriteAheadLog;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MediaRepositoryTest {
+
+    private MediaRepository mediaRepository;
+
+    @BeforeEach
+    public void setUp() {
+        mediaRepository = new MediaRepository();
+    }
+
+    private Media addSeries(String title, String... labels) {
+        return mediaRepository.addMedia("{\"id\": \"" + UUID.randomUUID() + "\"," +
+                "\"title\": \"" + title + "\"," +
+                "\"labels\": [" + (labels.length == 0 ? "" : "\"" + String.join("\", \"", labels) + "\"") + "]," +
+                "\"numberOfEpisodes\": 10}");
+    }
+
+    /**
+     * Title search through the trigram index matches {@link String#contains} on every title.
+     */
+    @Test
+    public void testFindByCharactersMatchesContains() {
+        Random random = new Random(42);
+        String alphabet = "abAB c";
+        for (int i = 0; i < 500; i++) {
+            StringBuilder title = new StringBuilder("t" + i);
+            for (int j = 0; j < 12; j++) {
+                title.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            addSeries(title.toString());
+        }
+        for (int i = 0; i < 100; i += 3) {
+            mediaRepository.deleteMedia(new ArrayList<>(mediaRepository.findAll(MediaType.ALL)).get(i).getId().toString());
+        }
+        List<Media> all = new ArrayList<>(mediaRepository.findAll(MediaType.ALL));
+        for (int i = 0; i < 200; i++) {
+            StringBuilder query = new StringBuilder();
+            for (int j = 0, length = 1 + random.nextInt(5); j < length; j++) {
+                query.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String characters = query.toString();
+            assertEquals(all.stream().filter(x -> x.getTitle().contains(characters)).collect(Collectors.toList()),
+                    mediaRepository.findByCharacters(characters));
+            assertEquals(all.stream().filter(x -> x.getTitle().toLowerCase().contains(characters.toLowerCase()))
+                            .collect(Collectors.toList()),
+                    mediaRepository.findByCharacters(characters, true));
+        }
+    }
+
+    /**
+     * Related {@link Media} are ranked by shared labels, ties in insertion order, and cut at the limit.
+     */
+    @Test
+    public void testFindByLabelRanksBySharedLabels() {
+        Random random = new Random(7);
+        String[] genres = {"drama", "comedy", "comics", "crime", "sci-fi", "horror"};
+        for (int i = 0; i < 300; i++) {
+            List<String> labels = new ArrayList<>();
+            for (String genre : genres) {
+                if (random.nextInt(3) == 0 || genre.equals("drama") && random.nextBoolean()) {
+                    labels.add(genre);
+                }
+            }
+            addSeries("t" + i, labels.toArray(new String[0]));
+        }
+        List<Media> all = new ArrayList<>(mediaRepository.findAll(MediaType.ALL));
+        for (int i = 0; i < 300; i += 17) {
+            Media source = all.get(i);
+            List<Media> expected = all.stream()
+                    .filter(m -> shared(source, m) > 0)
+                    .sorted(Comparator.comparingInt((Media m) -> -shared(source, m)))
+                    .collect(Collectors.toList());
+            all.forEach(m -> assertEquals(shared(source, m), source.sharedLabels(m)));
+            String id = source.getId().toString();
+            assertEquals(expected, mediaRepository.findByLabel(id));
+            assertEquals(expected.subList(0, Math.min(5, expected.size())), mediaRepository.findByLabel(id, 5));
+        }
+    }
+
+    /**
+     * Approximate related {@link Media} start with the same label set, only share labels, skip deleted
+     * {@link Media} and stop at the limit.
+     */
+    @Test
+    public void testFindSimilar() {
+        Random random = new Random(11);
+        String[] genres = {"drama", "comedy", "comics", "crime", "sci-fi", "horror"};
+        for (int i = 0; i < 300; i++) {
+            List<String> labels = new ArrayList<>();
+            for (String genre : genres) {
+                if (random.nextInt(3) == 0) {
+                    labels.add(genre);
+                }
+            }
+            addSeries("t" + i, labels.toArray(new String[0]));
+        }
+        List<Media> all = new ArrayList<>(mediaRepository.findAll(MediaType.ALL));
+        mediaRepository.deleteMedia(all.get(1).getId().toString());
+        List<Media> stored = new ArrayList<>(mediaRepository.findAll(MediaType.ALL));
+        for (int i = 0; i < 300; i += 13) {
+            Media source = all.get(i);
+            List<Media> similar = mediaRepository.findSimilar(source.getId().toString(), 50);
+            if (source.getLabels().isEmpty()) {
+                assertTrue(similar.isEmpty());
+                continue;
+            }
+            List<Media> same = stored.stream()
+                    .filter(m -> Set.copyOf(m.getLabels()).equals(Set.copyOf(source.getLabels())))
+                    .collect(Collectors.toList());
+            assertTrue(similar.size() <= 50);
+            assertEquals(same.subList(0, Math.min(50, same.size())), similar.subList(0, Math.min(50, same.size())));
+            similar.forEach(m -> assertTrue(shared(source, m) > 0));
+            assertFalse(similar.contains(all.get(1)));
+            assertEquals(similar.subList(0, Math.min(5, similar.size())), mediaRepository.findSimilar(source.getId().toString(), 5));
+        }
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.findSimilar(UUID.randomUUID().toString(), 5));
+    }
+
+    private static int shared(Media source, Media media) {
+        return (int) media.getLabels().stream().filter(source.getLabels()::contains).count();
+    }
+
+    /**
+     * Deserialised {@link Media} carry their {@link MediaType} and are listed in their partition.
+     */
+    @Test
+    public void testPartitionsByMediaType() {
+        Media movie = mediaRepository.addMedia("{\"title\": \"Spiderman\", \"labels\": [], " +
+                "\"director\": \"Sam Raimi\", \"releaseDate\": 2002}");
+        Media series = addSeries("Daredevil");
+        assertEquals(MediaType.MOVIE, movie.getMediaType());
+        assertEquals(MediaType.SERIES, series.getMediaType());
+        assertEquals(List.of(movie, series), new ArrayList<>(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(List.of(movie), new ArrayList<>(mediaRepository.findAll(MediaType.MOVIE)));
+        assertEquals(List.of(series), new ArrayList<>(mediaRepository.findAll(MediaType.SERIES)));
+
+        mediaRepository.deleteMedia(series.getId().toString());
+        assertEquals(List.of(movie), new ArrayList<>(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(List.of(), new ArrayList<>(mediaRepository.findAll(MediaType.SERIES)));
+        assertEquals(List.of(series), new ArrayList<>(mediaRepository.findDeleted(MediaType.SERIES)));
+        assertEquals(List.of(), new ArrayList<>(mediaRepository.findDeleted(MediaType.MOVIE)));
+    }
+
+    /**
+     * Concurrent writers lose no updates and every listing is one consistent snapshot.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentWritesAndSnapshotReads() throws Exception {
+        int writers = 4;
+        int perWriter = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < 2; r++) {
+            readers.add(executor.submit(() -> {
+                while (writing.get()) {
+                    Collection<Media> all = mediaRepository.findAll(MediaType.ALL);
+                    assertEquals(all.size(), all.stream().count());
+                    Collection<Media> deleted = mediaRepository.findDeleted(MediaType.ALL);
+                    assertEquals(deleted.size(), deleted.stream().count());
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writes.add(executor.submit(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    Media media = addSeries("w" + writer + "-" + i, "drama");
+                    if (i % 4 == 0) {
+                        mediaRepository.deleteMedia(media.getId().toString());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> write : writes) {
+            write.get();
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get();
+        }
+        executor.shutdown();
+        assertEquals(writers * perWriter * 3 / 4, mediaRepository.findAll(MediaType.ALL).size());
+        assertEquals(writers * perWriter / 4, mediaRepository.findDeleted(MediaType.SERIES).size());
+        assertEquals(writers * perWriter * 3 / 4, mediaRepository.findByLabel(
+                mediaRepository.findAll(MediaType.SERIES).iterator().next().getId().toString()).size());
+    }
+
+    /**
+     * Following the cursors lists every {@link Media} once, skipping {@link Media} deleted in between.
+     */
+    @Test
+    public void testFindAllPages() {
+        List<Media> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            added.add(addSeries("t" + i));
+        }
+        MediaPage first = mediaRepository.findAll(MediaType.SERIES, null, 4);
+        assertEquals(added.subList(0, 4), first.items());
+        mediaRepository.deleteMedia(added.get(5).getId().toString());
+        MediaPage second = mediaRepository.findAll(MediaType.SERIES, first.nextCursor(), 4);
+        assertEquals(List.of(added.get(4), added.get(6), added.get(7), added.get(8)), second.items());
+        MediaPage last = mediaRepository.findAll(MediaType.SERIES, second.nextCursor(), 4);
+        assertEquals(List.of(added.get(9)), last.items());
+        assertNull(last.nextCursor());
+        assertThrows(InvalidCursorException.class,
+                () -> mediaRepository.findAll(MediaType.MOVIE, first.nextCursor(), 4));
+        assertThrows(InvalidCursorException.class,
+                () -> mediaRepository.findDeleted(MediaType.ALL, "not-a-cursor", 4));
+        assertEquals(List.of(added.get(5)), mediaRepository.findDeleted(MediaType.ALL, null, 4).items());
+    }
+
+    /**
+     * The subtype is decided wherever director or numberOfEpisodes appear and unknown shapes are rejected.
+     */
+    @Test
+    public void testAddMediaDecidesTypeInAnyFieldOrder() {
+        Series series = (Series) mediaRepository.addMedia("{\"numberOfEpisodes\": 8, \"title\": \"Dark\", " +
+                "\"labels\": [\"sci-fi\"]}");
+        assertEquals(List.of("sci-fi"), series.getLabels());
+        Media repeated = addSeries("Repeated", "drama", "sci-fi", "drama");
+        assertEquals(List.of("drama", "sci-fi", "drama"), repeated.getLabels());
+        assertEquals(2, repeated.sharedLabels(repeated));
+        assertThrows(InvalidMediaException.class, () -> mediaRepository.addMedia("{\"title\": \"Fargo\", " +
+                "\"director\": \"Noah Hawley\", \"labels\": [], \"numberOfEpisodes\": 41}"));
+        assertThrows(InvalidMediaException.class, () -> mediaRepository.addMedia("{\"title\": \"Fargo\", " +
+                "\"numberOfEpisodes\": 41, \"labels\": [], \"director\": \"Noah Hawley\"}"));
+        Media movie = mediaRepository.addMedia("{\"labels\": [\"crime\"], \"director\": \"Coen\", " +
+                "\"releaseDate\": 1996, \"title\": \"Fargo (film)\"}");
+        assertInstanceOf(Movie.class, movie);
+        assertEquals("Fargo (film)", movie.getTitle());
+        assertThrows(InvalidMediaException.class, () -> mediaRepository.addMedia("{\"title\": \"Unknown\"}"));
+        assertThrows(InvalidMediaException.class, () -> mediaRepository.addMedia("[\"Unknown\"]"));
+        assertThrows(InvalidMediaException.class, () -> mediaRepository.addMedia("null"));
+    }
+
+    /**
+     * numberOfEpisodes makes {@link Media} a {@link Series} even with a director, in any field order,
+     * when unknown fields are ignored.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testNumberOfEpisodesDecidesOverDirector() throws IOException {
+        ObjectMapper mapper = new MediaRepository().objectMapper()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        for (String json : List.of("{\"director\": \"Noah Hawley\", \"title\": \"Fargo\", \"numberOfEpisodes\": 41}",
+                "{\"numberOfEpisodes\": 41, \"title\": \"Fargo\", \"director\": \"Noah Hawley\"}")) {
+            Series series = (Series) mapper.readValue(json, Media.class);
+            assertEquals("Fargo", series.getTitle());
+            assertEquals(41, series.getNumberOfEpisodes());
+        }
+        Movie movie = (Movie) mapper.readValue("{\"director\": \"Coen\", \"title\": \"Fargo\"}", Media.class);
+        assertEquals("Coen", movie.getDirector());
+    }
+
+    /**
+     * {@link Media} repeating the id or title of {@link Media} earlier in the same write are duplicates of it.
+     */
+    @Test
+    public void testAddMediaFindsDuplicatesWithinWrite() {
+        Media dark = new Series(UUID.randomUUID(), "Dark", List.of("sci-fi"), 26);
+        Media sameTitle = new Series(UUID.randomUUID(), "Dark", List.of("drama"), 10);
+        Media sameId = new Series(dark.getId(), "Darker", List.of("drama"), 10);
+        Media hulk = new Series(UUID.randomUUID(), "Hulk", List.of("comics"), 5);
+
+        assertEquals(List.of(dark, dark, dark, hulk), mediaRepository.addMedia(List.of(dark, sameTitle, sameId, hulk)));
+        assertEquals(List.of(dark.getId(), hulk.getId()), ids(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(List.of(), mediaRepository.findByCharacters("Darker"));
+    }
+
+    /**
+     * A restarted repository recovers stored and deleted {@link Media} from the snapshot and log,
+     * cutting off a torn record at the end of the log.
+     *
+     * @param directory persistence directory.
+     * @throws IOException
+     */
+    @Test
+    public void testRecoversFromSnapshotAndLog(@TempDir Path directory) throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setPersistenceDirectory(directory);
+        mediaRepository = new MediaRepository(properties);
+        Media spiderman = mediaRepository.addMedia("{\"title\": \"Spiderman\", \"labels\": [\"comics\"], " +
+                "\"director\": \"Sam Raimi\", \"releaseDate\": 2002}");
+        Media daredevil = addSeries("Daredevil", "comics");
+        Media dark = addSeries("Dark", "sci-fi");
+        mediaRepository.deleteMedia(dark.getId().toString());
+        mediaRepository.writeSnapshot();
+        Media darkAgain = addSeries("Dark", "sci-fi", "drama");
+        mediaRepository.deleteMedia(daredevil.getId().toString());
+        mediaRepository.close();
+        try (var segments = Files.list(directory)) {
+            Path latest = segments.filter(file -> file.toString().endsWith(".log")).max(Path::compareTo).orElseThrow();
+            Files.write(latest, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+        }
+
+        mediaRepository = new MediaRepository(properties);
+        assertEquals(List.of(spiderman.getId(), darkAgain.getId()), ids(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(List.of(dark.getId(), daredevil.getId()), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertEquals(List.of(darkAgain.getId()), ids(mediaRepository.findByCharacters("Dar")));
+        Movie recovered = (Movie) mediaRepository.findById(spiderman.getId().toString());
+        assertEquals("Sam Raimi", recovered.getDirector());
+        assertEquals(((Movie) spiderman).getReleaseDate(), recovered.getReleaseDate());
+        assertEquals(List.of(darkAgain.getId()), ids(mediaRepository.findByLabel(darkAgain.getId().toString(), 1)));
+        assertEquals(List.of(darkAgain.getId()), ids(mediaRepository.findSeriesByEpisodes(10, 10)));
+        assertEquals(2, mediaRepository.facets(MediaType.ALL, null).count());
+        assertEquals(darkAgain.getId(), addSeries("Dark").getId());
+        Media hulk = addSeries("Hulk");
+        mediaRepository.close();
+
+        mediaRepository = new MediaRepository(properties);
+        assertEquals(List.of(spiderman.getId(), darkAgain.getId(), hulk.getId()),
+                ids(mediaRepository.findAll(MediaType.ALL)));
+        mediaRepository.close();
+    }
+
+    /**
+     * Off-heap records decode into {@link Media} serialised exactly like the {@link Media} stored on the heap.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOffHeapStorageServesSameMedia() throws Exception {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setRecordStorage(RecordStorage.OFF_HEAP);
+        MediaRepository offHeap = new MediaRepository(properties);
+        List<String> media = List.of(
+                "{\"id\": \"e407def8-395e-4590-8984-6af13a6a5c8f\", \"title\": \"Spiderman\", " +
+                        "\"labels\": [\"Comics\", \"Action\"], \"director\": \"Sam Raimi\", \"releaseDate\": \"2002\"}",
+                "{\"id\": \"a1000000-0000-0000-0000-000000000001\", \"title\": \"Am\u00e9lie\", " +
+                        "\"labels\": [\"Comedy\", null], \"director\": null}",
+                "{\"id\": \"a1000000-0000-0000-0000-000000000002\", \"title\": \"Daredevil\", " +
+                        "\"labels\": [\"Comics\", \"Crime\"], \"numberOfEpisodes\": 39}",
+                "{\"id\": \"a1000000-0000-0000-0000-000000000003\", \"title\": null, " +
+                        "\"labels\": null, \"numberOfEpisodes\": -1}");
+        for (String json : media) {
+            assertEquals(mediaRepository.addMedia(json).getId(), offHeap.addMedia(json).getId());
+        }
+        String daredevil = mediaRepository.findByCharacters("Dare").get(0).getId().toString();
+        mediaRepository.deleteMedia(daredevil);
+        offHeap.deleteMedia(daredevil);
+        ObjectMapper objectMapper = mediaRepository.objectMapper();
+        assertEquals(objectMapper.writeValueAsString(mediaRepository.findAll(MediaType.ALL)),
+                objectMapper.writeValueAsString(offHeap.findAll(MediaType.ALL)));
+        assertEquals(objectMapper.writeValueAsString(mediaRepository.findDeleted(MediaType.SERIES)),
+                objectMapper.writeValueAsString(offHeap.findDeleted(MediaType.SERIES)));
+        assertEquals(objectMapper.writeValueAsString(mediaRepository.findByLabel("e407def8-395e-4590-8984-6af13a6a5c8f")),
+                objectMapper.writeValueAsString(offHeap.findByLabel("e407def8-395e-4590-8984-6af13a6a5c8f")));
+        assertEquals(ids(mediaRepository.findByCharacters("\u00e9")), ids(offHeap.findByCharacters("\u00e9")));
+    }
+
+    /**
+     * Deleted {@link Media} beyond the retained count are evicted, retained ones can be restored
+     * once, and compaction keeps every listing, cursor and index intact across a restart.
+     *
+     * @param directory persistence directory.
+     * @throws IOException
+     */
+    @Test
+    public void testRestoreRetentionAndCompaction(@TempDir Path directory) throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setPersistenceDirectory(directory);
+        properties.setDeletedMaxCount(2);
+        properties.setCompactionInterval(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        List<Media> added = new ArrayList<>();
+        for (String title : List.of("Alias", "Bones", "Castle", "Dexter", "Elementary")) {
+            added.add(addSeries(title, "crime"));
+        }
+        for (int i = 0; i < 3; i++) {
+            mediaRepository.deleteMedia(added.get(i).getId().toString());
+        }
+        String alias = added.get(0).getId().toString();
+        String bones = added.get(1).getId().toString();
+        String castle = added.get(2).getId().toString();
+        assertEquals(ids(added.subList(1, 3)), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.restoreMedia(alias));
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.deleteMedia(bones));
+        MediaPage firstDeleted = mediaRepository.findDeleted(MediaType.SERIES, null, 1);
+
+        assertEquals(added.get(1).getId(), mediaRepository.restoreMedia(bones).getId());
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.restoreMedia(bones));
+        addSeries("Castle");
+        assertThrows(MediaConflictException.class, () -> mediaRepository.restoreMedia(castle));
+        mediaRepository.writeSnapshot();
+        mediaRepository.compact();
+
+        assertEquals(List.of(added.get(3).getId(), added.get(4).getId(), added.get(1).getId()),
+                ids(mediaRepository.findAll(MediaType.ALL)).subList(0, 3));
+        assertEquals(List.of(added.get(2).getId()), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertEquals(List.of(added.get(2).getId()),
+                ids(mediaRepository.findDeleted(MediaType.SERIES, firstDeleted.nextCursor(), 1).items()));
+        assertEquals(List.of(added.get(1).getId()), ids(mediaRepository.findByCharacters("Bone")));
+        assertEquals(3, mediaRepository.findByLabel(bones).size());
+        mediaRepository.close();
+
+        mediaRepository = new MediaRepository(properties);
+        assertEquals(List.of(added.get(2).getId()), ids(mediaRepository.findDeleted(MediaType.SERIES)));
+        assertEquals(added.get(1).getId(), mediaRepository.findById(bones).getId());
+        mediaRepository.close();
+
+        properties.setDeletedMaxAge(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        mediaRepository.compact();
+        assertEquals(List.of(), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.restoreMedia(castle));
+        mediaRepository.close();
+    }
+
+    /**
+     * Adding {@link Media} under the id of retained deleted {@link Media} evicts it, also after a restart.
+     *
+     * @param directory persistence directory.
+     * @throws IOException
+     */
+    @Test
+    public void testAddEvictsDeletedMediaWithSameId(@TempDir Path directory) throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setPersistenceDirectory(directory);
+        mediaRepository = new MediaRepository(properties);
+        Media dark = addSeries("Dark", "sci-fi");
+        String id = dark.getId().toString();
+        mediaRepository.deleteMedia(id);
+        Media darker = new Series(dark.getId(), "Darker", List.of("drama"), 10);
+
+        assertEquals(List.of(darker), mediaRepository.addMedia(List.of(darker)));
+        assertEquals(List.of(), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertThrows(MediaNotFoundException.class, () -> mediaRepository.restoreMedia(id));
+        assertEquals("Darker", mediaRepository.findById(id).getTitle());
+        mediaRepository.deleteMedia(id);
+        mediaRepository.close();
+
+        mediaRepository = new MediaRepository(properties);
+        assertEquals(List.of(dark.getId()), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertEquals("Darker", mediaRepository.restoreMedia(id).getTitle());
+        mediaRepository.close();
+    }
+
+    /**
+     * A delete or restore that cannot be logged throws and leaves the repository as it was.
+     *
+     * @param directory persistence directory.
+     * @throws IOException
+     */
+    @Test
+    public void testFailedLogLeavesRepositoryUnchanged(@TempDir Path directory) throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setPersistenceDirectory(directory);
+        properties.setDeletedMaxCount(1);
+        mediaRepository = new MediaRepository(properties);
+        Media alias = addSeries("Alias");
+        Media bones = addSeries("Bones");
+        mediaRepository.deleteMedia(alias.getId().toString());
+        WriteAheadLog log = mediaRepository.log;
+        AtomicBoolean full = new AtomicBoolean(true);
+        WriteAheadLog failing = new WriteAheadLog(directory.resolve("failing")) {
+            @Override
+            public long flush() throws IOException {
+                if (full.get()) {
+                    throw new IOException("Disk full");
+                }
+                return super.flush();
+            }
+        };
+        mediaRepository.log = failing;
+
+        assertThrows(UncheckedIOException.class, () -> mediaRepository.deleteMedia(bones.getId().toString()));
+        assertThrows(UncheckedIOException.class, () -> mediaRepository.restoreMedia(alias.getId().toString()));
+        assertEquals(List.of(bones.getId()), ids(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(List.of(alias.getId()), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        assertEquals(1, mediaRepository.titleIndex.get("Bones"));
+        assertNull(mediaRepository.titleIndex.get("Alias"));
+        full.set(false);
+        failing.close();
+
+        mediaRepository.log = log;
+        mediaRepository.deleteMedia(bones.getId().toString());
+        mediaRepository.close();
+        mediaRepository = new MediaRepository(properties);
+        assertTrue(mediaRepository.findAll(MediaType.ALL).isEmpty());
+        assertEquals(List.of(bones.getId()), ids(mediaRepository.findDeleted(MediaType.ALL)));
+        mediaRepository.close();
+    }
+
+    /**
+     * Purged off-heap records free their segments while the remaining records stay readable.
+     */
+    @Test
+    public void testOffHeapCompactionMovesRecords() {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setRecordStorage(RecordStorage.OFF_HEAP);
+        properties.setDeletedMaxCount(0);
+        properties.setCompactionInterval(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        List<Media> media = new ArrayList<>();
+        for (int i = 0; i < 60_000; i++) {
+            media.add(new Series(new UUID(0, i), "Series " + i, List.of("drama"), i));
+        }
+        mediaRepository.addMedia(media);
+        OffHeapSlotStore store = (OffHeapSlotStore) mediaRepository.mediaMetadata;
+        long recordBytes = store.recordBytes();
+        for (int i = 0; i < 40_000; i++) {
+            mediaRepository.deleteMedia(new UUID(0, i).toString());
+        }
+        mediaRepository.compact();
+        assertTrue(store.recordBytes() < recordBytes / 2);
+        assertEquals(ids(media.subList(40_000, 60_000)), ids(mediaRepository.findAll(MediaType.ALL)));
+        assertEquals(20_000, mediaRepository.findByLabel(new UUID(0, 50_000).toString()).size());
+        assertEquals("Series 59999", mediaRepository.findByCharacters("59999").get(0).getTitle());
+    }
+
+    /**
+     * Relocating a segment more than half dead moves only its own surviving records, and every record,
+     * moved or left in the later segments, still decodes to the {@link Media} that was stored.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOffHeapRelocationKeepsOtherSegments() throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setRecordStorage(RecordStorage.OFF_HEAP);
+        properties.setDeletedMaxCount(0);
+        properties.setCompactionInterval(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        List<Media> media = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String title = i + " " + "x".repeat(300 + i % 40);
+            media.add(i % 2 == 0 ?
+                    new Movie(new UUID(1, i), title, List.of("Drama", "Label " + i % 7),
+                            i % 4 == 0 ? null : "Director " + i, new Date(i * 86_400_000L)) :
+                    new Series(new UUID(1, i), title, i % 3 == 0 ? null : List.of("Comedy"), i));
+        }
+        mediaRepository.addMedia(media);
+        // records take at most 400 bytes, so the first 2400 all lie in the first 1MB segment
+        List<Media> survivors = new ArrayList<>();
+        for (int i = 0; i < media.size(); i++) {
+            if (i < 2400 && i % 4 != 0) {
+                mediaRepository.deleteMedia(media.get(i).getId().toString());
+            } else {
+                survivors.add(media.get(i));
+            }
+        }
+        mediaRepository.compact();
+
+        ObjectMapper objectMapper = mediaRepository.objectMapper();
+        for (Media expected : survivors) {
+            assertEquals(objectMapper.writeValueAsString(expected),
+                    objectMapper.writeValueAsString(mediaRepository.findById(expected.getId().toString())));
+        }
+        assertEquals(ids(survivors), ids(mediaRepository.findAll(MediaType.ALL)));
+    }
+
+    /**
+     * A listing carries the version of the snapshot it reads, however many writes follow.
+     */
+    @Test
+    public void testListingVersionMatchesItsMedia() {
+        Media alias = addSeries("Alias");
+        try (MediaView listing = mediaRepository.listing(MediaType.SERIES, false)) {
+            long version = mediaRepository.version(MediaType.SERIES);
+            addSeries("Bones");
+
+            assertEquals(version, listing.version());
+            assertEquals(List.of(alias.getId()), ids(listing));
+        }
+        try (MediaView listing = mediaRepository.listing(MediaType.SERIES, false)) {
+            assertEquals(mediaRepository.version(MediaType.SERIES), listing.version());
+            assertEquals(2, listing.size());
+        }
+    }
+
+    /**
+     * Only the first writer missing the {@link ListingCache} captures a listing at a version, the
+     * others stream it until that capture completes.
+     */
+    @Test
+    public void testListingCaptureIsClaimedOnce() {
+        ListingCache cache = new ListingCache(1024);
+        assertTrue(cache.claim("ALL", 1));
+        assertFalse(cache.claim("ALL", 1));
+        assertTrue(cache.claim("MOVIE", 1));
+        assertTrue(cache.claim("ALL", 2));
+        cache.complete("ALL", 1, new byte[]{'[', ']'});
+        assertFalse(cache.claim("ALL", 2));
+        cache.complete("ALL", 2, null);
+        assertNull(cache.get("ALL", 2));
+        assertArrayEquals(new byte[]{'[', ']'}, cache.get("ALL", 1));
+        assertTrue(cache.claim("ALL", 2));
+        assertFalse(new ListingCache(0).claim("ALL", 1));
+    }
+
+    /**
+     * Compaction keeps the records of released slots a view of an older snapshot can still see,
+     * and purges them once the view is closed.
+     */
+    @Test
+    public void testCompactionWaitsForOpenViews() {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setDeletedMaxCount(0);
+        properties.setCompactionInterval(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        List<Media> added = List.of(addSeries("Alias"), addSeries("Bones"));
+        MediaView view = mediaRepository.findAll(MediaType.ALL);
+        mediaRepository.deleteMedia(added.get(0).getId().toString());
+        mediaRepository.compact();
+
+        assertEquals(ids(added), ids(view));
+        view.close();
+        mediaRepository.compact();
+        assertNull(mediaRepository.mediaMetadata.get(0));
+        assertEquals(ids(added.subList(1, 2)), ids(mediaRepository.findAll(MediaType.ALL)));
+    }
+
+    /**
+     * Ids of {@link Media} in order, closing them if they are a {@link MediaView}.
+     *
+     * @param media {@link Media} to read.
+     * @return {@link UUID} of every {@link Media}.
+     */
+    private static List<UUID> ids(Collection<Media> media) {
+        try {
+            return media.stream().map(Media::getId).collect(Collectors.toList());
+        } finally {
+            MediaView.close(media);
+        }
+    }
+
+    /**
+     * Listings joined from cached JSON fragments are byte for byte what Jackson writes, the cache
+     * stays within its size and drops the fragment of deleted {@link Media}.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testFragmentsMatchJackson() throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setFragmentCacheSize(DataSize.ofKilobytes(4));
+        MediaRepository repository = new MediaRepository(properties);
+        List<Media> media = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            media.add(i % 2 == 0 ?
+                    new Movie(UUID.randomUUID(), "Am\u00e9lie \"" + i + "\"", List.of("Comedy", "\u00c9t\u00e9"),
+                            i % 4 == 0 ? null : "Jeunet", new Date(i * 86_400_000L)) :
+                    new Series(UUID.randomUUID(), "Series " + i, i % 3 == 0 ? null : List.of("Comedy"), i));
+        }
+        repository.addMedia(media);
+        ObjectMapper objectMapper = repository.objectMapper();
+        MediaJsonWriter writer = new MediaJsonWriter(objectMapper, properties);
+        for (int pass = 0; pass < 2; pass++) {
+            for (MediaType mediaType : MediaType.values()) {
+                MockHttpServletResponse response = new MockHttpServletResponse();
+                writer.writeArray(repository.findAll(mediaType), response);
+                assertArrayEquals(objectMapper.writeValueAsBytes(new ArrayList<>(repository.findAll(mediaType))),
+                        response.getContentAsByteArray());
+            }
+            assertTrue(repository.fragmentCache.bytes() <= 4096);
+        }
+        String related = media.get(1).getId().toString();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        writer.writeArray(repository.relatedView(related, 5), response);
+        assertArrayEquals(objectMapper.writeValueAsBytes(repository.findByLabel(related, 5)),
+                response.getContentAsByteArray());
+
+        properties.setFragmentCacheSize(DataSize.ofMegabytes(1));
+        repository = new MediaRepository(properties);
+        repository.addMedia(media);
+        writer.writeArray(repository.findAll(MediaType.ALL), new MockHttpServletResponse());
+        long bytes = 0;
+        for (Media next : media) {
+            bytes += objectMapper.writeValueAsBytes(next).length;
+        }
+        assertEquals(bytes, repository.fragmentCache.bytes());
+        repository.deleteMedia(media.get(0).getId().toString());
+        assertEquals(bytes - objectMapper.writeValueAsBytes(media.get(0)).length, repository.fragmentCache.bytes());
+    }
+
+    /**
+     * Adds, duplicates, deletes and parse failures are counted, record counts are published as gauges
+     * and only sampled operations are timed.
+     */
+    @Test
+    public void testMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setMetricsSampleInterval(1_000_000);
+        MediaRepository repository = new MediaRepository(properties, registry);
+        Media dark = repository.addMedia("{\"title\": \"Dark\", \"labels\": [], \"numberOfEpisodes\": 26}");
+        repository.addMedia("{\"title\": \"Dark\", \"labels\": [], \"numberOfEpisodes\": 1}");
+        repository.addMedia("{\"id\": \"" + dark.getId() + "\", \"title\": \"Other\", \"numberOfEpisodes\": 1}");
+        Media heat = repository.addMedia("{\"title\": \"Heat\", \"labels\": [], \"director\": \"Michael Mann\"}");
+        assertThrows(InvalidMediaException.class, () -> repository.addMedia("{\"title\": \"Neither\"}"));
+        repository.deleteMedia(dark.getId().toString());
+        for (int i = 0; i < 100; i++) {
+            repository.findById(heat.getId().toString());
+        }
+
+        assertEquals(2, registry.get("media.repository.inserts").counter().count());
+        assertEquals(1, registry.get("media.repository.duplicates").tag("field", "id").counter().count());
+        assertEquals(1, registry.get("media.repository.duplicates").tag("field", "title").counter().count());
+        assertEquals(1, registry.get("media.repository.deletes").counter().count());
+        assertEquals(1, registry.get("media.repository.parse.failures").counter().count());
+        assertEquals(1, registry.get("media.repository.records").tag("type", "MOVIE").gauge().value());
+        assertEquals(0, registry.get("media.repository.records").tag("type", "SERIES").gauge().value());
+        assertEquals(1, registry.get("media.repository.deleted").tag("type", "ALL").gauge().value());
+        assertTrue(registry.get("media.repository.memory").tag("area", "heap").gauge().value() > 0);
+        assertTrue(registry.get("media.repository.operations").tag("operation", "findById").timer().count() < 100);
+    }
+
+    /**
+     * NDJSON chunks hold whole lines of the same JSON as the listings, from fragments and from Jackson.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteLines() throws IOException {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        MediaRepository repository = new MediaRepository(properties);
+        List<Media> media = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            media.add(new Series(UUID.randomUUID(), "Series \u00e9 " + i, List.of("Comedy", "Drama " + i % 7), i));
+        }
+        repository.addMedia(media);
+        for (int i = 0; i < media.size(); i += 3) {
+            repository.deleteMedia(media.get(i).getId().toString());
+        }
+        ObjectMapper objectMapper = repository.objectMapper();
+        MediaJsonWriter writer = new MediaJsonWriter(objectMapper, properties);
+        for (Collection<Media> listing : List.of(repository.findAll(MediaType.ALL), repository.findDeleted(MediaType.ALL))) {
+            List<byte[]> chunks = writer.writeLines(listing).collectList().block();
+            assertTrue(chunks.size() > 1);
+            List<String> lines = new ArrayList<>();
+            for (byte[] chunk : chunks) {
+                assertTrue(chunk.length < MediaJsonWriter.LINE_CHUNK_SIZE + 1024);
+                lines.addAll(List.of(new String(chunk, StandardCharsets.UTF_8).split("\n")));
+            }
+            List<String> expected = new ArrayList<>();
+            for (Media next : listing) {
+                expected.add(objectMapper.writeValueAsString(next));
+            }
+            assertEquals(expected, lines);
+        }
+    }
+
+    /**
+     * Fuzzy search ranks misspelt, reordered and accented titles by similarity and skips deleted {@link Media}.
+     */
+    @Test
+    public void testSearch() {
+        MediaRepository repository = new MediaRepository();
+        List<Media> media = new ArrayList<>();
+        for (String title : List.of("The Lord of the Rings", "The Lord of War", "Lord Jim", "Am\u00e9lie",
+                "Spider-Man: Homecoming", "Spider-Man", "Superman")) {
+            media.add(new Movie(UUID.randomUUID(), title, List.of("Drama"), null, null));
+        }
+        repository.addMedia(media);
+        List<SearchHit> hits = repository.search("lord of teh rings", 3);
+        assertEquals(3, hits.size());
+        assertEquals("The Lord of the Rings", hits.get(0).media().getTitle());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+        assertEquals("Am\u00e9lie", repository.search("amelie", 1).get(0).media().getTitle());
+        assertEquals("Spider-Man", repository.search("spiderman", 1).get(0).media().getTitle());
+        assertEquals("Spider-Man: Homecoming", repository.search("spiderman homcoming", 1).get(0).media().getTitle());
+        assertEquals(1.0, repository.search("SPIDER MAN", 1).get(0).score());
+        repository.deleteMedia(media.get(5).getId().toString());
+        assertEquals(List.of("Spider-Man: Homecoming", "Superman"), repository.search("spider man", 7).stream()
+                .map(hit -> hit.media().getTitle()).filter(title -> title.toLowerCase().contains("man")).sorted()
+                .collect(Collectors.toList()));
+        assertTrue(repository.search("xyz", 5).isEmpty());
+    }
+
+    /**
+     * A posting list longer than the scan budget is sampled across its slots rather than read from
+     * the oldest, so a newer title can still be found.
+     */
+    @Test
+    public void testSearchSamplesLongPostingLists() {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setSearchScanBudget(4);
+        MediaRepository repository = new MediaRepository(properties);
+        List<Media> media = new ArrayList<>();
+        for (String title : List.of("Dark Matter", "Dark Waters", "Dark Places", "Dark Shadows", "Dark Passage",
+                "Dark Victory", "Dark", "Dark Skies")) {
+            media.add(new Movie(UUID.randomUUID(), title, List.of("Drama"), null, null));
+        }
+        repository.addMedia(media);
+        SearchHit hit = repository.search("dark", 1).get(0);
+        assertEquals("Dark", hit.media().getTitle());
+        assertEquals(1.0, hit.score());
+    }
+
+    /**
+     * Range queries list {@link Movie} by year and {@link Series} by episodes in value order, follow
+     * deletes and restores and page by cursor.
+     */
+    @Test
+    public void testRangeQueries() {
+        List<Media> movies = new ArrayList<>();
+        for (String year : List.of("1999", "2005", "1999", "2010")) {
+            movies.add(mediaRepository.addMedia("{\"title\": \"Movie " + movies.size() + "\", \"labels\": [], " +
+                    "\"director\": \"Someone\", \"releaseDate\": \"" + year + "\"}"));
+        }
+        mediaRepository.addMedia("{\"title\": \"Undated\", \"labels\": [], \"director\": \"Someone\"}");
+        List<Media> series = new ArrayList<>();
+        for (int episodes : List.of(10, 3, 26, 3)) {
+            series.add(mediaRepository.addMedia("{\"title\": \"Series " + series.size() + "\", \"labels\": [], " +
+                    "\"numberOfEpisodes\": " + episodes + "}"));
+        }
+        assertEquals(List.of(movies.get(0), movies.get(2), movies.get(1)),
+                new ArrayList<>(mediaRepository.findMoviesByYear(1999, 2005)));
+        assertEquals(List.of(movies.get(0), movies.get(2)), new ArrayList<>(mediaRepository.findMoviesByYear(null, 2000)));
+        assertEquals(List.of(movies.get(3)), new ArrayList<>(mediaRepository.findMoviesByYear(2006, null)));
+        assertTrue(mediaRepository.findMoviesByYear(2010, 1999).isEmpty());
+        assertEquals(List.of(series.get(1), series.get(3), series.get(0)),
+                new ArrayList<>(mediaRepository.findSeriesByEpisodes(3, 10)));
+
+        MediaPage first = mediaRepository.findSeriesByEpisodes(null, null, null, 2);
+        assertEquals(List.of(series.get(1), series.get(3)), first.items());
+        mediaRepository.deleteMedia(series.get(0).getId().toString());
+        MediaPage last = mediaRepository.findSeriesByEpisodes(null, null, first.nextCursor(), 2);
+        assertEquals(List.of(series.get(2)), last.items());
+        assertNull(last.nextCursor());
+        assertThrows(InvalidCursorException.class,
+                () -> mediaRepository.findSeriesByEpisodes(3, 10, first.nextCursor(), 2));
+        mediaRepository.restoreMedia(series.get(0).getId().toString());
+        assertEquals(List.of(series.get(0)), new ArrayList<>(mediaRepository.findSeriesByEpisodes(4, 20)));
+    }
+
+    /**
+     * A deleted {@link Movie} keeps its key in the range index, so readers of older snapshots still
+     * find it, until compaction purges its record.
+     */
+    @Test
+    public void testRangeKeysKeptUntilPurged() {
+        MediaRepositoryProperties properties = new MediaRepositoryProperties();
+        properties.setDeletedMaxCount(0);
+        properties.setCompactionInterval(Duration.ZERO);
+        mediaRepository = new MediaRepository(properties);
+        Media spiderman = mediaRepository.addMedia("{\"title\": \"Spiderman\", \"labels\": [], " +
+                "\"director\": \"Sam Raimi\", \"releaseDate\": \"2002\"}");
+        Media hulk = mediaRepository.addMedia("{\"title\": \"Hulk\", \"labels\": [], " +
+                "\"director\": \"Ang Lee\", \"releaseDate\": \"2003\"}");
+        MediaView view = mediaRepository.findAll(MediaType.MOVIE);
+        mediaRepository.deleteMedia(spiderman.getId().toString());
+        mediaRepository.compact();
+
+        assertEquals(2, mediaRepository.releaseYearIndex.range(2000, 2010, 0).size());
+        assertEquals(List.of(hulk), new ArrayList<>(mediaRepository.findMoviesByYear(2000, 2010)));
+        view.close();
+        mediaRepository.compact();
+        assertEquals(1, mediaRepository.releaseYearIndex.range(2000, 2010, 0).size());
+        assertEquals(List.of(hulk), new ArrayList<>(mediaRepository.findMoviesByYear(2000, 2010)));
+    }
+
+    /**
+     * Facet counts follow adds, deletes and restores and are filtered by type and label.
+     */
+    @Test
+    public void testFacets() {
+        Media spiderman = mediaRepository.addMedia("{\"title\": \"Spiderman\", \"labels\": [\"Comics\", \"Action\"], " +
+                "\"director\": \"Sam Raimi\", \"releaseDate\": \"2002\"}");
+        mediaRepository.addMedia("{\"title\": \"Heat\", \"labels\": [\"Crime\", \"Action\", \"Crime\"], " +
+                "\"director\": \"Michael Mann\", \"releaseDate\": \"1995\"}");
+        Media daredevil = addSeries("Daredevil", "Comics", "Crime");
+        addSeries("Dark", "Sci-Fi");
+
+        Facets all = mediaRepository.facets(MediaType.ALL, null);
+        assertEquals(4, all.count());
+        assertEquals(Map.of(MediaType.MOVIE, 2, MediaType.SERIES, 2), all.types());
+        assertEquals(List.of("Action", "Comics", "Crime", "Sci-Fi"), new ArrayList<>(all.labels().keySet()));
+        assertEquals(Map.of("Action", 2, "Comics", 2, "Crime", 2, "Sci-Fi", 1), all.labels());
+        assertEquals(Map.of(1990, 1, 2000, 1), all.releaseYears());
+
+        Facets comics = mediaRepository.facets(MediaType.ALL, "Comics");
+        assertEquals(2, comics.count());
+        assertEquals(Map.of("Comics", 2, "Action", 1, "Crime", 1), comics.labels());
+        assertEquals(Map.of(2000, 1), comics.releaseYears());
+        Facets comicSeries = mediaRepository.facets(MediaType.SERIES, "Comics");
+        assertEquals(Map.of(MediaType.MOVIE, 0, MediaType.SERIES, 1), comicSeries.types());
+        assertEquals(0, mediaRepository.facets(MediaType.ALL, "Western").count());
+
+        mediaRepository.deleteMedia(spiderman.getId().toString());
+        mediaRepository.deleteMedia(daredevil.getId().toString());
+        assertEquals(Map.of("Action", 1, "Crime", 1, "Sci-Fi", 1), mediaRepository.facets(MediaType.ALL, null).labels());
+        assertEquals(0, mediaRepository.facets(MediaType.MOVIE, "Comics").count());
+        mediaRepository.restoreMedia(spiderman.getId().toString());
+        assertEquals(Map.of(1990, 1, 2000, 1), mediaRepository.facets(MediaType.MOVIE, null).releaseYears());
+        assertEquals(1, mediaRepository.facets(MediaType.ALL, "Comics").count());
+    }
+
+    /**
+     * A batch get returns the stored {@link Media} of the ids once each, in order, and lists the other ids as missing.
+     */
+    @Test
+    public void testFindByIds() {
+        Media dark = addSeries("Dark");
+        Media daredevil = addSeries("Daredevil");
+        Media hulk = addSeries("Hulk");
+        mediaRepository.deleteMedia(hulk.getId().toString());
+        String unknown = UUID.randomUUID().toString();
+        BatchGetResult result = mediaRepository.findByIds(Arrays.asList(daredevil.getId().toString(), unknown,
+                dark.getId().toString(), hulk.getId().toString(), "not-a-uuid", daredevil.getId().toString(), null));
+        assertEquals(List.of(daredevil, dark), result.found());
+        assertEquals(Arrays.asList(unknown, hulk.getId().toString(), "not-a-uuid", null), result.missing());
+        assertTrue(mediaRepository.findByIds(List.of()).found().isEmpty());
+    }
+
+}